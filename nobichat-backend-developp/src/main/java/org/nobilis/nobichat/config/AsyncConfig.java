@@ -3,10 +3,17 @@ package org.nobilis.nobichat.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class AsyncConfig {
 
@@ -31,4 +38,79 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    @Bean
+    public AsyncTaskExecutor entityQueryExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(20);
+        executor.setMaxPoolSize(40);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("Entity-query");
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public AsyncTaskExecutor llmCallExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(40);
+        executor.setMaxPoolSize(80);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("Llm-call");
+
+        executor.setTaskDecorator(runnable -> {
+            SecurityContext securityContext = SecurityContextHolder.getContext();
+            return () -> {
+                try {
+                    SecurityContextHolder.setContext(securityContext);
+                    runnable.run();
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            };
+        });
+
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Воркеры асинхронного режима чата. Очередь не меньше chat.jobs.max-pending: число задач пула
+     * ограничено числом сессий с сообщениями в очереди, а его ChatJobService ограничивает сам.
+     */
+    @Bean
+    public AsyncTaskExecutor chatJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(20);
+        executor.setMaxPoolSize(20);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("Chat-job");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Потоки потоковой обработки сообщений чата (SSE). Атрибуты запроса не копируются: после возврата
+     * SseEmitter сервлет завершает запрос, и они становятся недействительными; контекст безопасности
+     * передает сам ChatStreamService. Потоки виртуальные, поэтому ожидание потокового ответа LLM
+     * не занимает поток платформы.
+     */
+    @Bean
+    public AsyncTaskExecutor chatStreamExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Chat-stream-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    /**
+     * Виртуальные потоки для подзадач обработки сообщения (загрузки из БД, сохранение вложений),
+     * выполняемых параллельно с вызовом LLM. Контекст безопасности передается из потока,
+     * запустившего подзадачу.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService chatPipelineExecutor() {
+        return new DelegatingSecurityContextExecutorService(Executors.newVirtualThreadPerTaskExecutor());
+    }
 }
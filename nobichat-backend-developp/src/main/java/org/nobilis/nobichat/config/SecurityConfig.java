@@ -1,5 +1,6 @@
 package org.nobilis.nobichat.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.nobilis.nobichat.filters.JwtFilter;
 import org.nobilis.nobichat.handler.CustomAccessDeniedHandler;
@@ -53,7 +54,8 @@ public class SecurityConfig {
         http.csrf(AbstractHttpConfigurer::disable)
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .authorizeHttpRequests(req ->
-                        req.requestMatchers(HttpMethod.POST, "/api/organization").permitAll()
+                        req.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                                .requestMatchers(HttpMethod.POST, "/api/organization").permitAll()
                                 .requestMatchers(WHITE_LIST_URL).permitAll()
                                 .requestMatchers("/error").permitAll()
                                 .anyRequest()
@@ -0,0 +1,116 @@
+package org.nobilis.nobichat.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.nobilis.nobichat.dto.chat.ChatJobDto;
+import org.nobilis.nobichat.dto.chat.ChatRequest;
+import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
+import org.nobilis.nobichat.service.ChatJobService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/chat/jobs")
+@SecurityRequirement(name = "tokenAuth")
+@Tag(name = "Асинхронная обработка сообщений чата")
+@Validated
+@RequiredArgsConstructor
+public class ChatJobController {
+
+    private final ChatJobService chatJobService;
+
+    @PostMapping(consumes = {MediaType.MULTIPART_FORM_DATA_VALUE})
+    @Operation(
+            summary = "Отправить сообщение в чат асинхронно",
+            description = """
+                    Принимает те же данные, что и `POST /api/chat`, но не дожидается ответа LLM: сообщение ставится в очередь,
+                    и сразу возвращается `202` с задачей (`jobId`, `sessionId`, статус `QUEUED`). Если сессия не передана, она создается сразу.
+
+                    Результат можно получить long-poll запросом `GET /api/chat/jobs/{jobId}?waitSeconds=...` или подпиской
+                    `GET /api/chat/jobs/{jobId}/events` (SSE). Сообщения одной сессии обрабатываются строго по очереди.
+
+                    При повторной отправке с тем же заголовком `Idempotency-Key` возвращается ранее созданная задача,
+                    сообщение повторно не обрабатывается.
+                    """,
+            responses = {
+                    @ApiResponse(responseCode = "202", description = "Accepted", content = @Content(schema = @Schema(implementation = ChatJobDto.class))),
+                    @ApiResponse(responseCode = "400", description = "Bad Request (невалидный запрос)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized (некорректный токен)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+                    @ApiResponse(responseCode = "429", description = "Too Many Requests (очередь обработки переполнена)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class)))
+            })
+    public ResponseEntity<ChatJobDto> submitChatMessage(
+            @Parameter(description = "Ключ идемпотентности, уникальный для каждого нового сообщения")
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestPart("requestDto") @Valid ChatRequest requestDto,
+            @RequestPart(value = "attachments", required = false) List<MultipartFile> attachments) {
+
+        ChatJobDto job = chatJobService.submit(requestDto, attachments, idempotencyKey);
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{jobId}").buildAndExpand(job.getJobId()).toUri())
+                .body(job);
+    }
+
+    @GetMapping("/{jobId}")
+    @Operation(
+            summary = "Получить состояние задачи (long-poll)",
+            description = """
+                    Возвращает задачу; для завершенной задачи (`COMPLETED` или `FAILED`) в поле `response` — итоговый `ChatResponseDto`.
+                    Если задача еще не завершена и передан `waitSeconds`, ответ придет сразу по завершении задачи
+                    или по истечении ожидания (не больше `chat.jobs.max-wait`) с текущим статусом.
+                    """,
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = ChatJobDto.class))),
+                    @ApiResponse(responseCode = "404", description = "Not Found (задача не найдена или истекла)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class)))
+            })
+    public DeferredResult<ChatJobDto> getChatJob(
+            @Parameter(description = "ID задачи", required = true)
+            @PathVariable UUID jobId,
+            @Parameter(description = "Сколько секунд ждать завершения задачи")
+            @RequestParam(defaultValue = "0") long waitSeconds) {
+
+        return chatJobService.poll(jobId, Duration.ofSeconds(waitSeconds));
+    }
+
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Подписаться на результат задачи (SSE)",
+            description = """
+                    **События:**
+                    *   `status` — текущее состояние задачи (`ChatJobDto` без ответа, если задача не завершена).
+                    *   `response` — итоговый `ChatResponseDto` после завершения задачи. После него поток закрывается.
+                    """,
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)),
+                    @ApiResponse(responseCode = "404", description = "Not Found (задача не найдена или истекла)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class)))
+            })
+    public SseEmitter subscribeToChatJob(
+            @Parameter(description = "ID задачи", required = true)
+            @PathVariable UUID jobId) {
+
+        return chatJobService.subscribe(jobId);
+    }
+}
@@ -9,19 +9,23 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.nobilis.nobichat.dto.chat.ChatActionRequest;
 import org.nobilis.nobichat.dto.chat.ChatRequest;
 import org.nobilis.nobichat.dto.chat.ChatResponseDto;
 import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
 import org.nobilis.nobichat.service.ChatService;
+import org.nobilis.nobichat.service.ChatStreamService;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.UUID;
@@ -35,6 +39,7 @@ import java.util.UUID;
 public class ChatMessageController {
 
     private final ChatService chatService;
+    private final ChatStreamService chatStreamService;
 
     @PostMapping(consumes = {MediaType.MULTIPART_FORM_DATA_VALUE})
     @Operation(
@@ -61,6 +66,9 @@ public class ChatMessageController {
                         *   `"Дальше" / "Назад"` -> Перемещает по шагам, возвращая `uiSchema` для нового шага. `context` **не** требуется.
                         *   `"Сохранить"` -> **Сохраняет данные из формы.** При отправке этой команды, поле `context` **должно быть заполнено** данными с UI. Система сохраняет данные в БД и возвращает `uiSchema` **текущего** шага (возможно, с обновленным `sourceId`).
                         *   `"Любой другой текст"` -> Считается нераспознанной командой. Система остается на текущем шаге и возвращает подсказку.
+                    
+                    **Повторы:** при передаче заголовка `Idempotency-Key` повторный запрос с тем же ключом не обрабатывается заново,
+                    а получает сохраненный ответ (с заголовком `Idempotent-Replayed: true`); если исходный запрос еще выполняется, повтор дожидается его.
                     """,
             responses = {
                     @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = ChatResponseDto.class))),
@@ -76,4 +84,56 @@ public class ChatMessageController {
         ChatResponseDto response = chatService.processUserQuery(requestDto, attachments);
         return ResponseEntity.ok(response);
     }
+
+    @PostMapping(value = "/actions", consumes = {MediaType.APPLICATION_JSON_VALUE})
+    @Operation(
+            summary = "Выполнить действие UI (кнопку) без распознавания текста",
+            description = """
+                    Для кнопок, смысл которых фронтенду уже известен: команда не классифицируется LLM,
+                    а сразу передается обработчику намерения. Сообщение сохраняется в истории, а ответ совпадает
+                    с ответом основного эндпоинта на аналогичную текстовую команду.
+                    
+                    **Действия:**
+                    *   `NAVIGATE_EXECUTION` (`direction`: `NEXT` | `BACK`) — переход по шагам в **Режиме Исполнения**.
+                    *   `SAVE_SCENARIO_DATA` — сохранение данных формы в **Режиме Исполнения**; `context` обязателен.
+                    *   `NAVIGATE_PREVIEW` (`direction`: `NEXT` | `BACK`) — переход по шагам в **Режиме Просмотра**.
+                    *   `PUBLISH_SCENARIO` — публикация сценария из **Режима Конструктора**.
+                    
+                    Если действие недоступно в текущем режиме сессии, возвращается текущее состояние с ошибкой.
+                    """,
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK", content = @Content(schema = @Schema(implementation = ChatResponseDto.class))),
+                    @ApiResponse(responseCode = "400", description = "Bad Request (невалидный запрос)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized (некорректный токен)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class)))
+            })
+    public ResponseEntity<ChatResponseDto> processChatAction(@RequestBody @Valid ChatActionRequest actionRequest) {
+        ChatResponseDto response = chatService.processAction(actionRequest);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping(value = "/stream", consumes = {MediaType.MULTIPART_FORM_DATA_VALUE}, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Отправить сообщение в чат с потоковым ответом (SSE)",
+            description = """
+                    Принимает те же данные, что и основной эндпоинт, но отвечает потоком Server-Sent Events.
+                    
+                    **События:**
+                    *   `progress` — этап обработки: `{"stage": "session" | "classifying" | "intent" | "editing", "data": {...}}`.
+                        Для `intent` в `data` передаются распознанные `intent`, `direction` и признак `local` (распознано без LLM).
+                    *   `response` — итоговый `ChatResponseDto` (как в ответе основного эндпоинта, включая ошибки). После него поток закрывается.
+                    
+                    Классификация команды выполняется потоковым вызовом LLM: обработчик запускается, как только модель
+                    сгенерировала поля `intent`/`direction`, не дожидаясь конца генерации.
+                    """,
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK", content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE)),
+                    @ApiResponse(responseCode = "400", description = "Bad Request (невалидный запрос)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized (некорректный токен)", content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class)))
+            })
+    public SseEmitter processChatMessageStream(
+            @RequestPart("requestDto") @Valid ChatRequest requestDto,
+            @RequestPart(value = "attachments", required = false) List<MultipartFile> attachments) {
+
+        return chatStreamService.process(requestDto, attachments);
+    }
 }
@@ -1,5 +1,7 @@
 package org.nobilis.nobichat.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -18,22 +20,33 @@ import org.nobilis.nobichat.dto.entities.PaginatedEntitiesResponseDto;
 import org.nobilis.nobichat.dto.entities.UpdateEntityRequestDto;
 import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
 import org.nobilis.nobichat.service.DynamicEntityQueryService;
+import org.nobilis.nobichat.service.EntityChangeFeedService;
+import org.nobilis.nobichat.service.EntityQueryGuard;
+import org.nobilis.nobichat.service.OntologyService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -47,6 +60,14 @@ import java.util.UUID;
 public class EntityDataController {
 
     private final DynamicEntityQueryService dynamicEntityQueryService;
+    private final EntityQueryGuard entityQueryGuard;
+    private final EntityChangeFeedService entityChangeFeedService;
+    private final OntologyService ontologyService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${entity-query.request-deadline:60s}")
+    private Duration requestDeadline;
+
     private static final int DEFAULT_PAGE = 1;
     private static final int DEFAULT_PAGE_SIZE = 20;
 
@@ -202,20 +223,79 @@ public class EntityDataController {
             }
     )
     @ProtectByUISchema(operationType = "READ_LIST")
-    public ResponseEntity<PaginatedEntitiesResponseDto> searchEntities(
+    public WebAsyncTask<ResponseEntity<PaginatedEntitiesResponseDto>> searchEntities(
             @PathVariable String entityName,
             @RequestHeader(name = "X-Chat-Session-Id", required = false) UUID sessionId,
             @Valid @RequestBody EntitiesSearchRequestDto request) {
 
         Pageable pageable = createPageableFromRequest(request);
+        EntityQueryGuard.QueryCancellation cancellation = new EntityQueryGuard.QueryCancellation();
 
-        PaginatedEntitiesResponseDto result = dynamicEntityQueryService.findEntities(
-                entityName,
-                request.getFields(),
-                request.getQuery(),
-                pageable
-        );
-        return ResponseEntity.ok(result);
+        WebAsyncTask<ResponseEntity<PaginatedEntitiesResponseDto>> task = new WebAsyncTask<>(
+                requestDeadline.toMillis(),
+                "entityQueryExecutor",
+                () -> entityQueryGuard.runCancellable(cancellation, () -> ResponseEntity.ok(
+                        dynamicEntityQueryService.findEntities(
+                                entityName,
+                                request.getFields(),
+                                request.getQuery(),
+                                pageable,
+                                request.getSince()
+                        ))));
+
+        task.onTimeout(() -> {
+            cancellation.cancel("истек дедлайн запроса " + requestDeadline);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Превышено время выполнения запроса.");
+        });
+        task.onError(() -> {
+            cancellation.cancel("соединение с клиентом прервано");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        });
+        return task;
+    }
+
+    /**
+     * Подписка на изменения записей сущности (Server-Sent Events).
+     *
+     * @param entityName Имя сущности в онтологии.
+     * @param filter     Необязательный фильтр в формате QueryDto (JSON), вычисляется в памяти.
+     * @return Поток событий "change" с первичным ключом и именами измененных полей.
+     */
+    @GetMapping(value = "/{entityName}/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Поток изменений сущности",
+            description = "Открывает SSE-поток событий создания, изменения и удаления записей сущности. " +
+                    "Каждое событие содержит первичный ключ и имена измененных полей. " +
+                    "Параметр `filter` принимает QueryDto в формате JSON (те же операторы, что и в /search); " +
+                    "события удаления доставляются всем подписчикам независимо от фильтра.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK"),
+                    @ApiResponse(responseCode = "400", description = "Bad request",
+                            content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+                    @ApiResponse(responseCode = "401", description = "Отсутствует или некорректный заголовок Authorization",
+                            content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+            })
+    @ProtectByUISchema(operationType = "READ_LIST")
+    public SseEmitter subscribeToChanges(
+            @Parameter(description = "Техническое имя сущности из онтологии", required = true, example = "supplier")
+            @PathVariable String entityName,
+            @RequestHeader(name = "X-Chat-Session-Id", required = false) UUID sessionId,
+            @Parameter(description = "Фильтр QueryDto в формате JSON",
+                    example = "{\"conditions\":[{\"field\":\"active\",\"operator\":\"equals\",\"value\":true}]}")
+            @RequestParam(name = "filter", required = false) String filter) {
+
+        if (!ontologyService.entityExists(entityName)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Сущность '" + entityName + "' не найдена в онтологии.");
+        }
+
+        EntitiesSearchRequestDto.QueryDto query = null;
+        if (StringUtils.hasText(filter)) {
+            try {
+                query = objectMapper.readValue(filter, EntitiesSearchRequestDto.QueryDto.class);
+            } catch (JsonProcessingException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Некорректный фильтр: " + e.getOriginalMessage());
+            }
+        }
+        return entityChangeFeedService.subscribe(entityName, query);
     }
 
     private Pageable createPageableFromRequest(EntitiesSearchRequestDto request) {
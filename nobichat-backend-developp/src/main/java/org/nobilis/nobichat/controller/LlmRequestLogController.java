@@ -0,0 +1,70 @@
+package org.nobilis.nobichat.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
+import org.nobilis.nobichat.dto.llm.LlmRequestLogDto;
+import org.nobilis.nobichat.exception.ResourceNotFoundException;
+import org.nobilis.nobichat.service.llm.LlmRequestLogReader;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/llm-request-logs")
+@SecurityRequirement(name = "tokenAuth")
+@Tag(name = "Журнал вызовов LLM", description = "Просмотр промптов и ответов LLM для отладки")
+@Validated
+@RequiredArgsConstructor
+public class LlmRequestLogController {
+
+    private final LlmRequestLogReader llmRequestLogReader;
+
+    @GetMapping("/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'GIGA_ADMIN')")
+    @Operation(summary = "Получение записи журнала вызовов LLM",
+            description = "Возвращает запись с полным текстом промпта, восстановленным из фрагментов шаблонов, и ответом модели.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK"),
+                    @ApiResponse(responseCode = "401", description = "Отсутствует или некорректный заголовок Authorization",
+                            content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+                    @ApiResponse(responseCode = "404", description = "Запись не найдена",
+                            content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+            })
+    public ResponseEntity<LlmRequestLogDto> getLlmRequestLog(
+            @Parameter(description = "ID записи журнала", required = true)
+            @PathVariable UUID id) {
+        LlmRequestLogDto logEntry = llmRequestLogReader.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Запись журнала вызовов LLM не найдена: " + id));
+        return ResponseEntity.ok(logEntry);
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'GIGA_ADMIN')")
+    @Operation(summary = "Вызовы LLM по сообщению чата",
+            description = "Возвращает все вызовы LLM, выполненные при обработке сообщения, в порядке времени.",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "OK"),
+                    @ApiResponse(responseCode = "401", description = "Отсутствует или некорректный заголовок Authorization",
+                            content = @Content(schema = @Schema(implementation = GeneralErrorResponse.class))),
+            })
+    public ResponseEntity<List<LlmRequestLogDto>> getLlmRequestLogsByChatMessage(
+            @Parameter(description = "ID сообщения чата", required = true)
+            @RequestParam UUID chatMessageId) {
+        return ResponseEntity.ok(llmRequestLogReader.findByChatMessageId(chatMessageId));
+    }
+}
@@ -0,0 +1,45 @@
+package org.nobilis.nobichat.dto.chat;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+@Schema(description = "Типизированное действие пользователя (нажатие кнопки), выполняемое без распознавания текста")
+public class ChatActionRequest {
+
+    @NotNull
+    @Schema(description = "Идентификатор сессии чата.", requiredMode = Schema.RequiredMode.REQUIRED)
+    private UUID sessionId;
+
+    @NotNull
+    @Schema(description = "Действие.", requiredMode = Schema.RequiredMode.REQUIRED, example = "NAVIGATE_EXECUTION")
+    private ActionType action;
+
+    @Schema(description = "Направление перехода; обязательно для NAVIGATE_EXECUTION и NAVIGATE_PREVIEW.", nullable = true, example = "NEXT")
+    private Direction direction;
+
+    @Schema(description = "Контекст UI с данными формы; обязателен для SAVE_SCENARIO_DATA.", nullable = true)
+    private ChatRequest.ChatRequestContextDto context;
+
+    @Schema(description = "Текст кнопки для истории чата. Если не задан, используется текст по умолчанию для действия.",
+            nullable = true, example = "Дальше")
+    private String label;
+
+    /**
+     * Имена совпадают с типами намерений обработчиков в IntentHandlerRegistry.
+     */
+    public enum ActionType {
+        NAVIGATE_EXECUTION,
+        NAVIGATE_PREVIEW,
+        SAVE_SCENARIO_DATA,
+        PUBLISH_SCENARIO
+    }
+
+    public enum Direction {
+        NEXT,
+        BACK
+    }
+}
@@ -0,0 +1,55 @@
+package org.nobilis.nobichat.dto.chat;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Задача асинхронной обработки сообщения чата")
+public class ChatJobDto {
+
+    @Schema(description = "ID задачи")
+    private UUID jobId;
+
+    @Schema(description = "ID сессии чата, в которой обрабатывается сообщение")
+    private UUID sessionId;
+
+    @Schema(description = "Статус задачи")
+    private Status status;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+
+    @Schema(description = "Ответ чата; заполняется, когда задача завершена (COMPLETED или FAILED)")
+    private ChatResponseDto response;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        /**
+         * Сообщение обработано.
+         */
+        COMPLETED,
+        /**
+         * Обработка завершилась ошибкой; в response — текущее состояние сессии и описание ошибки.
+         */
+        FAILED
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+}
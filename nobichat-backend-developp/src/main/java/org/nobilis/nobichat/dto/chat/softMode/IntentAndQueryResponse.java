@@ -23,4 +23,9 @@ public class IntentAndQueryResponse {
     private Map<String, Object> scenarioInputData;
     private String scenarioName;
     private String direction;
+    /**
+     * Признак команды редактирования сценария в режиме просмотра, если интент не распознан.
+     * Заполняется только объединенным классификатором режима просмотра.
+     */
+    private Boolean isEditCommand;
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 
+import java.time.Instant;
 import java.util.List;
 
 @Data
@@ -29,6 +30,10 @@ public class EntitiesSearchRequestDto {
     private String sortBy;
     @Schema(description = "Направление сортировки.", allowableValues = {"ASC", "DESC"}, example = "ASC")
     private String sortOrder;
+    @Schema(description = "Водяной знак дельта-синхронизации: вернуть только записи, измененные после этого момента, " +
+            "и идентификаторы удаленных записей. Значение берется из поля 'watermark' предыдущего ответа.",
+            example = "2025-07-01T10:15:30Z")
+    private Instant since;
 
     @Data
     public static class QueryDto {
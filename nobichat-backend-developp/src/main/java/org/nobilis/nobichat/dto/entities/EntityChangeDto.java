@@ -0,0 +1,34 @@
+package org.nobilis.nobichat.dto.entities;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nobilis.nobichat.events.event.EntityChangeEvent;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityChangeDto {
+
+    @Schema(description = "Техническое имя сущности из онтологии", example = "supplier")
+    private String entityName;
+
+    @Schema(description = "Тип изменения")
+    private EntityChangeEvent.Operation operation;
+
+    @Schema(description = "Первичный ключ измененной записи")
+    private UUID id;
+
+    @Schema(description = "Имена измененных полей (для CREATE - переданные поля, для DELETE - пусто)")
+    private Set<String> changedFields;
+
+    @Schema(description = "Время регистрации изменения на сервере")
+    private Instant timestamp;
+}
@@ -1,14 +1,18 @@
 package org.nobilis.nobichat.dto.entities;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Data
 @AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PaginatedEntitiesResponseDto {
 
     @Schema(description = "Список сущностей на текущей странице")
@@ -19,4 +23,14 @@ public class PaginatedEntitiesResponseDto {
 
     @Schema(description = "Общее количество страниц", example = "5")
     private Integer totalPages;
+
+    @Schema(description = "Идентификаторы записей, удаленных после 'since' (только в режиме дельта-синхронизации, на первой странице)")
+    private List<UUID> deletedIds;
+
+    @Schema(description = "Новый водяной знак для следующего запроса дельта-синхронизации")
+    private Instant watermark;
+
+    public PaginatedEntitiesResponseDto(List<Map<String, Object>> content, Long totalElements, Integer totalPages) {
+        this(content, totalElements, totalPages, null, null);
+    }
 }
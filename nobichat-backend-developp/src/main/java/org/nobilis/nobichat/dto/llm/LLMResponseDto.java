@@ -7,7 +7,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class LLMResponseDto {
@@ -16,6 +16,8 @@ public class LLMResponseDto {
     private Integer promptTokens;
     private Integer completionTokens;
     private Integer totalTokens;
-    @Schema(description = "Время ответа модели в миллисекундах", type = "string", example = "1250ms")
+    @Schema(description = "Время ответа модели в миллисекундах", example = "1250")
+    private Long responseTimeMs;
+    @Schema(description = "Время ответа модели в виде строки (сохранено для совместимости)", type = "string", example = "1250ms")
     private String responseTime;
 }
\ No newline at end of file
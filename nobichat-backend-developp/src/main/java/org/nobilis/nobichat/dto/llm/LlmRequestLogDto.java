@@ -0,0 +1,30 @@
+package org.nobilis.nobichat.dto.llm;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Запись журнала вызовов LLM с восстановленными промптом и ответом")
+public class LlmRequestLogDto {
+    private UUID id;
+    private LocalDateTime timestamp;
+    private String modelName;
+    private String prompt;
+    private String response;
+    private Long promptTokens;
+    private Long completionTokens;
+    private Long totalTokens;
+    private Long responseTimeMs;
+    private Boolean cached;
+    private UUID chatMessageId;
+    private String promptFamily;
+}
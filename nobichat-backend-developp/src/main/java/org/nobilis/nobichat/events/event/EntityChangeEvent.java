@@ -0,0 +1,34 @@
+package org.nobilis.nobichat.events.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Событие изменения записи динамической сущности, публикуемое из пути записи
+ * {@link org.nobilis.nobichat.service.DynamicEntityQueryService}.
+ */
+@Getter
+public class EntityChangeEvent extends ApplicationEvent {
+
+    public enum Operation {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    private final String entityName;
+    private final Operation operation;
+    private final UUID entityId;
+    private final Set<String> changedFields;
+
+    public EntityChangeEvent(Object source, String entityName, Operation operation, UUID entityId, Set<String> changedFields) {
+        super(source);
+        this.entityName = entityName;
+        this.operation = operation;
+        this.entityId = entityId;
+        this.changedFields = changedFields;
+    }
+}
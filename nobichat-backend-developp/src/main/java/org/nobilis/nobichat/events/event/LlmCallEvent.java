@@ -2,6 +2,7 @@ package org.nobilis.nobichat.events.event;
 
 import lombok.Getter;
 import org.nobilis.nobichat.dto.llm.LLMResponseDto;
+import org.nobilis.nobichat.service.llm.PromptFamily;
 import org.springframework.context.ApplicationEvent;
 
 import java.util.UUID;
@@ -12,11 +13,26 @@ public class LlmCallEvent extends ApplicationEvent {
     private final String prompt;
     private final LLMResponseDto llmResponse;
     private final UUID chatMessageId;
+    /**
+     * Ответ получен из кэша или из общего с другим запросом вызова, без собственного обращения к провайдеру.
+     */
+    private final boolean cached;
+    /**
+     * Семейство промпта; сохраняется в журнал, чтобы пакетные задачи отбирали записи по нему в SQL.
+     */
+    private final PromptFamily family;
 
     public LlmCallEvent(Object source, String prompt, LLMResponseDto llmResponse, UUID chatMessageId) {
+        this(source, prompt, llmResponse, chatMessageId, false, PromptFamily.OTHER);
+    }
+
+    public LlmCallEvent(Object source, String prompt, LLMResponseDto llmResponse, UUID chatMessageId, boolean cached,
+                        PromptFamily family) {
         super(source);
         this.prompt = prompt;
         this.llmResponse = llmResponse;
         this.chatMessageId = chatMessageId;
+        this.cached = cached;
+        this.family = family;
     }
 }
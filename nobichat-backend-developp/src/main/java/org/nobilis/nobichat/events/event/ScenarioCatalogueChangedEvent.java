@@ -0,0 +1,20 @@
+package org.nobilis.nobichat.events.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.UUID;
+
+/**
+ * Изменился набор опубликованных сценариев (публикация или удаление).
+ */
+@Getter
+public class ScenarioCatalogueChangedEvent extends ApplicationEvent {
+
+    private final UUID scenarioId;
+
+    public ScenarioCatalogueChangedEvent(Object source, UUID scenarioId) {
+        super(source);
+        this.scenarioId = scenarioId;
+    }
+}
@@ -0,0 +1,18 @@
+package org.nobilis.nobichat.exception;
+
+import lombok.Getter;
+
+/**
+ * Запрос к LLM не принят в очередь: очередь заполнена или ожидаемое время ожидания
+ * превышает допустимое. Клиенту возвращается 429 с заголовком Retry-After.
+ */
+@Getter
+public class LlmAdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LlmAdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+}
@@ -0,0 +1,242 @@
+package org.nobilis.nobichat.filters;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
+import org.nobilis.nobichat.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Идемпотентность пишущих эндпоинтов по заголовку {@code Idempotency-Key}.
+ * <p>
+ * Первый запрос с ключом захватывает его в Redis (SET NX) и выполняется; ответ сохраняется с TTL.
+ * Дубликат, пришедший, пока первый запрос выполняется, ждет его завершения, а поздний дубликат сразу
+ * получает сохраненный ответ с заголовком {@code Idempotent-Replayed: true}. Ключ действует в пределах
+ * пользователя и привязан к методу и пути запроса: тот же ключ на другом эндпоинте дает 422.
+ * Ответы 5xx и 429 не сохраняются — такой запрос можно повторить с тем же ключом.
+ * <p>
+ * Фильтр зарегистрирован как обычный сервлетный фильтр и выполняется после цепочки Spring Security,
+ * поэтому пользователь уже известен. При недоступности Redis запрос выполняется без защиты от повторов.
+ */
+@Slf4j
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final String REDIS_KEY_PREFIX = "nobichat:idempotency:";
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private record Endpoint(HttpMethod method, String pattern) {
+    }
+
+    private record IdempotencyRecord(String state, String request, Integer status, String contentType, String body) {
+    }
+
+    private static final List<Endpoint> ENDPOINTS = List.of(
+            new Endpoint(HttpMethod.POST, "/api/chat"),
+            new Endpoint(HttpMethod.POST, "/api/chat/actions"),
+            new Endpoint(HttpMethod.POST, "/api/entities/{entityName}"),
+            new Endpoint(HttpMethod.PATCH, "/api/entities/{entityName}/{id}"),
+            new Endpoint(HttpMethod.DELETE, "/api/entities/{entityName}/{id}"));
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration inProgressTtl;
+    private final Duration waitTimeout;
+    private final Duration pollInterval;
+
+    public IdempotencyFilter(StringRedisTemplate redisTemplate,
+                             ObjectMapper objectMapper,
+                             @Value("${idempotency.ttl:24h}") Duration ttl,
+                             @Value("${idempotency.in-progress-ttl:5m}") Duration inProgressTtl,
+                             @Value("${idempotency.wait-timeout:60s}") Duration waitTimeout,
+                             @Value("${idempotency.poll-interval:200ms}") Duration pollInterval) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.inProgressTtl = inProgressTtl;
+        this.waitTimeout = waitTimeout;
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        if (!StringUtils.hasText(request.getHeader(IDEMPOTENCY_KEY_HEADER))) {
+            return true;
+        }
+        String path = request.getServletPath();
+        return ENDPOINTS.stream().noneMatch(endpoint ->
+                endpoint.method().matches(request.getMethod()) && pathMatcher.match(endpoint.pattern(), path));
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User user)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            writeError(request, response, HttpStatus.BAD_REQUEST, "Слишком длинный заголовок " + IDEMPOTENCY_KEY_HEADER);
+            return;
+        }
+
+        String redisKey = REDIS_KEY_PREFIX + user.getId() + ":" + idempotencyKey;
+        String requestSignature = request.getMethod() + " " + request.getServletPath();
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+
+        while (true) {
+            boolean claimed;
+            try {
+                claimed = Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(redisKey,
+                        write(new IdempotencyRecord(IN_PROGRESS, requestSignature, null, null, null)), inProgressTtl));
+            } catch (RuntimeException e) {
+                log.warn("Redis недоступен, запрос {} выполняется без проверки идемпотентности: {}", requestSignature, e.getMessage());
+                filterChain.doFilter(request, response);
+                return;
+            }
+            if (claimed) {
+                executeAndStore(request, response, filterChain, redisKey, requestSignature);
+                return;
+            }
+
+            Optional<IdempotencyRecord> existing = read(redisKey);
+            if (existing.isPresent() && !existing.get().request().equals(requestSignature)) {
+                writeError(request, response, HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Ключ идемпотентности уже использован для другого запроса: " + existing.get().request());
+                return;
+            }
+            if (existing.isPresent() && COMPLETED.equals(existing.get().state())) {
+                replay(existing.get(), response);
+                log.info("Повтор запроса {} с ключом идемпотентности {}: возвращен сохраненный ответ", requestSignature, idempotencyKey);
+                return;
+            }
+            if (System.nanoTime() >= deadline) {
+                writeError(request, response, HttpStatus.CONFLICT,
+                        "Запрос с этим ключом идемпотентности еще выполняется, повторите позже");
+                return;
+            }
+            // Первый запрос еще выполняется (или только что освободил ключ после ошибки) — ждем и пробуем снова.
+            try {
+                Thread.sleep(pollInterval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writeError(request, response, HttpStatus.CONFLICT, "Ожидание выполнения исходного запроса прервано");
+                return;
+            }
+        }
+    }
+
+    private void executeAndStore(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                 String redisKey, String requestSignature) throws ServletException, IOException {
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(request, responseWrapper);
+
+            int status = responseWrapper.getStatus();
+            if (!request.isAsyncStarted() && status < 500 && status != HttpStatus.TOO_MANY_REQUESTS.value()) {
+                IdempotencyRecord completed = new IdempotencyRecord(COMPLETED, requestSignature, status,
+                        responseWrapper.getContentType(),
+                        Base64.getEncoder().encodeToString(responseWrapper.getContentAsByteArray()));
+                redisTemplate.opsForValue().set(redisKey, write(completed), ttl);
+                stored = true;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось сохранить ответ для ключа идемпотентности {}: {}", redisKey, e.getMessage());
+        } finally {
+            if (!stored) {
+                release(redisKey);
+            }
+            responseWrapper.copyBodyToResponse();
+        }
+    }
+
+    private void replay(IdempotencyRecord stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        byte[] body = Base64.getDecoder().decode(stored.body());
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private void release(String redisKey) {
+        try {
+            redisTemplate.delete(redisKey);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось освободить ключ идемпотентности {}: {}", redisKey, e.getMessage());
+        }
+    }
+
+    private Optional<IdempotencyRecord> read(String redisKey) {
+        try {
+            String json = redisTemplate.opsForValue().get(redisKey);
+            return json == null ? Optional.empty() : Optional.of(objectMapper.readValue(json, IdempotencyRecord.class));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Не удалось прочитать запись идемпотентности {}: {}", redisKey, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private String write(IdempotencyRecord record) {
+        try {
+            return objectMapper.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать запись идемпотентности", e);
+        }
+    }
+
+    private void writeError(HttpServletRequest request, HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        GeneralErrorResponse errorDto = GeneralErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(status.value())
+                .error(status.getReasonPhrase())
+                .message(message)
+                .path(request.getRequestURI())
+                .build();
+
+        objectMapper.writeValue(response.getWriter(), errorDto);
+    }
+}
@@ -11,7 +11,7 @@ import java.util.Set;
 @WebFilter(urlPatterns = "/*")
 public class RequestLoggingFilter extends AbstractRequestLoggingFilter {
 
-    private Set<String> excludedUrls = Set.of("/actuator/health/readiness", "/actuator/health/liveness");
+    private Set<String> excludedUrls = Set.of("/actuator/health/readiness", "/actuator/health/liveness", "/actuator/prometheus");
 
     public RequestLoggingFilter() {
         setIncludeClientInfo(true);
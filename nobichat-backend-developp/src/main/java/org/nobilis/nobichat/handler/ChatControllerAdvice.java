@@ -1,13 +1,17 @@
 package org.nobilis.nobichat.handler;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.controller.ChatMessageController;
 import org.nobilis.nobichat.dto.chat.ChatResponseDto;
+import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
 import org.nobilis.nobichat.exception.ChatFlowException;
+import org.nobilis.nobichat.exception.LlmAdmissionRejectedException;
 import org.nobilis.nobichat.model.UserChatSession;
 import org.nobilis.nobichat.repository.UserChatSessionRepository;
 import org.nobilis.nobichat.service.ChatService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -15,6 +19,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.UUID;
 
@@ -44,6 +49,21 @@ public class ChatControllerAdvice {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    @ExceptionHandler(LlmAdmissionRejectedException.class)
+    public ResponseEntity<GeneralErrorResponse> handleLlmAdmissionRejected(LlmAdmissionRejectedException ex, HttpServletRequest request) {
+        GeneralErrorResponse errorResponse = GeneralErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .error(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase())
+                .message(ex.getMessage() + " Повторите запрос через " + ex.getRetryAfterSeconds() + " с.")
+                .path(request.getRequestURI())
+                .build();
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ChatResponseDto> handleAllChatExceptions(Exception ex) {
         String errorMessage = ex.getMessage();
@@ -0,0 +1,34 @@
+package org.nobilis.nobichat.handler;
+
+import io.swagger.v3.oas.annotations.Hidden;
+import jakarta.persistence.QueryTimeoutException;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.error.GeneralErrorResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.time.LocalDateTime;
+
+@Slf4j
+@ControllerAdvice
+public class QueryTimeoutHandler {
+
+    @ExceptionHandler({QueryTimeoutException.class, org.springframework.dao.QueryTimeoutException.class})
+    @Hidden
+    public ResponseEntity<GeneralErrorResponse> handleQueryTimeout(RuntimeException ex, HttpServletRequest request) {
+        log.warn("Запрос к базе данных прерван по таймауту или отменен: {}", ex.getMessage());
+
+        GeneralErrorResponse errorResponse = GeneralErrorResponse.builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .error(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase())
+                .message("Превышено время выполнения запроса к базе данных. Уточните условия фильтрации.")
+                .path(request.getRequestURI())
+                .build();
+
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
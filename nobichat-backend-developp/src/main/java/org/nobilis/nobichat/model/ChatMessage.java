@@ -27,6 +27,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * Таблица секционирована по месяцам created_date, первичный ключ в БД — (id, created_date).
+ * Внешних ключей на сообщения нет, см. PartitionMaintenanceService.
+ */
 @Data
 @Builder
 @AllArgsConstructor
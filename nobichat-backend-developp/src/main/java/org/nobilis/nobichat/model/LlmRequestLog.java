@@ -17,6 +17,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
+/**
+ * Таблица секционирована по месяцам timestamp, первичный ключ в БД — (id, timestamp).
+ */
 @Data
 @Builder
 @NoArgsConstructor
@@ -39,6 +42,16 @@ public class LlmRequestLog {
     @Column(name = "response")
     private String response;
 
+    /**
+     * Сжатый рецепт промпта (ссылки на llm_prompt_fragments и переменные секции), см. PromptCompactor.
+     * Для новых записей prompt не заполняется.
+     */
+    @Column(name = "prompt_compact")
+    private byte[] promptCompact;
+
+    @Column(name = "response_compact")
+    private byte[] responseCompact;
+
     @Column(name = "prompt_tokens")
     private Integer promptTokens;
 
@@ -54,6 +67,9 @@ public class LlmRequestLog {
     @Column(name = "model_name")
     private String modelName;
 
+    @Column(name = "cached")
+    private Boolean cached;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chat_message_id")
     private ChatMessage chatMessage;
@@ -0,0 +1,262 @@
+package org.nobilis.nobichat.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.auth.LoginRequestDto;
+import org.nobilis.nobichat.dto.chat.ChatRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Нагрузочный прогон чата через HTTP (/api/chat) с заданным темпом запросов.
+ * Запускается с профилем chat-load, обычно вместе с llm-stub: приложение поднимается целиком,
+ * а прогон обращается к нему же по base-url, поэтому сеть и провайдер LLM не нужны.
+ * <p>
+ * Каждый виртуальный пользователь выбирает сценарий диалога по весам из mix и отправляет его сообщения
+ * последовательно в одной новой сессии. Общий темп ограничивается target-rps; чтобы его достичь,
+ * concurrency должно быть не меньше target-rps, умноженного на среднее время ответа.
+ * В сообщениях {n} заменяется порядковым номером — так запросы не обслуживаются целиком из кэша ответов LLM.
+ * По завершении печатается сводка задержек по шагам сценариев (операция {@code сценарий#шаг}).
+ */
+@Slf4j
+@Component
+@Profile("chat-load")
+@RequiredArgsConstructor
+public class ChatLoadRunner implements CommandLineRunner {
+
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext applicationContext;
+
+    @Value("${chat-load.base-url:http://localhost:${server.port:8080}}")
+    private String baseUrl;
+
+    /**
+     * Учетные записи в формате {@code логин:пароль}; виртуальные пользователи распределяются по ним по кругу.
+     */
+    @Value("${chat-load.users}")
+    private List<String> users;
+
+    @Value("${chat-load.target-rps:5}")
+    private double targetRps;
+
+    @Value("${chat-load.concurrency:50}")
+    private int concurrency;
+
+    @Value("${chat-load.warmup-seconds:10}")
+    private int warmupSeconds;
+
+    @Value("${chat-load.duration-seconds:60}")
+    private int durationSeconds;
+
+    @Value("#{${chat-load.mix}}")
+    private Map<String, Integer> mix;
+
+    @Value("#{${chat-load.flows}}")
+    private Map<String, List<String>> flows;
+
+    @Value("${chat-load.report.path:}")
+    private String reportPath;
+
+    private final AtomicLong messageCounter = new AtomicLong();
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+
+    private RestClient restClient;
+    private long pacingIntervalNanos;
+    private AtomicLong nextSlot;
+
+    @Override
+    public void run(String... args) throws Exception {
+        restClient = RestClient.builder().baseUrl(baseUrl).build();
+        pacingIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / targetRps);
+        for (String flow : mix.keySet()) {
+            if (!flows.containsKey(flow)) {
+                throw new IllegalArgumentException("Сценарий нагрузочного прогона не описан в chat-load.flows: " + flow);
+            }
+        }
+        for (String user : users) {
+            login(user);
+        }
+
+        log.info("Прогрев: {} с, {} запросов/с, {} виртуальных пользователей.", warmupSeconds, targetRps, concurrency);
+        runWorkload(new LatencyStats(), TimeUnit.SECONDS.toNanos(warmupSeconds));
+
+        log.info("Измерение: {} с, {} запросов/с, {} виртуальных пользователей, смесь сценариев {}.",
+                durationSeconds, targetRps, concurrency, mix);
+        LatencyStats stats = new LatencyStats();
+        long elapsed = runWorkload(stats, TimeUnit.SECONDS.toNanos(durationSeconds));
+        Map<String, LatencyStats.OperationSummary> summary = stats.summarize(elapsed);
+        summary.forEach((operation, s) -> log.info(
+                "{}: n={}, ошибок={}, p50={} мс, p95={} мс, p99={} мс, {} оп/с",
+                operation, s.count(), s.errors(), format(s.p50Ms()), format(s.p95Ms()), format(s.p99Ms()),
+                format(s.throughputPerSecond())));
+        double achievedRps = summary.values().stream().mapToDouble(LatencyStats.OperationSummary::throughputPerSecond).sum();
+        log.info("Достигнутый темп: {} запросов/с при целевом {}.", format(achievedRps), targetRps);
+        if (achievedRps < targetRps * 0.9) {
+            log.warn("Целевой темп не достигнут: увеличьте chat-load.concurrency или проверьте ошибки.");
+        }
+
+        if (!reportPath.isBlank()) {
+            writeReport(Path.of(reportPath), summary);
+        }
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+
+    private long runWorkload(LatencyStats stats, long durationNanos) throws InterruptedException {
+        List<String> weightedFlows = new ArrayList<>();
+        mix.forEach((flow, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weightedFlows.add(flow);
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long started = System.nanoTime();
+        long deadline = started + durationNanos;
+        nextSlot = new AtomicLong(started);
+        for (int t = 0; t < concurrency; t++) {
+            String user = users.get(t % users.size());
+            executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    String flow = weightedFlows.get(ThreadLocalRandom.current().nextInt(weightedFlows.size()));
+                    runFlow(stats, user, flow, deadline);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(5), TimeUnit.NANOSECONDS);
+        return System.nanoTime() - started;
+    }
+
+    private void runFlow(LatencyStats stats, String user, String flow, long deadline) {
+        UUID sessionId = null;
+        List<String> messages = flows.get(flow);
+        for (int step = 0; step < messages.size(); step++) {
+            if (!awaitSlot(deadline)) {
+                return;
+            }
+            String operation = flow + "#" + (step + 1);
+            long opStarted = System.nanoTime();
+            try {
+                JsonNode response = send(user, sessionId, messages.get(step).replace("{n}", String.valueOf(messageCounter.incrementAndGet())));
+                stats.record(operation, System.nanoTime() - opStarted);
+                if (response.path("errors").isArray() && !response.path("errors").isEmpty()) {
+                    stats.recordError(operation);
+                    log.debug("Шаг {} вернул ошибки: {}", operation, response.path("errors"));
+                }
+                if (sessionId == null && response.hasNonNull("sessionId")) {
+                    sessionId = UUID.fromString(response.get("sessionId").asText());
+                }
+            } catch (Exception e) {
+                stats.recordError(operation);
+                log.debug("Ошибка шага {}: {}", operation, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Выдает запросам моменты отправки с интервалом 1/target-rps. Если поток отстал от графика
+     * больше чем на секунду, график сдвигается, чтобы не отправлять накопившиеся запросы пачкой.
+     *
+     * @return false, если измеряемое окно закончилось
+     */
+    private boolean awaitSlot(long deadline) {
+        long now = System.nanoTime();
+        long slot = nextSlot.getAndAdd(pacingIntervalNanos);
+        if (slot < now - TimeUnit.SECONDS.toNanos(1)) {
+            nextSlot.compareAndSet(slot + pacingIntervalNanos, now + pacingIntervalNanos);
+            slot = now;
+        }
+        if (slot >= deadline) {
+            return false;
+        }
+        long waitNanos = slot - now;
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private JsonNode send(String user, UUID sessionId, String message) throws IOException {
+        ChatRequest request = new ChatRequest();
+        request.setMessage(message);
+        request.setSessionId(sessionId);
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("requestDto", request, MediaType.APPLICATION_JSON);
+
+        String response = restClient.post()
+                .uri("/api/chat")
+                .header("Authorization", "Bearer " + tokens.get(user))
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(body.build())
+                .retrieve()
+                .body(String.class);
+        return objectMapper.readTree(response == null ? "{}" : response);
+    }
+
+    private void login(String user) {
+        int separator = user.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Учетная запись chat-load.users должна иметь вид логин:пароль");
+        }
+        LoginRequestDto request = new LoginRequestDto();
+        request.setUsername(user.substring(0, separator));
+        request.setPassword(user.substring(separator + 1));
+        try {
+            JsonNode response = restClient.post()
+                    .uri("/api/auth/login")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(request)
+                    .retrieve()
+                    .body(JsonNode.class);
+            if (response == null || !response.hasNonNull("accessToken")) {
+                throw new IllegalStateException("Ответ аутентификации не содержит accessToken");
+            }
+            tokens.put(user, response.get("accessToken").asText());
+        } catch (RestClientException e) {
+            throw new IllegalStateException("Не удалось войти под пользователем " + request.getUsername() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void writeReport(Path file, Map<String, LatencyStats.OperationSummary> summary) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), summary);
+        log.info("Отчет сохранен в {}", file);
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
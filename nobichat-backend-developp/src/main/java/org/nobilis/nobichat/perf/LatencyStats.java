@@ -0,0 +1,76 @@
+package org.nobilis.nobichat.perf;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Накопитель задержек по операциям для нагрузочных прогонов.
+ * Хранит все замеры в памяти и считает перцентили по методу nearest-rank.
+ */
+public class LatencyStats {
+
+    private final Map<String, Samples> samplesByOperation = new ConcurrentHashMap<>();
+    private final Map<String, Long> errorsByOperation = new ConcurrentHashMap<>();
+
+    public void record(String operation, long durationNanos) {
+        samplesByOperation.computeIfAbsent(operation, k -> new Samples()).add(durationNanos);
+    }
+
+    public void recordError(String operation) {
+        errorsByOperation.merge(operation, 1L, Long::sum);
+    }
+
+    /**
+     * Формирует сводку по всем операциям.
+     *
+     * @param elapsedNanos Длительность измеряемого окна, используется для расчета пропускной способности.
+     * @return Сводка в порядке первого появления операции.
+     */
+    public Map<String, OperationSummary> summarize(long elapsedNanos) {
+        Map<String, OperationSummary> result = new LinkedHashMap<>();
+        double elapsedSeconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+        samplesByOperation.keySet().stream().sorted().forEach(operation -> {
+            long[] sorted = samplesByOperation.get(operation).snapshot();
+            Arrays.sort(sorted);
+            result.put(operation, new OperationSummary(
+                    sorted.length,
+                    errorsByOperation.getOrDefault(operation, 0L),
+                    percentileMillis(sorted, 50),
+                    percentileMillis(sorted, 95),
+                    percentileMillis(sorted, 99),
+                    sorted.length / elapsedSeconds));
+        });
+        return result;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        int index = Math.min(Math.max(rank - 1, 0), sorted.length - 1);
+        return sorted[index] / 1_000_000.0;
+    }
+
+    public record OperationSummary(long count, long errors, double p50Ms, double p95Ms, double p99Ms,
+                                   double throughputPerSecond) {
+    }
+
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
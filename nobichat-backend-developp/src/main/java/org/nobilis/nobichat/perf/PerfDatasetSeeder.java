@@ -0,0 +1,233 @@
+package org.nobilis.nobichat.perf;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Генератор синтетического набора данных поставщиков для нагрузочных прогонов.
+ * Данные вставляются пачками через INSERT ... SELECT generate_series, поэтому объемы
+ * в десятки миллионов строк не требуют передачи данных из приложения.
+ * Идентификаторы детерминированы (md5 от номера строки), что позволяет раннеру
+ * обращаться к существующим записям без предварительной выборки.
+ * Пачки вставляются с отключенными уведомлениями об изменениях (nobichat.entity_change_notify = off),
+ * чтобы генерация не порождала NOTIFY для ленты изменений.
+ */
+@Slf4j
+@Component
+@Profile("perf")
+@RequiredArgsConstructor
+public class PerfDatasetSeeder {
+
+    static final String SUPPLIER_KEY_PREFIX = "perf-supplier-";
+    static final String ORDER_KEY_PREFIX = "perf-order-";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${perf.seed.mode:append}")
+    private String mode;
+
+    @Value("${perf.seed.suppliers:10000}")
+    private long suppliers;
+
+    @Value("${perf.seed.contacts-per-supplier:3}")
+    private int contactsPerSupplier;
+
+    @Value("${perf.seed.prices-per-supplier:20}")
+    private int pricesPerSupplier;
+
+    @Value("${perf.seed.orders:50000}")
+    private long orders;
+
+    @Value("${perf.seed.items-per-order:5}")
+    private int itemsPerOrder;
+
+    @Value("${perf.seed.batch-size:100000}")
+    private long batchSize;
+
+    public long getSuppliers() {
+        return suppliers;
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    /**
+     * Подготавливает набор данных согласно perf.seed.mode:
+     * skip - данные не трогаются, reset - таблицы очищаются и заполняются заново,
+     * append - данные дозаполняются до заданных объемов.
+     */
+    public void seed() {
+        if ("skip".equalsIgnoreCase(mode)) {
+            log.info("Генерация данных пропущена (perf.seed.mode=skip).");
+            return;
+        }
+        if ("reset".equalsIgnoreCase(mode)) {
+            log.warn("Очистка таблиц поставщиков перед генерацией данных (perf.seed.mode=reset).");
+            jdbcTemplate.execute("TRUNCATE supplier_order_items, supplier_orders, supplier_prices, supplier_contacts, suppliers CASCADE");
+        }
+
+        long existingSuppliers = countByPrefix("suppliers", "supplier_code", "PERF-S-");
+        long existingOrders = countByPrefix("supplier_orders", "order_number", "PERF-O-");
+
+        long started = System.nanoTime();
+        for (long from = existingSuppliers + 1; from <= suppliers; from += batchSize) {
+            long batchFrom = from;
+            long to = Math.min(from + batchSize - 1, suppliers);
+            withoutChangeNotifications(() -> {
+                insertSuppliers(batchFrom, to);
+                insertContacts(batchFrom, to);
+                insertPrices(batchFrom, to);
+            });
+            log.info("Сгенерированы поставщики {}..{} из {}", from, to, suppliers);
+        }
+        for (long from = existingOrders + 1; from <= orders; from += batchSize) {
+            long batchFrom = from;
+            long to = Math.min(from + batchSize - 1, orders);
+            withoutChangeNotifications(() -> {
+                insertOrders(batchFrom, to);
+                insertOrderItems(batchFrom, to);
+            });
+            log.info("Сгенерированы заказы {}..{} из {}", from, to, orders);
+        }
+        jdbcTemplate.execute("ANALYZE suppliers, supplier_contacts, supplier_prices, supplier_orders, supplier_order_items");
+        log.info("Генерация данных завершена за {} с.", (System.nanoTime() - started) / 1_000_000_000);
+    }
+
+    public static UUID supplierId(long index) {
+        return md5Uuid(SUPPLIER_KEY_PREFIX + index);
+    }
+
+    public static UUID orderId(long index) {
+        return md5Uuid(ORDER_KEY_PREFIX + index);
+    }
+
+    private void withoutChangeNotifications(Runnable inserts) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.queryForObject("SELECT set_config('nobichat.entity_change_notify', 'off', true)", String.class);
+            inserts.run();
+        });
+    }
+
+    private long countByPrefix(String table, String column, String prefix) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM " + table + " WHERE " + column + " LIKE ?", Long.class, prefix + "%");
+        return count == null ? 0 : count;
+    }
+
+    private void insertSuppliers(long from, long to) {
+        jdbcTemplate.update("""
+                INSERT INTO suppliers (id, name, description, supplier_code, director_name, active, inn, contract_number,
+                                       legal_address, kpp, ogrn, okpo, bank_name, correspondent_account, created_by)
+                SELECT md5(? || i)::uuid,
+                       'Поставщик ' || i,
+                       'Сгенерированный поставщик №' || i,
+                       'PERF-S-' || i,
+                       'Директор ' || (i % 5000),
+                       i % 10 <> 0,
+                       lpad((7700000000 + i)::text, 10, '0'),
+                       'Д-' || i,
+                       'г. Москва, ул. Тестовая, д. ' || (i % 300),
+                       lpad((770001000 + i % 1000)::text, 9, '0'),
+                       lpad((1027700000000 + i)::text, 13, '0'),
+                       lpad((i % 100000000)::text, 8, '0'),
+                       'Банк ' || (i % 50),
+                       '301018104' || lpad((i % 100000000000)::text, 11, '0'),
+                       'perf'
+                FROM generate_series(?::bigint, ?::bigint) AS i
+                """, SUPPLIER_KEY_PREFIX, from, to);
+    }
+
+    private void insertContacts(long from, long to) {
+        if (contactsPerSupplier <= 0) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO supplier_contacts (supplier_id, full_name, position, email, phone, notes, is_primary, created_by)
+                SELECT md5(? || i)::uuid,
+                       'Контакт ' || i || '-' || c,
+                       CASE c % 3 WHEN 0 THEN 'Менеджер' WHEN 1 THEN 'Бухгалтер' ELSE 'Директор' END,
+                       'contact' || i || '_' || c || '@perf.local',
+                       '+7900' || lpad(((i * 10 + c) % 10000000)::text, 7, '0'),
+                       NULL,
+                       c = 1,
+                       'perf'
+                FROM generate_series(?::bigint, ?::bigint) AS i
+                CROSS JOIN generate_series(1, ?) AS c
+                """, SUPPLIER_KEY_PREFIX, from, to, contactsPerSupplier);
+    }
+
+    private void insertPrices(long from, long to) {
+        if (pricesPerSupplier <= 0) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO supplier_prices (supplier_id, article_number, name, unit, price, created_by)
+                SELECT md5(? || i)::uuid,
+                       'ART-' || lpad(((i * 31 + p) % 1000000)::text, 6, '0'),
+                       'Товар ' || ((i * 31 + p) % 20000),
+                       CASE p % 4 WHEN 0 THEN 'шт' WHEN 1 THEN 'кг' WHEN 2 THEN 'м' ELSE 'упак' END,
+                       round((10 + ((i * 7919 + p * 104729) % 100000) / 10.0)::numeric, 2),
+                       'perf'
+                FROM generate_series(?::bigint, ?::bigint) AS i
+                CROSS JOIN generate_series(1, ?) AS p
+                """, SUPPLIER_KEY_PREFIX, from, to, pricesPerSupplier);
+    }
+
+    private void insertOrders(long from, long to) {
+        jdbcTemplate.update("""
+                INSERT INTO supplier_orders (id, supplier_id, order_number, status, total_amount, order_date, created_by)
+                SELECT md5(? || o)::uuid,
+                       md5(? || (1 + (o * 7919) % ?))::uuid,
+                       'PERF-O-' || o,
+                       CASE o % 5 WHEN 0 THEN 'NEW' WHEN 1 THEN 'CONFIRMED' WHEN 2 THEN 'SHIPPED'
+                                  WHEN 3 THEN 'DELIVERED' ELSE 'CANCELLED' END,
+                       round((100 + (o * 104729) % 1000000 / 10.0)::numeric, 2),
+                       now() - ((o % 730) || ' days')::interval,
+                       'perf'
+                FROM generate_series(?::bigint, ?::bigint) AS o
+                """, ORDER_KEY_PREFIX, SUPPLIER_KEY_PREFIX, Math.max(suppliers, 1), from, to);
+    }
+
+    private void insertOrderItems(long from, long to) {
+        if (itemsPerOrder <= 0) {
+            return;
+        }
+        jdbcTemplate.update("""
+                INSERT INTO supplier_order_items (order_id, article_number, name, unit, quantity, price_per_unit, line_total, created_by)
+                SELECT md5(? || o)::uuid,
+                       'ART-' || lpad(((o * 13 + n) % 1000000)::text, 6, '0'),
+                       'Товар ' || ((o * 13 + n) % 20000),
+                       'шт',
+                       1 + (o + n) % 50,
+                       round((10 + ((o * 7 + n) % 10000) / 10.0)::numeric, 2),
+                       round(((1 + (o + n) % 50) * (10 + ((o * 7 + n) % 10000) / 10.0))::numeric, 2),
+                       'perf'
+                FROM generate_series(?::bigint, ?::bigint) AS o
+                CROSS JOIN generate_series(1, ?) AS n
+                """, ORDER_KEY_PREFIX, from, to, itemsPerOrder);
+    }
+
+    private static UUID md5Uuid(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            String hex = HexFormat.of().formatHex(digest);
+            return UUID.fromString(hex.substring(0, 8) + "-" + hex.substring(8, 12) + "-" + hex.substring(12, 16)
+                    + "-" + hex.substring(16, 20) + "-" + hex.substring(20));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package org.nobilis.nobichat.perf;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.entities.EntitiesSearchRequestDto;
+import org.nobilis.nobichat.service.DynamicEntityQueryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный регрессионный прогон слоя динамических сущностей (/api/entities).
+ * Запускается только с профилем perf: генерирует набор данных поставщиков, выполняет
+ * фиксированную смесь операций search/get/count/write через {@link DynamicEntityQueryService}
+ * и сравнивает p50/p95/p99 и пропускную способность с сохраненным эталоном.
+ * Приложение завершается с кодом 1, если хотя бы одна метрика вышла за допустимое отклонение.
+ */
+@Slf4j
+@Component
+@Profile("perf")
+@RequiredArgsConstructor
+public class PerfRegressionRunner implements CommandLineRunner {
+
+    private static final String[] ORDER_STATUSES = {"NEW", "CONFIRMED", "SHIPPED", "DELIVERED", "CANCELLED"};
+
+    private final PerfDatasetSeeder seeder;
+    private final DynamicEntityQueryService dynamicEntityQueryService;
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext applicationContext;
+
+    @Value("${perf.entities.supplier:supplier}")
+    private String supplierEntity;
+
+    @Value("${perf.entities.order:supplierOrder}")
+    private String orderEntity;
+
+    @Value("${perf.workload.fields:name}")
+    private List<String> fields;
+
+    @Value("${perf.workload.search-field:name}")
+    private String searchField;
+
+    @Value("${perf.workload.status-field:status}")
+    private String statusField;
+
+    @Value("${perf.workload.write-field:description}")
+    private String writeField;
+
+    @Value("${perf.workload.threads:8}")
+    private int threads;
+
+    @Value("${perf.workload.warmup-seconds:10}")
+    private int warmupSeconds;
+
+    @Value("${perf.workload.duration-seconds:60}")
+    private int durationSeconds;
+
+    @Value("#{${perf.workload.mix}}")
+    private Map<String, Integer> mix;
+
+    @Value("${perf.baseline.path:perf/baseline.json}")
+    private String baselinePath;
+
+    @Value("${perf.baseline.update:false}")
+    private boolean updateBaseline;
+
+    @Value("${perf.baseline.tolerance:0.2}")
+    private double tolerance;
+
+    @Override
+    public void run(String... args) throws Exception {
+        seeder.seed();
+
+        log.info("Прогрев: {} с, {} потоков.", warmupSeconds, threads);
+        runWorkload(new LatencyStats(), TimeUnit.SECONDS.toNanos(warmupSeconds));
+
+        log.info("Измерение: {} с, {} потоков, смесь операций {}.", durationSeconds, threads, mix);
+        LatencyStats stats = new LatencyStats();
+        long elapsed = runWorkload(stats, TimeUnit.SECONDS.toNanos(durationSeconds));
+        Map<String, LatencyStats.OperationSummary> summary = stats.summarize(elapsed);
+        summary.forEach((operation, s) -> log.info(
+                "{}: n={}, ошибок={}, p50={} мс, p95={} мс, p99={} мс, {} оп/с",
+                operation, s.count(), s.errors(), format(s.p50Ms()), format(s.p95Ms()), format(s.p99Ms()),
+                format(s.throughputPerSecond())));
+
+        int exitCode = 0;
+        Path baselineFile = Path.of(baselinePath);
+        if (updateBaseline || !Files.exists(baselineFile)) {
+            writeBaseline(baselineFile, summary);
+        } else {
+            List<String> regressions = compareWithBaseline(readBaseline(baselineFile), summary);
+            if (!regressions.isEmpty()) {
+                regressions.forEach(r -> log.error("Регрессия: {}", r));
+                exitCode = 1;
+            } else {
+                log.info("Регрессий относительно эталона {} не обнаружено.", baselineFile);
+            }
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+
+    private long runWorkload(LatencyStats stats, long durationNanos) throws InterruptedException {
+        List<String> operations = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                operations.add(operation);
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long started = System.nanoTime();
+        long deadline = started + durationNanos;
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    String operation = operations.get(ThreadLocalRandom.current().nextInt(operations.size()));
+                    long opStarted = System.nanoTime();
+                    try {
+                        execute(operation);
+                        stats.record(operation, System.nanoTime() - opStarted);
+                    } catch (Exception e) {
+                        stats.recordError(operation);
+                        log.debug("Ошибка операции {}: {}", operation, e.getMessage());
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(5), TimeUnit.NANOSECONDS);
+        return System.nanoTime() - started;
+    }
+
+    private void execute(String operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (operation) {
+            case "search" -> dynamicEntityQueryService.findEntities(supplierEntity, fields,
+                    query(searchField, "contains", "Поставщик " + (1 + random.nextLong(Math.max(seeder.getSuppliers() / 100, 1)))),
+                    PageRequest.of(0, 20));
+            case "get" -> dynamicEntityQueryService.findEntityById(supplierEntity,
+                    PerfDatasetSeeder.supplierId(1 + random.nextLong(Math.max(seeder.getSuppliers(), 1))), fields);
+            case "count" -> dynamicEntityQueryService.countEntities(orderEntity,
+                    query(statusField, "equals", ORDER_STATUSES[random.nextInt(ORDER_STATUSES.length)]));
+            case "write" -> {
+                Map<String, Object> update = new LinkedHashMap<>();
+                update.put(writeField, "Обновлено нагрузочным прогоном " + System.nanoTime());
+                dynamicEntityQueryService.updateEntity(supplierEntity,
+                        PerfDatasetSeeder.supplierId(1 + random.nextLong(Math.max(seeder.getSuppliers(), 1))), update);
+            }
+            default -> throw new IllegalArgumentException("Неизвестная операция нагрузочного прогона: " + operation);
+        }
+    }
+
+    private EntitiesSearchRequestDto.QueryDto query(String field, String operator, Object value) {
+        EntitiesSearchRequestDto.QueryDto.ConditionDto condition = new EntitiesSearchRequestDto.QueryDto.ConditionDto();
+        condition.setField(field);
+        condition.setOperator(operator);
+        condition.setValue(value);
+        EntitiesSearchRequestDto.QueryDto query = new EntitiesSearchRequestDto.QueryDto();
+        query.setConditions(List.of(condition));
+        return query;
+    }
+
+    private List<String> compareWithBaseline(Map<String, LatencyStats.OperationSummary> baseline,
+                                             Map<String, LatencyStats.OperationSummary> current) {
+        List<String> regressions = new ArrayList<>();
+        baseline.forEach((operation, base) -> {
+            LatencyStats.OperationSummary actual = current.get(operation);
+            if (actual == null) {
+                regressions.add(operation + ": операция отсутствует в текущем прогоне");
+                return;
+            }
+            if (actual.errors() > 0) {
+                regressions.add(operation + ": ошибок " + actual.errors());
+            }
+            checkUpper(regressions, operation, "p95", base.p95Ms(), actual.p95Ms());
+            checkUpper(regressions, operation, "p99", base.p99Ms(), actual.p99Ms());
+            if (actual.throughputPerSecond() < base.throughputPerSecond() * (1 - tolerance)) {
+                regressions.add(String.format("%s: пропускная способность %s оп/с < эталона %s оп/с",
+                        operation, format(actual.throughputPerSecond()), format(base.throughputPerSecond())));
+            }
+        });
+        return regressions;
+    }
+
+    private void checkUpper(List<String> regressions, String operation, String metric, double base, double actual) {
+        if (actual > base * (1 + tolerance)) {
+            regressions.add(String.format("%s: %s %s мс > эталона %s мс", operation, metric, format(actual), format(base)));
+        }
+    }
+
+    private Map<String, LatencyStats.OperationSummary> readBaseline(Path file) throws IOException {
+        return objectMapper.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, LatencyStats.OperationSummary>>() {
+        });
+    }
+
+    private void writeBaseline(Path file, Map<String, LatencyStats.OperationSummary> summary) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        objectMapper.writer().with(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), summary);
+        log.info("Эталон сохранен в {}", file);
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
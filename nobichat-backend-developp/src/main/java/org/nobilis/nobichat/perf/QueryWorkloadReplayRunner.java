@@ -0,0 +1,239 @@
+package org.nobilis.nobichat.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.service.QueryWorkloadRecorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Воспроизведение нагрузки, записанной {@link QueryWorkloadRecorder}, на произвольном Postgres.
+ * Запросы выполняются в исходном темпе (speed=1), ускоренно (speed>1) или без пауз (speed=0).
+ * Если для записи не были сохранены значения параметров, используются последние сохраненные
+ * значения той же формы запроса. Изменяющие запросы по умолчанию пропускаются; при
+ * include-writes=true они выполняются в транзакции с откатом.
+ * По завершении печатается сводка задержек по каждой форме запроса.
+ */
+@Slf4j
+@Component
+@Profile("workload-replay")
+@RequiredArgsConstructor
+public class QueryWorkloadReplayRunner implements CommandLineRunner {
+
+    private final ObjectMapper objectMapper;
+    private final ApplicationContext applicationContext;
+
+    @Value("${query-workload.replay.source:/opt/app/log/query-workload}")
+    private String source;
+
+    @Value("${query-workload.replay.url:${spring.datasource.url}}")
+    private String url;
+
+    @Value("${query-workload.replay.username:${spring.datasource.username}}")
+    private String username;
+
+    @Value("${query-workload.replay.password:${spring.datasource.password}}")
+    private String password;
+
+    @Value("${query-workload.replay.speed:1.0}")
+    private double speed;
+
+    @Value("${query-workload.replay.concurrency:8}")
+    private int concurrency;
+
+    @Value("${query-workload.replay.include-writes:false}")
+    private boolean includeWrites;
+
+    @Override
+    public void run(String... args) throws Exception {
+        List<JsonNode> entries = readEntries(Path.of(source));
+        if (entries.isEmpty()) {
+            log.warn("В {} не найдено записей нагрузки.", source);
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+            return;
+        }
+
+        try (HikariDataSource dataSource = createDataSource()) {
+            replay(entries, dataSource);
+        }
+
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+
+    /**
+     * Пул соединений размером с параллельность воспроизведения, заполненный заранее, чтобы задержки
+     * не включали установку соединений.
+     */
+    private HikariDataSource createDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("workload-replay");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(concurrency);
+        config.setMinimumIdle(concurrency);
+        return new HikariDataSource(config);
+    }
+
+    private void replay(List<JsonNode> entries, DataSource dataSource) throws InterruptedException {
+        NamedParameterJdbcTemplate jdbc = new NamedParameterJdbcTemplate(dataSource);
+        TransactionTemplate rollbackTransaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        Map<String, JsonNode> lastSampledParams = new HashMap<>();
+        Map<String, String> sqlByShape = new HashMap<>();
+        LatencyStats stats = new LatencyStats();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        Semaphore inFlight = new Semaphore(concurrency * 4);
+
+        long firstTs = entries.get(0).path("ts").asLong();
+        long started = System.nanoTime();
+        int skipped = 0;
+        for (JsonNode entry : entries) {
+            String kind = entry.path("kind").asText();
+            boolean write = kind.equals("insert") || kind.equals("update") || kind.equals("delete");
+            if (write && !includeWrites) {
+                skipped++;
+                continue;
+            }
+            String shape = entry.path("shape").asText();
+            if (entry.hasNonNull("params")) {
+                lastSampledParams.put(shape, entry.get("params"));
+            }
+            JsonNode values = entry.hasNonNull("params") ? entry.get("params") : lastSampledParams.get(shape);
+            if (values == null) {
+                skipped++;
+                continue;
+            }
+            String sql = entry.path("sql").asText();
+            sqlByShape.putIfAbsent(shape, kind + ": " + sql);
+            MapSqlParameterSource params = toParams(entry.path("paramTypes"), values);
+
+            if (speed > 0) {
+                long dueNanos = started + (long) ((entry.path("ts").asLong() - firstTs) * 1_000_000 / speed);
+                long sleepNanos = dueNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+            }
+
+            inFlight.acquire();
+            executor.submit(() -> {
+                long opStarted = System.nanoTime();
+                try {
+                    if (write) {
+                        rollbackTransaction.executeWithoutResult(status -> {
+                            jdbc.update(sql, params);
+                            status.setRollbackOnly();
+                        });
+                    } else {
+                        jdbc.queryForList(sql, params);
+                    }
+                    stats.record(shape, System.nanoTime() - opStarted);
+                } catch (Exception e) {
+                    stats.recordError(shape);
+                    log.debug("Ошибка воспроизведения формы {}: {}", shape, e.getMessage());
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+
+        Map<String, LatencyStats.OperationSummary> summary = stats.summarize(System.nanoTime() - started);
+        log.info("Воспроизведено записей: {}, пропущено: {}", entries.size() - skipped, skipped);
+        summary.entrySet().stream()
+                .sorted(Comparator.comparingDouble((Map.Entry<String, LatencyStats.OperationSummary> e) -> e.getValue().p95Ms()).reversed())
+                .forEach(e -> log.info("[{}] n={}, ошибок={}, p50={} мс, p95={} мс, p99={} мс | {}",
+                        e.getKey(), e.getValue().count(), e.getValue().errors(),
+                        String.format("%.2f", e.getValue().p50Ms()), String.format("%.2f", e.getValue().p95Ms()),
+                        String.format("%.2f", e.getValue().p99Ms()), sqlByShape.get(e.getKey())));
+    }
+
+    private List<JsonNode> readEntries(Path path) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> list = Files.list(path)) {
+                list.filter(p -> p.getFileName().toString().endsWith(".jsonl")).forEach(files::add);
+            }
+        } else if (Files.exists(path)) {
+            files.add(path);
+        }
+
+        List<JsonNode> entries = new ArrayList<>();
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isBlank()) {
+                        entries.add(objectMapper.readTree(line));
+                    }
+                }
+            }
+        }
+        entries.sort(Comparator.comparingLong(e -> e.path("ts").asLong()));
+        return entries;
+    }
+
+    private MapSqlParameterSource toParams(JsonNode paramTypes, JsonNode values) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        for (Map.Entry<String, JsonNode> field : paramTypes.properties()) {
+            JsonNode value = values.get(field.getKey());
+            params.addValue(field.getKey(), convert(field.getValue().asText(), value));
+        }
+        return params;
+    }
+
+    private Object convert(String type, JsonNode value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        return switch (type) {
+            case "UUID" -> UUID.fromString(value.asText());
+            case "Integer" -> value.asInt();
+            case "Long" -> value.asLong();
+            case "BigDecimal" -> new BigDecimal(value.asText());
+            case "Double" -> value.asDouble();
+            case "Boolean" -> value.asBoolean();
+            case "LocalDate" -> LocalDate.parse(value.asText());
+            case "Instant" -> Instant.parse(value.asText()).atOffset(ZoneOffset.UTC);
+            case "OffsetDateTime" -> OffsetDateTime.parse(value.asText());
+            default -> value.asText();
+        };
+    }
+}
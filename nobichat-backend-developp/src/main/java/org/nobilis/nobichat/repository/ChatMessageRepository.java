@@ -19,4 +19,9 @@ import java.util.UUID;
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, UUID> {
     List<ChatMessage> findBySessionIdOrderByCreationDateAsc(UUID sessionId);
+
+    /**
+     * Нижняя граница по created_date позволяет PostgreSQL отсечь секции, созданные раньше сессии.
+     */
+    List<ChatMessage> findBySessionIdAndCreationDateGreaterThanEqualOrderByCreationDateAsc(UUID sessionId, Instant from);
 }
@@ -2,10 +2,15 @@ package org.nobilis.nobichat.repository;
 
 import org.nobilis.nobichat.model.Ontology;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface OntologyStorageRepository extends JpaRepository<Ontology, UUID> {
     Optional<Ontology> findFirstByOrderByCreationDateDesc();
+
+    @Query("select o.lastUpdateDate from Ontology o order by o.creationDate desc limit 1")
+    Optional<Instant> findLatestUpdateDate();
 }
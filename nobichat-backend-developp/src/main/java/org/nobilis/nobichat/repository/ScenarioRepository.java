@@ -13,6 +13,12 @@ import java.util.UUID;
 @Repository
 public interface ScenarioRepository extends JpaRepository<Scenario, UUID> {
 
+    interface ScenarioSummary {
+        UUID getId();
+
+        String getName();
+    }
+
     @Query(value = "SELECT EXISTS(SELECT 1 FROM scenarios WHERE definition ->> 'name' = :name)", nativeQuery = true)
     boolean existsByNameInDefinition(@Param("name") String name);
 
@@ -21,4 +27,7 @@ public interface ScenarioRepository extends JpaRepository<Scenario, UUID> {
 
     @Query(value = "SELECT definition ->> 'name' FROM scenarios", nativeQuery = true)
     List<String> findAllScenarioNames();
+
+    @Query(value = "SELECT id, definition ->> 'name' AS name FROM scenarios ORDER BY created_date", nativeQuery = true)
+    List<ScenarioSummary> findAllSummaries();
 }
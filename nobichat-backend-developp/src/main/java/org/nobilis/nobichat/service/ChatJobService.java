@@ -0,0 +1,546 @@
+package org.nobilis.nobichat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.chat.ChatJobDto;
+import org.nobilis.nobichat.dto.chat.ChatRequest;
+import org.nobilis.nobichat.dto.chat.ChatResponseDto;
+import org.nobilis.nobichat.model.User;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронный режим обработки сообщений чата.
+ * <p>
+ * {@link #submit} проверяет доступ к сессии (или создает ее), ставит сообщение в очередь и сразу возвращает
+ * задачу со статусом QUEUED; сама обработка выполняется на ограниченном пуле chatJobExecutor. Состояние задачи
+ * и итоговый {@link ChatResponseDto} хранятся в Redis с TTL, поэтому статус доступен с любой реплики.
+ * <p>
+ * Сообщения одной сессии обрабатываются строго по очереди на всех репликах: порядок задает общий список
+ * сессии в Redis, и задача выполняется, только когда стоит в его голове. Задачу из головы списка выполняет
+ * принявшая ее реплика; остальные реплики ждут ее завершения. Задача реплики, переставшей обновлять
+ * свою метку в Redis, завершается с ошибкой и снимается из очереди, чтобы не блокировать сессию.
+ * <p>
+ * Повторная отправка с тем же ключом идемпотентности возвращает уже созданную задачу,
+ * не создавая новое сообщение и не вызывая LLM повторно.
+ */
+@Slf4j
+@Service
+public class ChatJobService {
+
+    private static final String REDIS_KEY_PREFIX = "nobichat:chat-job:";
+    private static final String IDEMPOTENCY_KEY_PREFIX = "nobichat:chat-job-idempotency:";
+    private static final String SESSION_QUEUE_KEY_PREFIX = "nobichat:chat-session-queue:";
+    private static final String REPLICA_KEY_PREFIX = "nobichat:chat-job-replica:";
+
+    private record StoredJob(UUID userId, ChatJobDto job) {
+    }
+
+    private final ChatService chatService;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final AsyncTaskExecutor executor;
+    private final Duration resultTtl;
+    private final Duration maxWait;
+    private final Duration emitterTimeout;
+    private final int maxPending;
+    private final Duration replicaTtl;
+
+    /**
+     * Идентификатор реплики в записях очередей сессий.
+     */
+    private final String replicaId = UUID.randomUUID().toString();
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * Принятые этой репликой и еще не выполненные задачи по сессиям. Монитор этой карты охраняет
+     * также {@link #drainingSessions} и {@link #rescanSessions}.
+     */
+    private final Map<UUID, Map<UUID, Runnable>> sessionTasks = new HashMap<>();
+    /**
+     * Сессии, очередь которых сейчас разбирает воркер этой реплики.
+     */
+    private final Set<UUID> drainingSessions = new HashSet<>();
+    /**
+     * Сессии, в которые добавлена задача, пока воркер разбирал очередь: он перечитает голову очереди.
+     */
+    private final Set<UUID> rescanSessions = new HashSet<>();
+    /**
+     * Ожидания завершения задач (long-poll и SSE-подписки) на этой реплике.
+     */
+    private final Map<UUID, CompletableFuture<ChatJobDto>> completions = new ConcurrentHashMap<>();
+
+    public ChatJobService(ChatService chatService,
+                          StringRedisTemplate redisTemplate,
+                          ObjectMapper objectMapper,
+                          @Qualifier("chatJobExecutor") AsyncTaskExecutor executor,
+                          MeterRegistry meterRegistry,
+                          @Value("${chat.jobs.result-ttl:1h}") Duration resultTtl,
+                          @Value("${chat.jobs.max-wait:30s}") Duration maxWait,
+                          @Value("${chat.stream.emitter-timeout:3m}") Duration emitterTimeout,
+                          @Value("${chat.jobs.max-pending:200}") int maxPending,
+                          @Value("${chat.jobs.replica-ttl:30s}") Duration replicaTtl) {
+        this.chatService = chatService;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+        this.resultTtl = resultTtl;
+        this.maxWait = maxWait;
+        this.emitterTimeout = emitterTimeout;
+        this.maxPending = maxPending;
+        this.replicaTtl = replicaTtl;
+
+        Gauge.builder("chat.jobs.pending", pending, AtomicInteger::get)
+                .description("Число асинхронных задач чата в очереди и в обработке на реплике")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void registerReplica() {
+        redisTemplate.opsForValue().set(REPLICA_KEY_PREFIX + replicaId, Instant.now().toString(), replicaTtl);
+    }
+
+    /**
+     * @param idempotencyKey ключ клиента; повторная отправка с тем же ключом возвращает ранее созданную задачу
+     * @return задача в статусе QUEUED (или ранее созданная задача для того же ключа)
+     */
+    public ChatJobDto submit(ChatRequest request, List<MultipartFile> attachments, String idempotencyKey) {
+        User user = currentUser();
+        UUID jobId = UUID.randomUUID();
+
+        String idempotencyRedisKey = null;
+        if (StringUtils.hasText(idempotencyKey)) {
+            idempotencyRedisKey = IDEMPOTENCY_KEY_PREFIX + user.getId() + ":" + idempotencyKey;
+            Boolean claimed = redisTemplate.opsForValue().setIfAbsent(idempotencyRedisKey, jobId.toString(), resultTtl);
+            if (!Boolean.TRUE.equals(claimed)) {
+                String existingJobId = redisTemplate.opsForValue().get(idempotencyRedisKey);
+                if (existingJobId != null) {
+                    UUID existing = UUID.fromString(existingJobId);
+                    log.info("Повторная отправка сообщения с ключом идемпотентности {}: возвращаем задачу {}", idempotencyKey, existing);
+                    // Первая отправка могла еще не успеть сохранить задачу.
+                    return readJob(existing)
+                            .map(StoredJob::job)
+                            .orElseGet(() -> ChatJobDto.builder().jobId(existing).status(ChatJobDto.Status.QUEUED).build());
+                }
+                redisTemplate.opsForValue().set(idempotencyRedisKey, jobId.toString(), resultTtl);
+            }
+        }
+
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            releaseIdempotencyKey(idempotencyRedisKey);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Очередь обработки сообщений переполнена, повторите запрос позже.");
+        }
+
+        try {
+            UUID sessionId = chatService.resolveSessionId(request.getSessionId(), request.getMessage());
+            request.setSessionId(sessionId);
+            List<MultipartFile> bufferedAttachments = bufferAttachments(attachments);
+
+            ChatJobDto job = ChatJobDto.builder()
+                    .jobId(jobId)
+                    .sessionId(sessionId)
+                    .status(ChatJobDto.Status.QUEUED)
+                    .createdAt(LocalDateTime.now())
+                    .build();
+            save(user.getId(), job);
+
+            enqueue(sessionId, jobId, new DelegatingSecurityContextRunnable(() -> run(user.getId(), job, request, bufferedAttachments)));
+            log.info("Сообщение сессии {} поставлено в очередь, задача {}", sessionId, jobId);
+            return job;
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            releaseIdempotencyKey(idempotencyRedisKey);
+            redisTemplate.delete(REDIS_KEY_PREFIX + jobId);
+            throw e;
+        }
+    }
+
+    /**
+     * @return задача текущего пользователя
+     * @throws ResponseStatusException 404, если задачи нет, она истекла или принадлежит другому пользователю
+     */
+    public ChatJobDto getJob(UUID jobId) {
+        User user = currentUser();
+        return readJob(jobId)
+                .filter(stored -> stored.userId().equals(user.getId()))
+                .map(StoredJob::job)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Задача не найдена: " + jobId));
+    }
+
+    /**
+     * Long-poll: результат выставляется, как только задача завершена, либо по истечении {@code wait}
+     * (не дольше chat.jobs.max-wait) с текущим состоянием задачи.
+     */
+    public DeferredResult<ChatJobDto> poll(UUID jobId, Duration wait) {
+        ChatJobDto current = getJob(jobId);
+        Duration timeout = wait.compareTo(maxWait) > 0 ? maxWait : wait;
+
+        DeferredResult<ChatJobDto> result = new DeferredResult<>(Math.max(timeout.toMillis(), 1),
+                () -> readJob(jobId).map(StoredJob::job).orElse(current));
+        if (current.isFinished() || timeout.isZero() || timeout.isNegative()) {
+            result.setResult(current);
+            return result;
+        }
+        completionOf(jobId).thenAccept(result::setResult);
+        return result;
+    }
+
+    /**
+     * SSE-подписка: событие {@code status} с текущим состоянием задачи, затем, по завершении,
+     * событие {@code response} с итоговым {@link ChatResponseDto}, после чего поток закрывается.
+     */
+    public SseEmitter subscribe(UUID jobId) {
+        ChatJobDto current = getJob(jobId);
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        if (!send(emitter, "status", current)) {
+            return emitter;
+        }
+        if (current.isFinished()) {
+            if (send(emitter, "response", current.getResponse())) {
+                emitter.complete();
+            }
+            return emitter;
+        }
+        completionOf(jobId).whenComplete((job, error) -> {
+            if (job == null || send(emitter, "response", job.getResponse())) {
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * Задачи, ожидаемые на этой реплике, могут выполняться на другой: их завершение отслеживается по Redis.
+     */
+    @Scheduled(fixedDelayString = "${chat.jobs.completion-check-interval-ms:1000}")
+    public void checkAwaitedJobs() {
+        for (UUID jobId : completions.keySet()) {
+            Optional<StoredJob> stored = readJob(jobId);
+            if (stored.isEmpty()) {
+                CompletableFuture<ChatJobDto> completion = completions.remove(jobId);
+                if (completion != null) {
+                    completion.cancel(false);
+                }
+            } else if (stored.get().job().isFinished()) {
+                complete(stored.get().job());
+            }
+        }
+    }
+
+    /**
+     * Обновляет метку живости реплики и возобновляет разбор сессий, ожидающих задач других реплик.
+     */
+    @Scheduled(fixedDelayString = "${chat.jobs.session-check-interval-ms:1000}")
+    public void resumeWaitingSessions() {
+        registerReplica();
+        List<UUID> waiting;
+        synchronized (sessionTasks) {
+            waiting = new ArrayList<>();
+            for (UUID sessionId : sessionTasks.keySet()) {
+                if (drainingSessions.add(sessionId)) {
+                    waiting.add(sessionId);
+                }
+            }
+        }
+        for (UUID sessionId : waiting) {
+            try {
+                executor.execute(() -> drain(sessionId));
+            } catch (RuntimeException e) {
+                log.warn("Не удалось возобновить очередь сессии {}: {}", sessionId, e.getMessage());
+                synchronized (sessionTasks) {
+                    drainingSessions.remove(sessionId);
+                }
+            }
+        }
+    }
+
+    private void run(UUID userId, ChatJobDto queued, ChatRequest request, List<MultipartFile> attachments) {
+        ChatJobDto running = queued.toBuilder().status(ChatJobDto.Status.RUNNING).build();
+        save(userId, running);
+
+        ChatJobDto finished;
+        try {
+            ChatResponseDto response = chatService.processUserQuery(request, attachments);
+            finished = running.toBuilder().status(ChatJobDto.Status.COMPLETED).response(response).completedAt(LocalDateTime.now()).build();
+        } catch (Exception e) {
+            ChatResponseDto response = chatService.buildErrorResponse(running.getSessionId(), e);
+            finished = running.toBuilder().status(ChatJobDto.Status.FAILED).response(response).completedAt(LocalDateTime.now()).build();
+        }
+        save(userId, finished);
+        complete(finished);
+        log.info("Задача {} сессии {} завершена со статусом {}", finished.getJobId(), finished.getSessionId(), finished.getStatus());
+    }
+
+    /**
+     * Задача добавляется в локальные задачи до записи в общий список сессии: воркер, увидевший ее
+     * в голове списка, всегда найдет ее локально.
+     */
+    private void enqueue(UUID sessionId, UUID jobId, Runnable task) {
+        String entry = replicaId + ":" + jobId;
+        boolean start;
+        synchronized (sessionTasks) {
+            sessionTasks.computeIfAbsent(sessionId, id -> new LinkedHashMap<>()).put(jobId, task);
+        }
+        try {
+            String queueKey = SESSION_QUEUE_KEY_PREFIX + sessionId;
+            redisTemplate.opsForList().rightPush(queueKey, entry);
+            redisTemplate.expire(queueKey, resultTtl);
+        } catch (RuntimeException e) {
+            removeTask(sessionId, jobId);
+            throw e;
+        }
+        synchronized (sessionTasks) {
+            start = drainingSessions.add(sessionId);
+            if (!start) {
+                rescanSessions.add(sessionId);
+            }
+        }
+        if (!start) {
+            return;
+        }
+        try {
+            executor.execute(() -> drain(sessionId));
+        } catch (RuntimeException e) {
+            synchronized (sessionTasks) {
+                drainingSessions.remove(sessionId);
+            }
+            removeTask(sessionId, jobId);
+            redisTemplate.opsForList().remove(SESSION_QUEUE_KEY_PREFIX + sessionId, 1, entry);
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Очередь обработки сообщений переполнена, повторите запрос позже.", e);
+        }
+    }
+
+    /**
+     * Выполняет задачи сессии, пока в голове общего списка стоят задачи этой реплики. Если голова
+     * принадлежит другой живой реплике, разбор прекращается и возобновляется {@link #resumeWaitingSessions}.
+     */
+    private void drain(UUID sessionId) {
+        String queueKey = SESSION_QUEUE_KEY_PREFIX + sessionId;
+        while (true) {
+            try {
+                String head = redisTemplate.opsForList().index(queueKey, 0);
+                if (head != null && runHead(sessionId, queueKey, head)) {
+                    continue;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Не удалось разобрать очередь сессии {}: {}", sessionId, e.getMessage());
+            }
+            synchronized (sessionTasks) {
+                if (!rescanSessions.remove(sessionId)) {
+                    drainingSessions.remove(sessionId);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true}, если голова очереди снята и разбор можно продолжать
+     */
+    private boolean runHead(UUID sessionId, String queueKey, String head) {
+        int separator = head.lastIndexOf(':');
+        String owner = head.substring(0, separator);
+        UUID jobId = UUID.fromString(head.substring(separator + 1));
+
+        if (owner.equals(replicaId)) {
+            Runnable task = removeTask(sessionId, jobId);
+            if (task != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Ошибка выполнения асинхронной задачи сессии {}: {}", sessionId, e.getMessage(), e);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+        } else if (Boolean.TRUE.equals(redisTemplate.hasKey(REPLICA_KEY_PREFIX + owner))) {
+            return false;
+        } else {
+            abandon(jobId);
+        }
+        redisTemplate.opsForList().remove(queueKey, 1, head);
+        return true;
+    }
+
+    /**
+     * Задача реплики, которая перестала отвечать: ее запрос хранился только в памяти той реплики.
+     */
+    private void abandon(UUID jobId) {
+        readJob(jobId).filter(stored -> !stored.job().isFinished()).ifPresent(stored -> {
+            ChatJobDto job = stored.job();
+            log.warn("Реплика, принявшая задачу {} сессии {}, недоступна: задача снята из очереди", jobId, job.getSessionId());
+            ChatResponseDto response = chatService.buildErrorResponse(job.getSessionId(),
+                    new IllegalStateException("Реплика, принявшая сообщение, недоступна. Отправьте сообщение повторно."));
+            save(stored.userId(), job.toBuilder().status(ChatJobDto.Status.FAILED).response(response).completedAt(LocalDateTime.now()).build());
+        });
+    }
+
+    private Runnable removeTask(UUID sessionId, UUID jobId) {
+        synchronized (sessionTasks) {
+            Map<UUID, Runnable> tasks = sessionTasks.get(sessionId);
+            if (tasks == null) {
+                return null;
+            }
+            Runnable task = tasks.remove(jobId);
+            if (tasks.isEmpty()) {
+                sessionTasks.remove(sessionId);
+            }
+            return task;
+        }
+    }
+
+    private CompletableFuture<ChatJobDto> completionOf(UUID jobId) {
+        CompletableFuture<ChatJobDto> completion = completions.computeIfAbsent(jobId, id -> new CompletableFuture<>());
+        // Задача могла завершиться между чтением статуса и регистрацией ожидания.
+        readJob(jobId).map(StoredJob::job).filter(ChatJobDto::isFinished).ifPresent(this::complete);
+        return completion;
+    }
+
+    private void complete(ChatJobDto job) {
+        CompletableFuture<ChatJobDto> completion = completions.remove(job.getJobId());
+        if (completion != null) {
+            completion.complete(job);
+        }
+    }
+
+    private void save(UUID userId, ChatJobDto job) {
+        try {
+            redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + job.getJobId(),
+                    objectMapper.writeValueAsString(new StoredJob(userId, job)), resultTtl);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать задачу " + job.getJobId(), e);
+        }
+    }
+
+    private Optional<StoredJob> readJob(UUID jobId) {
+        String json = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + jobId);
+        if (json == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(json, StoredJob.class));
+        } catch (JsonProcessingException e) {
+            log.warn("Не удалось прочитать задачу {} из Redis: {}", jobId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void releaseIdempotencyKey(String idempotencyRedisKey) {
+        if (idempotencyRedisKey != null) {
+            redisTemplate.delete(idempotencyRedisKey);
+        }
+    }
+
+    /**
+     * Временные файлы multipart удаляются по завершении запроса, поэтому вложения читаются в память до постановки в очередь.
+     */
+    private List<MultipartFile> bufferAttachments(List<MultipartFile> attachments) {
+        if (attachments == null || attachments.isEmpty()) {
+            return attachments;
+        }
+        List<MultipartFile> buffered = new ArrayList<>(attachments.size());
+        for (MultipartFile file : attachments) {
+            try {
+                buffered.add(new BufferedMultipartFile(file.getName(), file.getOriginalFilename(), file.getContentType(), file.getBytes()));
+            } catch (IOException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не удалось прочитать вложение '" + file.getOriginalFilename() + "'", e);
+            }
+        }
+        return buffered;
+    }
+
+    private boolean send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Клиент отключился от потока задачи: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private User currentUser() {
+        return (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+    }
+
+    private record BufferedMultipartFile(String name, String originalFilename, String contentType,
+                                         byte[] content) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.write(dest.toPath(), content);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.nobilis.nobichat.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Область параллельных подзадач обработки одного сообщения чата — аналог
+ * StructuredTaskScope.ShutdownOnFailure (в Java 21 он доступен только как preview).
+ * Подзадачи запускаются на виртуальных потоках и живут не дольше области: общий дедлайн
+ * задается при открытии, первая ошибка отменяет остальные подзадачи, а закрытие области
+ * прерывает все незавершенные. Исключение — подзадачи с записью ({@link #forkToCompletion}):
+ * их не прерывают, а закрытие области дожидается их завершения, чтобы не оставить частичную запись.
+ * Экземпляр используется одним потоком — тем, что обрабатывает сообщение.
+ */
+@Slf4j
+public final class ChatPipelineScope implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final long deadlineNanos;
+    private final Map<String, Future<?>> tasks = new LinkedHashMap<>();
+    private final Set<String> runToCompletion = new HashSet<>();
+    private final Runnable onClose;
+
+    ChatPipelineScope(ExecutorService executor, Duration timeout, Runnable onClose) {
+        this.executor = executor;
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+        this.onClose = onClose;
+    }
+
+    /**
+     * Запускает подзадачу под ключом; повторный запуск с тем же ключом возвращает уже запущенную.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> fork(String key, Callable<T> task) {
+        return (Future<T>) tasks.computeIfAbsent(key, k -> executor.submit(task));
+    }
+
+    /**
+     * Запускает подзадачу, которую нельзя прерывать (запись в БД, сохранение файлов): ни ошибка
+     * другой подзадачи, ни закрытие области ее не отменяют, а {@link #close()} дожидается ее завершения.
+     */
+    public <T> Future<T> forkToCompletion(String key, Callable<T> task) {
+        runToCompletion.add(key);
+        return fork(key, task);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Optional<Future<T>> task(String key) {
+        return Optional.ofNullable((Future<T>) tasks.get(key));
+    }
+
+    void forget(String key) {
+        Future<?> task = tasks.remove(key);
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Дожидается результата подзадачи в пределах дедлайна области.
+     * При ошибке или истечении дедлайна остальные подзадачи отменяются.
+     */
+    public <T> T await(Future<T> task) {
+        try {
+            return task.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            cancelAll();
+            throw new IllegalStateException("Подзадача обработки сообщения не завершилась вовремя", e);
+        } catch (InterruptedException e) {
+            cancelAll();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обработка сообщения прервана", e);
+        } catch (CancellationException e) {
+            throw new IllegalStateException("Подзадача обработки сообщения отменена", e);
+        } catch (ExecutionException e) {
+            cancelAll();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Точка соединения: дожидается всех подзадач и пробрасывает первую ошибку.
+     */
+    public void join() {
+        for (Future<?> task : tasks.values().toArray(Future<?>[]::new)) {
+            await(task);
+        }
+    }
+
+    private void cancelAll() {
+        tasks.forEach((key, task) -> {
+            if (!runToCompletion.contains(key)) {
+                task.cancel(true);
+            }
+        });
+    }
+
+    /**
+     * Прерывает незавершенные подзадачи чтения и дожидается подзадач с записью. Ошибка такой
+     * подзадачи, не полученная через {@link #join()}, только логируется, чтобы не скрыть исходную.
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        try {
+            for (String key : runToCompletion) {
+                awaitCompletion(key, tasks.get(key));
+            }
+        } finally {
+            onClose.run();
+        }
+    }
+
+    private void awaitCompletion(String key, Future<?> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    log.error("Подзадача '{}' обработки сообщения завершилась с ошибкой", key, e.getCause());
+                    return;
+                } catch (CancellationException e) {
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
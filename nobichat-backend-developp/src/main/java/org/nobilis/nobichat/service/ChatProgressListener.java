@@ -0,0 +1,26 @@
+package org.nobilis.nobichat.service;
+
+import java.util.Map;
+
+/**
+ * Получатель промежуточных событий обработки сообщения чата (потоковый режим).
+ */
+@FunctionalInterface
+public interface ChatProgressListener {
+
+    /**
+     * Пустой получатель для обычного (непотокового) режима.
+     */
+    ChatProgressListener NONE = (stage, data) -> {
+    };
+
+    /**
+     * @param stage этап обработки: session, classifying, intent, editing
+     * @param data  данные этапа
+     */
+    void onProgress(String stage, Map<String, Object> data);
+
+    default boolean isStreaming() {
+        return this != NONE;
+    }
+}
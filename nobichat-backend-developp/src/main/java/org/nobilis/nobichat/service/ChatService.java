@@ -2,14 +2,20 @@ package org.nobilis.nobichat.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.dto.ScenarioDefinition;
 import org.nobilis.nobichat.dto.UiSchemaDtos;
+import org.nobilis.nobichat.dto.chat.ChatActionRequest;
 import org.nobilis.nobichat.dto.chat.ChatRequest;
 import org.nobilis.nobichat.dto.chat.ChatResponseDto;
 import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
 import org.nobilis.nobichat.dto.llm.LLMResponseDto;
+import org.nobilis.nobichat.exception.ChatFlowException;
+import org.nobilis.nobichat.exception.LlmAdmissionRejectedException;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.Scenario;
 import org.nobilis.nobichat.model.ScenarioDraft;
@@ -21,7 +27,10 @@ import org.nobilis.nobichat.repository.ScenarioRepository;
 import org.nobilis.nobichat.repository.UserChatSessionRepository;
 import org.nobilis.nobichat.service.intent.IntentHandler;
 import org.nobilis.nobichat.service.intent.IntentHandlerRegistry;
+import org.nobilis.nobichat.service.intent.LocalIntentClassifier;
 import org.nobilis.nobichat.service.intent.UnknownIntentHandler;
+import org.nobilis.nobichat.service.llm.PromptFamily;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -33,9 +42,16 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -55,53 +71,156 @@ public class ChatService {
     private final ScenarioFormatterService formatterService;
     private final ScenarioHelperService scenarioHelperService;
     private final DynamicEntityQueryService dynamicEntityQueryService;
+    private final LocalIntentClassifier localIntentClassifier;
+    private final MeterRegistry meterRegistry;
+    private final ScenarioStateLoader scenarioStateLoader;
+
+    @Value("${chat.preview.combined-classifier:true}")
+    private boolean combinedPreviewClassifier;
 
     public ChatResponseDto processUserQuery(ChatRequest request, List<MultipartFile> attachments) {
+        return processUserQuery(request, attachments, ChatProgressListener.NONE);
+    }
+
+    /**
+     * Обрабатывает сообщение пользователя, сообщая о ходе обработки в {@code listener}.
+     * В потоковом режиме классификация намерения выполняется потоковым вызовом LLM, и обработчик
+     * намерения запускается, как только модель сгенерировала поля intent/direction.
+     */
+    public ChatResponseDto processUserQuery(ChatRequest request, List<MultipartFile> attachments, ChatProgressListener listener) {
         UserChatSession session = getOrCreateSession(request.getSessionId(), request.getMessage());
+        listener.onProgress("session", Map.of("sessionId", session.getId()));
 
         ChatMessage chatMessage = new ChatMessage();
         chatMessage.setSession(session);
         chatMessage.setUserRequestText(request.getMessage());
         messageRepository.save(chatMessage);
 
-        if (attachments != null && !attachments.isEmpty()) {
-            attachmentService.saveAttachments(attachments, chatMessage);
+        ChatResponseDto response;
+        try (ChatPipelineScope scope = scenarioStateLoader.open()) {
+            if (attachments != null && !attachments.isEmpty()) {
+                scope.forkToCompletion("attachments", () -> {
+                    attachmentService.saveAttachments(attachments, chatMessage);
+                    return null;
+                });
+            }
+            scenarioStateLoader.prefetch(session);
+
+            response = getResponse(request, session, chatMessage, listener, scope);
+            scope.join();
+        }
+
+        updateStateAfterResponse(response, session, chatMessage);
+
+        return response;
+    }
+
+    /**
+     * Выполняет действие, нажатое пользователем в UI, напрямую через обработчик намерения — без классификации
+     * текста и вызова LLM. Сообщение и слепок ответа сохраняются так же, как для текстовой команды.
+     */
+    public ChatResponseDto processAction(ChatActionRequest action) {
+        long start = System.nanoTime();
+        UserChatSession session = getOrCreateSession(action.getSessionId(), null);
+        validateActionForSession(action, session);
+
+        String label = StringUtils.hasText(action.getLabel()) ? action.getLabel() : defaultActionLabel(action);
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setSession(session);
+        chatMessage.setUserRequestText(label);
+        messageRepository.save(chatMessage);
+
+        ChatRequest request = new ChatRequest();
+        request.setSessionId(session.getId());
+        request.setMessage(label);
+        request.setContext(action.getContext());
+
+        IntentAndQueryResponse intent = new IntentAndQueryResponse();
+        intent.setIntent(action.getAction().name());
+        if (action.getDirection() != null) {
+            intent.setDirection(action.getDirection().name());
         }
 
-        ChatResponseDto response = getResponse(request, session, chatMessage);
+        IntentHandler handler = handlerRegistry.getHandler(action.getAction().name())
+                .orElseThrow(() -> new IllegalStateException("Не зарегистрирован обработчик для действия " + action.getAction()));
+        ChatResponseDto response = handler.handle(intent, request, session, chatMessage);
 
         updateStateAfterResponse(response, session, chatMessage);
 
+        Timer.builder("chat.action")
+                .description("Время выполнения действия UI без распознавания текста")
+                .tag("action", action.getAction().name())
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         return response;
     }
 
-    private ChatResponseDto getResponse(ChatRequest request, UserChatSession session, ChatMessage chatMessage) {
+    private void validateActionForSession(ChatActionRequest action, UserChatSession session) {
+        boolean executionMode = session.getActiveScenarioId() != null && !Boolean.TRUE.equals(session.getIsInConstructorMode());
+        boolean allowed = switch (action.getAction()) {
+            case NAVIGATE_EXECUTION, SAVE_SCENARIO_DATA -> executionMode;
+            case NAVIGATE_PREVIEW -> Boolean.TRUE.equals(session.getIsInPreviewMode());
+            case PUBLISH_SCENARIO -> Boolean.TRUE.equals(session.getIsInConstructorMode());
+        };
+        if (!allowed) {
+            throw new ChatFlowException("Действие " + action.getAction() + " недоступно в текущем режиме сессии.");
+        }
+        boolean navigation = action.getAction() == ChatActionRequest.ActionType.NAVIGATE_EXECUTION
+                || action.getAction() == ChatActionRequest.ActionType.NAVIGATE_PREVIEW;
+        if (navigation && action.getDirection() == null) {
+            throw new ChatFlowException("Для действия " + action.getAction() + " не указано направление перехода.");
+        }
+        if (action.getAction() == ChatActionRequest.ActionType.SAVE_SCENARIO_DATA && action.getContext() == null) {
+            throw new ChatFlowException("Для сохранения данных не передан контекст формы.");
+        }
+    }
+
+    private String defaultActionLabel(ChatActionRequest action) {
+        return switch (action.getAction()) {
+            case NAVIGATE_EXECUTION, NAVIGATE_PREVIEW -> action.getDirection() == ChatActionRequest.Direction.BACK ? "Назад" : "Дальше";
+            case SAVE_SCENARIO_DATA -> "Сохранить";
+            case PUBLISH_SCENARIO -> "Опубликовать";
+        };
+    }
+
+    /**
+     * Сохранение вложений и загрузка черновика/сценария уже запущены в {@code scope} и идут параллельно
+     * с классификацией; до запуска обработчика намерения все подзадачи дожидаются в {@code scope.join()}.
+     */
+    private ChatResponseDto getResponse(ChatRequest request, UserChatSession session, ChatMessage chatMessage,
+                                        ChatProgressListener listener, ChatPipelineScope scope) {
 
         IntentAndQueryResponse intentResponse;
 
         if (Boolean.TRUE.equals(session.getIsInPreviewMode())) {
             log.info("Сессия {} в режиме просмотра.", session.getId());
-            String prompt = llmPromptService.buildPreviewModeExtractionPrompt(request.getMessage());
-            log.info("Промпт: {}", prompt);
-            intentResponse = extractIntentAndQuery(prompt, chatMessage.getId());
+            long classificationStart = System.nanoTime();
+            int[] previewTokens = {0};
+            Consumer<LLMResponseDto> tokenCounter = r -> previewTokens[0] += Optional.ofNullable(r.getTotalTokens()).orElse(0);
+            intentResponse = resolveIntent(LocalIntentClassifier.Mode.PREVIEW, PromptFamily.PREVIEW, request.getMessage(), () -> {
+                String prompt = combinedPreviewClassifier
+                        ? llmPromptService.buildPreviewModeCombinedPrompt(request.getMessage())
+                        : llmPromptService.buildPreviewModeExtractionPrompt(request.getMessage());
+                log.info("Промпт: {}", prompt);
+                return prompt;
+            }, chatMessage.getId(), listener, tokenCounter);
+            scope.join();
 
             log.info("Определили интент: {}", intentResponse);
 
             if (!StringUtils.hasText(intentResponse.getIntent())) {
-                String isEditPrompt = llmPromptService.buildIsEditCommandPrompt(request.getMessage());
-                String isEditResponseJson = llmPromptService.sendPromptToLlm(isEditPrompt, null, false, chatMessage.getId()).getContent();
-
-                String sanitizedJson = llmPromptService.sanitizeLlmJsonResponse(isEditResponseJson);
-
-                boolean isEditCommand = false;
-                try {
-                    isEditCommand = objectMapper.readTree(sanitizedJson).get("isEditCommand").asBoolean();
-                } catch (Exception e) {
-                    log.warn("Не удалось распознать, является ли команда редактированием. Считаем, что нет.");
+                Boolean isEditCommand = intentResponse.getIsEditCommand();
+                if (isEditCommand == null) {
+                    LLMResponseDto isEditResponse = llmPromptService.sendPromptToLlm(
+                            llmPromptService.buildIsEditCommandPrompt(request.getMessage()), PromptFamily.IS_EDIT, chatMessage.getId());
+                    tokenCounter.accept(isEditResponse);
+                    isEditCommand = parseIsEditCommand(isEditResponse.getContent());
                 }
+                recordPreviewClassification(classificationStart, previewTokens[0]);
 
-                if (isEditCommand) {
+                if (Boolean.TRUE.equals(isEditCommand)) {
                     log.info("Распознана команда редактирования в режиме просмотра.");
+                    listener.onProgress("editing", Map.of());
                     constructorService.processUserInput(request, session, chatMessage);
                     ScenarioDraft updatedDraft = draftRepository.findById(session.getActiveDraftId()).orElseThrow();
 
@@ -120,7 +239,7 @@ public class ChatService {
                     }
                 } else {
                     log.info("В режиме просмотра получена нераспознанная команда (не редактирование).");
-                    ScenarioDraft draft = draftRepository.findById(session.getActiveDraftId()).orElseThrow();
+                    ScenarioDraft draft = scenarioStateLoader.findDraft(session.getActiveDraftId()).orElseThrow();
                     ScenarioDefinition.ScenarioStep currentStep = draft.getDefinition().getSteps().stream()
                             .filter(s -> s.getName().equals(session.getCurrentPreviewStepName())).findFirst().orElseThrow();
 
@@ -129,15 +248,18 @@ public class ChatService {
                     return response;
                 }
             }
+            recordPreviewClassification(classificationStart, previewTokens[0]);
             IntentHandler handler = handlerRegistry.getHandler(intentResponse.getIntent()).orElseGet(UnknownIntentHandler::new);
             return handler.handle(intentResponse, request, session, chatMessage);
 
         } else if (Boolean.TRUE.equals(session.getIsInConstructorMode())) {
             log.debug("Сессия {} в режиме конструктора.", session.getId());
-            String prompt = llmPromptService.buildConstructorModeExtractionPrompt(request.getMessage());
-            intentResponse = extractIntentAndQuery(prompt, chatMessage.getId());
+            intentResponse = resolveIntent(LocalIntentClassifier.Mode.CONSTRUCTOR, PromptFamily.CONSTRUCTOR, request.getMessage(),
+                    () -> llmPromptService.buildConstructorModeExtractionPrompt(request.getMessage()), chatMessage.getId(), listener);
+            scope.join();
 
             if (!StringUtils.hasText(intentResponse.getIntent())) {
+                listener.onProgress("editing", Map.of());
                 return constructorService.processUserInput(request, session, chatMessage);
             }
             IntentHandler handler = handlerRegistry.getHandler(intentResponse.getIntent()).orElseGet(UnknownIntentHandler::new);
@@ -146,8 +268,9 @@ public class ChatService {
         } else if (session.getActiveScenarioId() != null) {
             log.debug("Сессия {} в режиме исполнения сценария {}.", session.getId(), session.getActiveScenarioId());
 
-            String prompt = llmPromptService.buildExecutionModeExtractionPrompt(request.getMessage());
-            intentResponse = extractIntentAndQuery(prompt, chatMessage.getId());
+            intentResponse = resolveIntent(LocalIntentClassifier.Mode.EXECUTION, PromptFamily.EXECUTION, request.getMessage(),
+                    () -> llmPromptService.buildExecutionModeExtractionPrompt(request.getMessage()), chatMessage.getId(), listener);
+            scope.join();
 
             switch (intentResponse.getIntent()) {
                 case "NAVIGATE_EXECUTION":
@@ -158,7 +281,7 @@ public class ChatService {
 
                 default:
                     log.info("В режиме исполнения получена нераспознанная команда, остаемся на текущем шаге.");
-                    Scenario scenario = scenarioRepository.findById(session.getActiveScenarioId()).orElseThrow();
+                    Scenario scenario = scenarioStateLoader.findScenario(session.getActiveScenarioId()).orElseThrow();
                     ScenarioDefinition.ScenarioStep currentStep = scenario.getDefinition().getSteps().stream()
                             .filter(s -> s.getName().equals(session.getCurrentStepName())).findFirst().orElseThrow();
 
@@ -174,8 +297,9 @@ public class ChatService {
 
         } else {
             log.debug("Сессия {} в режиме свободного диалога.", session.getId());
-            String prompt = llmPromptService.buildFreeModeExtractionPrompt(request.getMessage());
-            intentResponse = extractIntentAndQuery(prompt, chatMessage.getId());
+            intentResponse = resolveIntent(null, PromptFamily.FREE, request.getMessage(),
+                    () -> llmPromptService.buildFreeModeExtractionPrompt(request.getMessage()), chatMessage.getId(), listener);
+            scope.join();
             IntentHandler handler = handlerRegistry.getHandler(intentResponse.getIntent()).orElseGet(UnknownIntentHandler::new);
             return handler.handle(intentResponse, request, session, chatMessage);
         }
@@ -201,6 +325,38 @@ public class ChatService {
         sessionRepository.save(session);
     }
 
+    /**
+     * Находит сессию пользователя или создает новую. Используется асинхронным режимом, чтобы вернуть
+     * клиенту ID сессии до постановки сообщения в очередь.
+     */
+    public UUID resolveSessionId(UUID sessionId, String userQuery) {
+        return getOrCreateSession(sessionId, userQuery).getId();
+    }
+
+    /**
+     * Преобразует ошибку обработки сообщения в ответ с текущим состоянием сессии — так же, как
+     * ChatControllerAdvice, но для режимов, где ответ доставляется не HTTP-ответом (SSE, асинхронные задачи).
+     */
+    public ChatResponseDto buildErrorResponse(UUID sessionId, Exception e) {
+        ChatResponseDto response = sessionId == null
+                ? new ChatResponseDto()
+                : sessionRepository.findById(sessionId).map(this::rebuildLastState).orElseGet(ChatResponseDto::new);
+        response.setSessionId(sessionId);
+        if (e instanceof LlmAdmissionRejectedException rejected) {
+            response.setMessage(rejected.getMessage() + " Повторите запрос через " + rejected.getRetryAfterSeconds() + " с.");
+            response.setErrors(Collections.singletonList(ChatResponseDto.ErrorDto.builder().message(rejected.getMessage()).build()));
+        } else if (e instanceof ChatFlowException flowException) {
+            log.warn("Перехвачено управляемое исключение ChatFlowException: {}", flowException.getMessage());
+            response.setMessage(flowException.getMessage());
+            response.setErrors(flowException.getErrors());
+        } else {
+            log.error("Ошибка обработки сообщения: {}", e.getMessage(), e);
+            response.setMessage("Произошла непредвиденная ошибка");
+            response.setErrors(Collections.singletonList(ChatResponseDto.ErrorDto.builder().message(e.getMessage()).build()));
+        }
+        return response;
+    }
+
     private UserChatSession getOrCreateSession(UUID sessionId, String userQuery) {
         User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
         UserChatSession session;
@@ -219,14 +375,52 @@ public class ChatService {
             session = sessionRepository.save(newSession);
         }
 
-        RequestContextHolder.currentRequestAttributes()
-                .setAttribute("CURRENT_USER_CHAT_SESSION_ID", session.getId(), RequestAttributes.SCOPE_REQUEST);
+        // Атрибуты есть только в потоке HTTP-запроса (их читает ChatControllerAdvice); потоковый и
+        // асинхронный режимы получают идентификатор сессии через событие "session" слушателя.
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute("CURRENT_USER_CHAT_SESSION_ID", session.getId(), RequestAttributes.SCOPE_REQUEST);
+        }
 
         return session;
     }
 
-    private IntentAndQueryResponse extractIntentAndQuery(String prompt, UUID messageId) {
-        LLMResponseDto llmResponse = llmPromptService.sendPromptToLlm(prompt, null, true, messageId);
+    /**
+     * Определяет намерение: сначала локальным классификатором (если для режима он есть), затем через LLM.
+     */
+    private IntentAndQueryResponse resolveIntent(LocalIntentClassifier.Mode mode, PromptFamily family, String message,
+                                                 Supplier<String> promptSupplier, UUID messageId, ChatProgressListener listener) {
+        return resolveIntent(mode, family, message, promptSupplier, messageId, listener, r -> {
+        });
+    }
+
+    /**
+     * @param onLlmResponse получает ответ LLM, если намерение определялось через нее
+     */
+    private IntentAndQueryResponse resolveIntent(LocalIntentClassifier.Mode mode, PromptFamily family, String message,
+                                                 Supplier<String> promptSupplier, UUID messageId, ChatProgressListener listener,
+                                                 Consumer<LLMResponseDto> onLlmResponse) {
+        listener.onProgress("classifying", Map.of("mode", family.name()));
+        Optional<IntentAndQueryResponse> local = mode != null
+                ? localIntentClassifier.classify(mode, message)
+                : Optional.empty();
+        IntentAndQueryResponse response = local.orElseGet(
+                () -> extractIntentAndQuery(promptSupplier.get(), family, messageId, listener, onLlmResponse));
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("intent", response.getIntent());
+        data.put("direction", response.getDirection());
+        data.put("local", local.isPresent());
+        listener.onProgress("intent", data);
+        return response;
+    }
+
+    private IntentAndQueryResponse extractIntentAndQuery(String prompt, PromptFamily family, UUID messageId, ChatProgressListener listener,
+                                                         Consumer<LLMResponseDto> onLlmResponse) {
+        LLMResponseDto llmResponse = listener.isStreaming()
+                ? llmPromptService.streamPromptToLlm(prompt, family, messageId, fields -> isIntentComplete(family, fields))
+                : llmPromptService.sendPromptToLlm(prompt, family, messageId);
+        onLlmResponse.accept(llmResponse);
         String rawContent = llmResponse.getContent();
         if (rawContent == null || rawContent.isBlank() || rawContent.trim().equals("{}")) {
             log.debug("LLM вернула пустой ответ для извлечения намерения. Считаем, что интент не распознан.");
@@ -243,6 +437,49 @@ public class ChatService {
         }
     }
 
+    /**
+     * Для классификаторов режимов ответ содержит только intent и direction, поэтому генерацию можно
+     * прервать, как только они получены. В свободном режиме нужны остальные поля — ждем полного ответа.
+     */
+    private boolean isIntentComplete(PromptFamily family, Map<String, Object> fields) {
+        if (family != PromptFamily.EXECUTION && family != PromptFamily.CONSTRUCTOR && family != PromptFamily.PREVIEW) {
+            return false;
+        }
+        if (!(fields.get("intent") instanceof String intent) || intent.isBlank()) {
+            // Объединенный классификатор режима просмотра отвечает признаком редактирования вместо интента.
+            return family == PromptFamily.PREVIEW && fields.get("isEditCommand") instanceof Boolean;
+        }
+        return !intent.startsWith("NAVIGATE_") || fields.containsKey("direction");
+    }
+
+    private boolean parseIsEditCommand(String isEditResponseJson) {
+        String sanitizedJson = llmPromptService.sanitizeLlmJsonResponse(isEditResponseJson);
+        try {
+            return objectMapper.readTree(sanitizedJson).get("isEditCommand").asBoolean();
+        } catch (Exception e) {
+            log.warn("Не удалось распознать, является ли команда редактированием. Считаем, что нет.");
+            return false;
+        }
+    }
+
+    /**
+     * Сравнение объединенного классификатора режима просмотра с прежней схемой из двух вызовов:
+     * время классификации и суммарные токены по тегу flow.
+     */
+    private void recordPreviewClassification(long startNanos, int tokens) {
+        String flow = combinedPreviewClassifier ? "combined" : "two_call";
+        Timer.builder("chat.preview.classification")
+                .description("Время классификации команды в режиме просмотра")
+                .tag("flow", flow)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("chat.preview.classification.tokens")
+                .description("Токены LLM, затраченные на классификацию команды в режиме просмотра")
+                .tag("flow", flow)
+                .register(meterRegistry)
+                .record(tokens);
+    }
+
     private String generateTitleFromQuery(String query) {
         if (query == null || query.isBlank()) { return "Новый диалог"; }
         String title = Arrays.stream(query.split("\\s+")).limit(5).collect(Collectors.joining(" "));
@@ -0,0 +1,81 @@
+package org.nobilis.nobichat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.chat.ChatRequest;
+import org.nobilis.nobichat.dto.chat.ChatResponseDto;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Потоковая обработка сообщений чата через SSE.
+ * Клиент получает события {@code progress} по мере обработки (создание сессии, классификация,
+ * распознанное намерение, редактирование), а затем одно событие {@code response} с итоговым
+ * {@link ChatResponseDto}. Ошибки преобразуются так же, как в ChatControllerAdvice, и тоже
+ * приходят событием {@code response}.
+ * <p>
+ * Обработка выполняется вне потока запроса, поэтому идентификатор сессии для ответа об ошибке
+ * берется из события {@code session} слушателя, а не из атрибутов запроса.
+ */
+@Slf4j
+@Service
+public class ChatStreamService {
+
+    private final ChatService chatService;
+    private final AsyncTaskExecutor executor;
+    private final Duration emitterTimeout;
+
+    public ChatStreamService(ChatService chatService,
+                             @Qualifier("chatStreamExecutor") AsyncTaskExecutor executor,
+                             @Value("${chat.stream.emitter-timeout:3m}") Duration emitterTimeout) {
+        this.chatService = chatService;
+        this.executor = executor;
+        this.emitterTimeout = emitterTimeout;
+    }
+
+    public SseEmitter process(ChatRequest request, List<MultipartFile> attachments) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        AtomicReference<UUID> sessionId = new AtomicReference<>(request.getSessionId());
+
+        ChatProgressListener listener = (stage, data) -> {
+            if ("session".equals(stage) && data.get("sessionId") instanceof UUID id) {
+                sessionId.set(id);
+            }
+            send(emitter, "progress", Map.of("stage", stage, "data", data));
+        };
+
+        executor.execute(new DelegatingSecurityContextRunnable(() -> {
+            ChatResponseDto response;
+            try {
+                response = chatService.processUserQuery(request, attachments, listener);
+            } catch (Exception e) {
+                response = chatService.buildErrorResponse(sessionId.get(), e);
+            }
+            if (send(emitter, "response", response)) {
+                emitter.complete();
+            }
+        }));
+        return emitter;
+    }
+
+    private boolean send(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Клиент отключился от потока ответа: {}", e.getMessage());
+            return false;
+        }
+    }
+}
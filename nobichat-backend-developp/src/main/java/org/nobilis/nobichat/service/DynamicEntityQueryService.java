@@ -9,20 +9,27 @@ import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.dto.entities.EntitiesSearchRequestDto;
 import org.nobilis.nobichat.dto.entities.PaginatedEntitiesResponseDto;
 import org.nobilis.nobichat.dto.ontology.OntologyDto;
+import org.nobilis.nobichat.events.event.EntityChangeEvent;
 import org.nobilis.nobichat.model.FieldInfo;
 import org.nobilis.nobichat.model.QueryResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -32,6 +39,13 @@ public class DynamicEntityQueryService {
 
     private final DynamicQueryBuilder dynamicQueryBuilder;
     private final OntologyService ontologyService;
+    private final QueryWorkloadRecorder queryWorkloadRecorder;
+    private final EntityQueryGuard entityQueryGuard;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityTombstoneService entityTombstoneService;
+
+    @Value("${delta-sync.overlap:5s}")
+    private Duration deltaSyncOverlap;
 
     @PersistenceContext
     private final EntityManager entityManager;
@@ -44,7 +58,7 @@ public class DynamicEntityQueryService {
         Query nativeQuery = entityManager.createNativeQuery(queryResult.getSql());
 
         try {
-            Object result = nativeQuery.getSingleResult();
+            Object result = execute(entityName, "last_created_id", queryResult, nativeQuery, null, nativeQuery::getSingleResult);
             if (result instanceof UUID) {
                 return Optional.of((UUID) result);
             } else if (result != null) {
@@ -66,22 +80,68 @@ public class DynamicEntityQueryService {
             List<String> fields,
             EntitiesSearchRequestDto.QueryDto query,
             Pageable pageable) {
+        return findEntities(entityName, fields, query, pageable, null);
+    }
 
-        QueryResult dataQueryResult = dynamicQueryBuilder.build(entityName, fields, query, pageable);
+    /**
+     * Поиск сущностей с необязательным режимом дельта-синхронизации.
+     * При заданном {@code since} возвращаются только записи, измененные после водяного знака,
+     * идентификаторы удаленных с того момента записей (на первой странице) и новый водяной знак.
+     * Новый водяной знак сдвинут назад на delta-sync.overlap, чтобы не потерять записи
+     * параллельных транзакций, закоммиченных после чтения; клиент применяет изменения идемпотентно.
+     */
+    @Transactional(readOnly = true)
+    public PaginatedEntitiesResponseDto findEntities(
+            String entityName,
+            List<String> fields,
+            EntitiesSearchRequestDto.QueryDto query,
+            Pageable pageable,
+            Instant since) {
+
+        Instant watermark = null;
+        if (since != null) {
+            if (since.isBefore(entityTombstoneService.getRetentionHorizon())) {
+                throw new ResponseStatusException(HttpStatus.GONE,
+                        "Водяной знак старше срока хранения журнала удалений, требуется полная синхронизация.");
+            }
+            Number dbNowMillis = (Number) entityManager
+                    .createNativeQuery("SELECT CAST(EXTRACT(EPOCH FROM now()) * 1000 AS BIGINT)")
+                    .getSingleResult();
+            watermark = Instant.ofEpochMilli(dbNowMillis.longValue()).minus(deltaSyncOverlap);
+        }
+
+        QueryResult dataQueryResult = dynamicQueryBuilder.build(entityName, fields, query, pageable, since);
         Query dataQuery = entityManager.createNativeQuery(dataQueryResult.getSql());
         dataQueryResult.getParams().forEach(dataQuery::setParameter);
         @SuppressWarnings("unchecked")
-        List<Object[]> rawResults = dataQuery.getResultList();
+        List<Object[]> rawResults = execute(entityName, "search", dataQueryResult, dataQuery, null, dataQuery::getResultList);
         List<Map<String, Object>> content = mapRawResults(rawResults, dataQueryResult.getSelectedFields());
 
-        QueryResult countQueryResult = dynamicQueryBuilder.buildCount(entityName, query);
-        Query countQuery = entityManager.createNativeQuery(countQueryResult.getSql());
-        countQueryResult.getParams().forEach(countQuery::setParameter);
-        long totalElements = ((Number) countQuery.getSingleResult()).longValue();
+        long totalElements = countEntities(entityName, query, since);
 
         int totalPages = (pageable.getPageSize() == 0) ? 1 : (int) Math.ceil((double) totalElements / (double) pageable.getPageSize());
 
-        return new PaginatedEntitiesResponseDto(content, totalElements, totalPages);
+        PaginatedEntitiesResponseDto response = new PaginatedEntitiesResponseDto(content, totalElements, totalPages);
+        if (since != null) {
+            response.setWatermark(watermark);
+            response.setDeletedIds(pageable.getPageNumber() == 0
+                    ? entityTombstoneService.findDeletedSince(entityName, since)
+                    : Collections.emptyList());
+        }
+        return response;
+    }
+
+    @Transactional(readOnly = true)
+    public long countEntities(String entityName, EntitiesSearchRequestDto.QueryDto query) {
+        return countEntities(entityName, query, null);
+    }
+
+    @Transactional(readOnly = true)
+    public long countEntities(String entityName, EntitiesSearchRequestDto.QueryDto query, Instant since) {
+        QueryResult countQueryResult = dynamicQueryBuilder.buildCount(entityName, query, since);
+        Query countQuery = entityManager.createNativeQuery(countQueryResult.getSql());
+        countQueryResult.getParams().forEach(countQuery::setParameter);
+        return ((Number) execute(entityName, "count", countQueryResult, countQuery, null, countQuery::getSingleResult)).longValue();
     }
 
     @Transactional(readOnly = true)
@@ -102,7 +162,7 @@ public class DynamicEntityQueryService {
         }
 
         @SuppressWarnings("unchecked")
-        List<Object[]> rawResults = query.getResultList();
+        List<Object[]> rawResults = execute(entityName, "get", queryResult, query, null, query::getResultList);
 
         if (rawResults.isEmpty()) {
             return Optional.empty();
@@ -133,9 +193,13 @@ public class DynamicEntityQueryService {
         }
         query.setParameter("id_param", id);
 
-        int updatedRows = query.executeUpdate();
+        int updatedRows = execute(entityName, "update", queryResult, query, Map.of("id_param", id), query::executeUpdate);
 
         log.info("Обновлено {} строк для сущности '{}' с ID {}", updatedRows, entityName, id);
+        if (updatedRows > 0) {
+            eventPublisher.publishEvent(new EntityChangeEvent(this, entityName, EntityChangeEvent.Operation.UPDATE, id,
+                    Set.copyOf(fieldsToUpdate.keySet())));
+        }
 
         return findEntityById(entityName, id, null);
     }
@@ -153,10 +217,12 @@ public class DynamicEntityQueryService {
         Query query = entityManager.createNativeQuery(queryResult.getSql());
         query.setParameter("id_param", id);
 
-        int deletedRows = query.executeUpdate();
+        int deletedRows = execute(entityName, "delete", queryResult, query, Map.of("id_param", id), query::executeUpdate);
 
         if (deletedRows > 0) {
             log.info("Удалена 1 строка для сущности '{}' с ID {}", entityName, id);
+            entityTombstoneService.recordDeletion(entityName, id);
+            eventPublisher.publishEvent(new EntityChangeEvent(this, entityName, EntityChangeEvent.Operation.DELETE, id, Set.of()));
             return true;
         } else {
             log.warn("Попытка удалить несуществующую сущность '{}' с ID {}", entityName, id);
@@ -182,12 +248,14 @@ public class DynamicEntityQueryService {
             query.setParameter(param.getKey(), param.getValue());
         }
 
-        int insertedRows = query.executeUpdate();
+        int insertedRows = execute(entityName, "insert", queryResult, query, null, query::executeUpdate);
         if (insertedRows == 0) {
             throw new RuntimeException("Не удалось создать сущность '" + entityName + "'.");
         }
 
         log.info("Создана 1 строка для сущности '{}' с ID {}", entityName, newId);
+        eventPublisher.publishEvent(new EntityChangeEvent(this, entityName, EntityChangeEvent.Operation.CREATE, newId,
+                Set.copyOf(fieldsToCreate.keySet())));
 
         return findEntityById(entityName, newId, null)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Не удалось найти только что созданную сущность с ID: " + newId));
@@ -228,7 +296,7 @@ public class DynamicEntityQueryService {
         queryResult.getParams().forEach(nativeQuery::setParameter);
 
         @SuppressWarnings("unchecked")
-        List<Object> results = nativeQuery.getResultList();
+        List<Object> results = execute(entityName, "single_id", queryResult, nativeQuery, null, nativeQuery::getResultList);
 
         if (results.size() == 1) {
             Object result = results.get(0);
@@ -254,4 +322,20 @@ public class DynamicEntityQueryService {
         }
     }
 
+    /**
+     * Выполняет запрос под контролем {@link EntityQueryGuard} (таймаут запроса, бюджет стоимости,
+     * возможность отмены) и передает его форму и время выполнения в {@link QueryWorkloadRecorder}.
+     */
+    private <T> T execute(String entityName, String operation, QueryResult queryResult, Query query,
+                          Map<String, Object> extraParams, Supplier<T> execution) {
+        try (EntityQueryGuard.Admission ignored = entityQueryGuard.admit(entityName, operation, queryResult, query)) {
+            if (!queryWorkloadRecorder.isEnabled()) {
+                return execution.get();
+            }
+            long started = System.nanoTime();
+            T result = execution.get();
+            queryWorkloadRecorder.record(operation, queryResult, extraParams, System.nanoTime() - started);
+            return result;
+        }
+    }
 }
@@ -15,6 +15,7 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -33,6 +34,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class DynamicQueryBuilder {
 
+    private static final String LAST_UPDATED_DATE_COLUMN = "last_updated_date";
+
     private final OntologyService ontologyService;
 
     public QueryResult buildFindLastCreatedId(String entityName) {
@@ -71,6 +74,20 @@ public class DynamicQueryBuilder {
             List<String> fields,
             EntitiesSearchRequestDto.QueryDto query,
             Pageable pageable) {
+        return build(entityName, fields, query, pageable, null);
+    }
+
+    /**
+     * Строит SQL-запрос с дополнительным ограничением дельта-синхронизации.
+     *
+     * @param since Если задан, выбираются только записи с last_updated_date позже этого момента.
+     */
+    public QueryResult build(
+            String entityName,
+            List<String> fields,
+            EntitiesSearchRequestDto.QueryDto query,
+            Pageable pageable,
+            Instant since) {
 
         OntologyDto.EntitySchema rootSchema = ontologyService.getEntitySchema(entityName);
         QueryContext context = new QueryContext(rootSchema);
@@ -92,6 +109,7 @@ public class DynamicQueryBuilder {
                 context.getWhereClauses().add(whereContent);
             }
         }
+        addSinceClause(context, since);
 
         String sql = buildSqlStringForList(context, pageable);
         return new QueryResult(sql, context.getQueryParams(), context.getSelectFields());
@@ -105,6 +123,10 @@ public class DynamicQueryBuilder {
      * @return Объект QueryResult, содержащий SQL для COUNT и накопленные параметры.
      */
     public QueryResult buildCount(String entityName, EntitiesSearchRequestDto.QueryDto query) {
+        return buildCount(entityName, query, null);
+    }
+
+    public QueryResult buildCount(String entityName, EntitiesSearchRequestDto.QueryDto query, Instant since) {
         OntologyDto.EntitySchema rootSchema = ontologyService.getEntitySchema(entityName);
         QueryContext context = new QueryContext(rootSchema);
 
@@ -114,6 +136,7 @@ public class DynamicQueryBuilder {
                 context.getWhereClauses().add(whereContent);
             }
         }
+        addSinceClause(context, since);
 
         String fromClause = String.format("FROM %s %s",
                 rootSchema.getMeta().getPrimaryTable(),
@@ -148,6 +171,18 @@ public class DynamicQueryBuilder {
     }
 
 
+    /**
+     * Добавляет условие дельта-синхронизации по колонке last_updated_date корневой таблицы.
+     */
+    private void addSinceClause(QueryContext context, Instant since) {
+        if (since == null) {
+            return;
+        }
+        String paramName = context.getNextParamName();
+        context.getWhereClauses().add(String.format("%s.%s > :%s", context.getRootTableAlias(), LAST_UPDATED_DATE_COLUMN, paramName));
+        context.getQueryParams().put(paramName, since);
+    }
+
     /**
      * Рекурсивно обрабатывает объект QueryDto и строит из него строку для WHERE-клаузы.
      *
@@ -0,0 +1,241 @@
+package org.nobilis.nobichat.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.entities.EntitiesSearchRequestDto;
+import org.nobilis.nobichat.dto.entities.EntityChangeDto;
+import org.nobilis.nobichat.dto.ontology.OntologyDto;
+import org.nobilis.nobichat.events.event.EntityChangeEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Рассылка изменений динамических сущностей подписчикам по Server-Sent Events.
+ * <p>
+ * Источники изменений: события пути записи {@link DynamicEntityQueryService} (после коммита)
+ * и уведомления Postgres NOTIFY от триггеров, которые принимает один на узел
+ * {@link EntityChangeNotificationListener}. Изменение, уже отправленное из пути записи
+ * этого узла, повторно из NOTIFY не рассылается.
+ * <p>
+ * Фильтр подписки вычисляется в памяти: запись загружается один раз на событие
+ * (только поля, участвующие в фильтрах), а не на каждого подписчика.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EntityChangeFeedService {
+
+    private final DynamicEntityQueryService dynamicEntityQueryService;
+    private final OntologyService ontologyService;
+    private final EntityFilterEvaluator filterEvaluator;
+
+    private final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Long> locallyPublished = new ConcurrentHashMap<>();
+    private final AtomicLong eventSequence = new AtomicLong();
+    private volatile TableMapping tableMapping;
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "entity-change-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${entity-changes.emitter-timeout:30m}")
+    private Duration emitterTimeout;
+
+    @Value("${entity-changes.dedup-window:10s}")
+    private Duration dedupWindow;
+
+    public SseEmitter subscribe(String entityName, EntitiesSearchRequestDto.QueryDto filter) {
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        Subscription subscription = new Subscription(emitter, filter);
+        List<Subscription> entitySubscriptions = subscriptions.computeIfAbsent(entityName, k -> new CopyOnWriteArrayList<>());
+        entitySubscriptions.add(subscription);
+
+        Runnable remove = () -> entitySubscriptions.remove(subscription);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        log.info("Новая подписка на изменения сущности '{}', фильтр: {}", entityName, filter != null);
+        return emitter;
+    }
+
+    /**
+     * Рассылает изменение из пути записи после коммита и запоминает его, чтобы уведомление NOTIFY
+     * о той же записи не было разослано повторно. Изменения откатанных транзакций не запоминаются
+     * и не подавляют уведомления о настоящих изменениях той же записи.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onEntityChange(EntityChangeEvent event) {
+        locallyPublished.put(dedupKey(event.getEntityName(), event.getOperation(), event.getEntityId()), System.currentTimeMillis());
+        publish(event.getEntityName(), event.getOperation(), event.getEntityId(), event.getChangedFields());
+    }
+
+    /**
+     * Обрабатывает уведомление триггера Postgres. Имя таблицы и колонки переводятся
+     * в имена сущностей и полей онтологии; колонки - объединение по всем записям уведомления.
+     */
+    public void onDatabaseNotification(String table, String operation, List<UUID> ids, List<String> columns) {
+        EntityChangeEvent.Operation op = switch (operation) {
+            case "INSERT" -> EntityChangeEvent.Operation.CREATE;
+            case "UPDATE" -> EntityChangeEvent.Operation.UPDATE;
+            case "DELETE" -> EntityChangeEvent.Operation.DELETE;
+            default -> null;
+        };
+        if (op == null || subscriptions.isEmpty()) {
+            return;
+        }
+        for (EntityTable entityTable : currentTableMapping().byTable().getOrDefault(table, List.of())) {
+            String entityName = entityTable.entityName();
+            Set<String> changedFields = new HashSet<>();
+            columns.forEach(column -> changedFields.addAll(entityTable.fieldsByColumn().getOrDefault(column, List.of())));
+            for (UUID id : ids) {
+                Long seenAt = locallyPublished.remove(dedupKey(entityName, op, id));
+                if (seenAt != null && System.currentTimeMillis() - seenAt < dedupWindow.toMillis()) {
+                    continue;
+                }
+                publish(entityName, op, id, changedFields);
+            }
+        }
+    }
+
+    /**
+     * Соответствие таблиц сущностям и колонок полям перестраивается только при смене версии онтологии,
+     * чтобы поток уведомлений не разбирал онтологию на каждый NOTIFY.
+     */
+    private TableMapping currentTableMapping() {
+        Instant version = ontologyService.getOntologyVersion();
+        TableMapping current = tableMapping;
+        if (current != null && version.equals(current.version())) {
+            return current;
+        }
+        synchronized (this) {
+            if (tableMapping == null || !version.equals(tableMapping.version())) {
+                tableMapping = buildTableMapping(version, ontologyService.getCurrentOntologySchema());
+            }
+            return tableMapping;
+        }
+    }
+
+    private TableMapping buildTableMapping(Instant version, OntologyDto ontology) {
+        Map<String, List<EntityTable>> byTable = new HashMap<>();
+        ontology.getEntities().forEach((entityName, schema) -> {
+            if (schema.getMeta() == null || schema.getMeta().getPrimaryTable() == null) {
+                return;
+            }
+            Map<String, List<String>> fieldsByColumn = new HashMap<>();
+            Optional.ofNullable(schema.getFields()).orElse(List.of()).stream()
+                    .filter(f -> f.getDb() != null && f.getDb().getRelationName() == null && f.getDb().getColumn() != null)
+                    .forEach(f -> fieldsByColumn.computeIfAbsent(f.getDb().getColumn(), k -> new ArrayList<>()).add(f.getName()));
+            byTable.computeIfAbsent(schema.getMeta().getPrimaryTable(), k -> new ArrayList<>())
+                    .add(new EntityTable(entityName, fieldsByColumn));
+        });
+        return new TableMapping(version, byTable);
+    }
+
+    private void publish(String entityName, EntityChangeEvent.Operation operation, UUID id, Set<String> changedFields) {
+        List<Subscription> entitySubscriptions = subscriptions.get(entityName);
+        if (entitySubscriptions == null || entitySubscriptions.isEmpty()) {
+            return;
+        }
+        EntityChangeDto change = EntityChangeDto.builder()
+                .entityName(entityName)
+                .operation(operation)
+                .id(id)
+                .changedFields(changedFields != null ? changedFields : Collections.emptySet())
+                .timestamp(Instant.now())
+                .build();
+        dispatcher.execute(() -> dispatch(entitySubscriptions, change));
+    }
+
+    private void dispatch(List<Subscription> entitySubscriptions, EntityChangeDto change) {
+        Optional<Map<String, Object>> row = null;
+        String eventId = String.valueOf(eventSequence.incrementAndGet());
+        for (Subscription subscription : entitySubscriptions) {
+            if (subscription.filter() != null && change.getOperation() != EntityChangeEvent.Operation.DELETE) {
+                if (row == null) {
+                    row = loadRowForFilters(change, entitySubscriptions);
+                }
+                if (row.isEmpty() || !filterEvaluator.matches(subscription.filter(), row.get())) {
+                    continue;
+                }
+            }
+            try {
+                subscription.emitter().send(SseEmitter.event().id(eventId).name("change").data(change));
+            } catch (IOException | IllegalStateException e) {
+                entitySubscriptions.remove(subscription);
+                log.debug("Подписчик на изменения '{}' отключен: {}", change.getEntityName(), e.getMessage());
+            }
+        }
+    }
+
+    private Optional<Map<String, Object>> loadRowForFilters(EntityChangeDto change, List<Subscription> entitySubscriptions) {
+        Set<String> fields = new HashSet<>();
+        entitySubscriptions.stream()
+                .filter(s -> s.filter() != null)
+                .forEach(s -> fields.addAll(filterEvaluator.collectFields(s.filter())));
+        try {
+            return dynamicEntityQueryService.findEntityById(change.getEntityName(), change.getId(), List.copyOf(fields));
+        } catch (Exception e) {
+            log.warn("Не удалось загрузить запись {} '{}' для фильтрации подписок: {}", change.getId(), change.getEntityName(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${entity-changes.heartbeat-interval-ms:25000}")
+    public void heartbeat() {
+        long threshold = System.currentTimeMillis() - dedupWindow.toMillis();
+        locallyPublished.values().removeIf(ts -> ts < threshold);
+        subscriptions.forEach((entityName, entitySubscriptions) -> dispatcher.execute(() -> {
+            for (Subscription subscription : entitySubscriptions) {
+                try {
+                    subscription.emitter().send(SseEmitter.event().comment("heartbeat"));
+                } catch (IOException | IllegalStateException e) {
+                    entitySubscriptions.remove(subscription);
+                }
+            }
+        }));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscriptions.values().forEach(list -> list.forEach(s -> s.emitter().complete()));
+        dispatcher.shutdownNow();
+    }
+
+    private static String dedupKey(String entityName, EntityChangeEvent.Operation operation, UUID id) {
+        return entityName + ":" + operation + ":" + id;
+    }
+
+    private record Subscription(SseEmitter emitter, EntitiesSearchRequestDto.QueryDto filter) {
+    }
+
+    private record EntityTable(String entityName, Map<String, List<String>> fieldsByColumn) {
+    }
+
+    private record TableMapping(Instant version, Map<String, List<EntityTable>> byTable) {
+    }
+}
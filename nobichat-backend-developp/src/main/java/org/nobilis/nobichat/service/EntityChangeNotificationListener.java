@@ -0,0 +1,135 @@
+package org.nobilis.nobichat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Единственный на узел слушатель канала Postgres {@code entity_changes}.
+ * Держит отдельное соединение вне пула Hikari, получает уведомления триггеров
+ * {@code notify_entity_changes()} и передает их в {@link EntityChangeFeedService}.
+ * Триггеры срабатывают на уровне оператора: одно уведомление несет до 100 идентификаторов
+ * ({@code ids}) и объединение измененных в них колонок.
+ * При потере соединения переподключается с паузой.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EntityChangeNotificationListener implements SmartLifecycle {
+
+    private static final String CHANNEL = "entity_changes";
+
+    private final EntityChangeFeedService entityChangeFeedService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${entity-changes.db-listener.enabled:true}")
+    private boolean enabled;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${entity-changes.db-listener.poll-timeout-ms:5000}")
+    private int pollTimeoutMs;
+
+    @Value("${entity-changes.db-listener.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            log.info("Слушатель уведомлений об изменениях сущностей отключен.");
+            return;
+        }
+        running = true;
+        listenerThread = new Thread(this::listenLoop, "entity-change-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                log.info("Подписка на канал Postgres '{}' установлена.", CHANNEL);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Соединение слушателя канала '{}' потеряно: {}. Переподключение через {} мс.", CHANNEL, e.getMessage(), reconnectDelayMs);
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        try {
+            JsonNode node = objectMapper.readTree(payload);
+            List<String> columns = new ArrayList<>();
+            node.path("columns").forEach(c -> columns.add(c.asText()));
+            List<UUID> ids = new ArrayList<>();
+            node.path("ids").forEach(id -> ids.add(UUID.fromString(id.asText())));
+            if (node.hasNonNull("id")) {
+                ids.add(UUID.fromString(node.get("id").asText()));
+            }
+            entityChangeFeedService.onDatabaseNotification(
+                    node.path("table").asText(),
+                    node.path("op").asText(),
+                    ids,
+                    columns);
+        } catch (Exception e) {
+            log.warn("Не удалось обработать уведомление '{}': {}", payload, e.getMessage());
+        }
+    }
+}
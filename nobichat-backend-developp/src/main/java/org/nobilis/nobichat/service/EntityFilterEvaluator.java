@@ -0,0 +1,105 @@
+package org.nobilis.nobichat.service;
+
+import org.nobilis.nobichat.dto.entities.EntitiesSearchRequestDto;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Вычисление условий {@link EntitiesSearchRequestDto.QueryDto} в памяти над уже загруженной записью.
+ * Поддерживает те же операторы, что и {@link DynamicQueryBuilder}: equals, not_equals,
+ * contains, greater_than, less_than, а также вложенные группы с AND/OR.
+ */
+@Component
+public class EntityFilterEvaluator {
+
+    public boolean matches(EntitiesSearchRequestDto.QueryDto query, Map<String, Object> row) {
+        if (query == null) {
+            return true;
+        }
+        List<Boolean> results = new ArrayList<>();
+        if (query.getConditions() != null) {
+            for (EntitiesSearchRequestDto.QueryDto.ConditionDto condition : query.getConditions()) {
+                results.add(matchesCondition(condition, row));
+            }
+        }
+        if (query.getGroups() != null) {
+            for (EntitiesSearchRequestDto.QueryDto group : query.getGroups()) {
+                results.add(matches(group, row));
+            }
+        }
+        if (results.isEmpty()) {
+            return true;
+        }
+        boolean isOr = "OR".equalsIgnoreCase(query.getOperator());
+        return isOr ? results.contains(Boolean.TRUE) : !results.contains(Boolean.FALSE);
+    }
+
+    /**
+     * Собирает все поля, участвующие в условиях, чтобы загрузить только их.
+     */
+    public List<String> collectFields(EntitiesSearchRequestDto.QueryDto query) {
+        List<String> fields = new ArrayList<>();
+        if (query == null) {
+            return fields;
+        }
+        if (query.getConditions() != null) {
+            query.getConditions().forEach(c -> {
+                if (!fields.contains(c.getField())) {
+                    fields.add(c.getField());
+                }
+            });
+        }
+        if (query.getGroups() != null) {
+            query.getGroups().forEach(g -> collectFields(g).stream().filter(f -> !fields.contains(f)).forEach(fields::add));
+        }
+        return fields;
+    }
+
+    private boolean matchesCondition(EntitiesSearchRequestDto.QueryDto.ConditionDto condition, Map<String, Object> row) {
+        Object actual = row.get(condition.getField());
+        Object expected = condition.getValue();
+        return switch (condition.getOperator().toLowerCase(Locale.ROOT)) {
+            case "equals" -> compare(actual, expected) == 0;
+            case "not_equals" -> compare(actual, expected) != 0;
+            case "contains" -> actual != null && expected != null
+                    && actual.toString().toLowerCase(Locale.ROOT).contains(expected.toString().toLowerCase(Locale.ROOT));
+            case "greater_than" -> actual != null && compare(actual, expected) > 0;
+            case "less_than" -> actual != null && compare(actual, expected) < 0;
+            default -> false;
+        };
+    }
+
+    private int compare(Object actual, Object expected) {
+        if (actual == null || expected == null) {
+            return actual == expected ? 0 : (actual == null ? -1 : 1);
+        }
+        BigDecimal actualNumber = toNumber(actual);
+        BigDecimal expectedNumber = toNumber(expected);
+        if (actualNumber != null && expectedNumber != null) {
+            return actualNumber.compareTo(expectedNumber);
+        }
+        if (actual instanceof Boolean || expected instanceof Boolean) {
+            return Boolean.parseBoolean(actual.toString()) == Boolean.parseBoolean(expected.toString()) ? 0 : 1;
+        }
+        return actual.toString().compareToIgnoreCase(expected.toString());
+    }
+
+    private BigDecimal toNumber(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (value instanceof Number number) {
+            return new BigDecimal(number.toString());
+        }
+        try {
+            return new BigDecimal(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.nobilis.nobichat.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.nobilis.nobichat.model.QueryResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Защита пула соединений от тяжелых динамических запросов.
+ * <p>
+ * Запросу задается таймаут (минимум из настроек для сущности и для операции) через подсказку
+ * {@code jakarta.persistence.query.timeout}: драйвер отменяет запрос по его истечении, поэтому
+ * отдельного обращения к БД для установки statement_timeout не требуется. Драйвер применяет таймаут
+ * в целых секундах, поэтому таймауты с дробной частью секунды отклоняются при старте. Опционально оценивается
+ * стоимость запроса через EXPLAIN (с тем же таймаутом): запросы дороже бюджета отклоняются или ставятся
+ * в очередь с ограниченным числом одновременных тяжелых запросов.
+ * <p>
+ * Выполняемый запрос может быть отменен из другого потока через {@link QueryCancellation}
+ * (Session.cancelQuery вызывает Statement.cancel) - контроллер делает это при истечении
+ * дедлайна запроса или при обрыве соединения с клиентом.
+ */
+@Slf4j
+@Component
+public class EntityQueryGuard {
+
+    private static final Pattern TOTAL_COST = Pattern.compile("cost=[0-9.]+\\.\\.([0-9.]+)");
+    private static final ThreadLocal<QueryCancellation> CURRENT_CANCELLATION = new ThreadLocal<>();
+    private static final String QUERY_TIMEOUT_HINT = "jakarta.persistence.query.timeout";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${entity-query.statement-timeout.default:30s}")
+    private Duration defaultTimeout;
+
+    @Value("#{${entity-query.statement-timeout.operations}}")
+    private Map<String, String> operationTimeouts;
+
+    @Value("#{${entity-query.statement-timeout.entities}}")
+    private Map<String, String> entityTimeouts;
+
+    @Value("${entity-query.cost-check.enabled:false}")
+    private boolean costCheckEnabled;
+
+    @Value("${entity-query.cost-check.operations:search,count}")
+    private List<String> costCheckedOperations;
+
+    @Value("${entity-query.cost-check.max-cost:1000000}")
+    private double maxCost;
+
+    @Value("${entity-query.cost-check.mode:reject}")
+    private String costCheckMode;
+
+    @Value("${entity-query.cost-check.queue.max-concurrent:4}")
+    private int maxConcurrentHeavyQueries;
+
+    @Value("${entity-query.cost-check.queue.wait-timeout:10s}")
+    private Duration heavyQueryWaitTimeout;
+
+    private Semaphore heavyQuerySlots;
+    private Map<String, Duration> operationTimeoutDurations;
+    private Map<String, Duration> entityTimeoutDurations;
+
+    @PostConstruct
+    void init() {
+        heavyQuerySlots = new Semaphore(maxConcurrentHeavyQueries, true);
+        validateTimeout("entity-query.statement-timeout.default", defaultTimeout);
+        operationTimeoutDurations = parseTimeouts("entity-query.statement-timeout.operations", operationTimeouts);
+        entityTimeoutDurations = parseTimeouts("entity-query.statement-timeout.entities", entityTimeouts);
+    }
+
+    /**
+     * Выполняет действие с привязкой к потоку объекта отмены, чтобы запросы внутри
+     * могли быть отменены извне.
+     */
+    public <T> T runCancellable(QueryCancellation cancellation, Callable<T> action) throws Exception {
+        CURRENT_CANCELLATION.set(cancellation);
+        try {
+            return action.call();
+        } finally {
+            CURRENT_CANCELLATION.remove();
+        }
+    }
+
+    /**
+     * Допускает запрос к выполнению в текущей транзакции. Должен вызываться внутри
+     * {@code @Transactional}-метода, результат закрывается после выполнения запроса.
+     *
+     * @param entityName  Имя сущности в онтологии.
+     * @param operation   Операция (search, count, get, create, update, delete).
+     * @param queryResult Запрос, который будет выполнен; используется для оценки стоимости.
+     * @param query       Подготовленный запрос, которому задается таймаут.
+     */
+    public Admission admit(String entityName, String operation, QueryResult queryResult, Query query) {
+        QueryCancellation cancellation = CURRENT_CANCELLATION.get();
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Запрос отменен: " + cancellation.getReason());
+        }
+
+        long timeoutMs = resolveTimeout(entityName, operation).toMillis();
+        query.setHint(QUERY_TIMEOUT_HINT, timeoutMs);
+
+        boolean heavySlotAcquired = false;
+        if (costCheckEnabled && queryResult != null && costCheckedOperations.contains(operation)) {
+            double cost = estimateCost(queryResult, timeoutMs);
+            if (cost > maxCost) {
+                if ("queue".equalsIgnoreCase(costCheckMode)) {
+                    heavySlotAcquired = acquireHeavySlot(entityName, cost);
+                } else {
+                    log.warn("Запрос '{}' к сущности '{}' отклонен: оценка стоимости {} превышает бюджет {}", operation, entityName, cost, maxCost);
+                    throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                            "Запрос слишком ресурсоемкий. Уточните условия фильтрации.");
+                }
+            }
+        }
+
+        if (cancellation != null) {
+            cancellation.attach(entityManager.unwrap(Session.class));
+        }
+        return new Admission(cancellation, heavySlotAcquired);
+    }
+
+    private static Map<String, Duration> parseTimeouts(String property, Map<String, String> timeouts) {
+        Map<String, Duration> parsed = new HashMap<>();
+        timeouts.forEach((key, value) -> {
+            Duration timeout = DurationStyle.detectAndParse(value);
+            validateTimeout(property + "." + key, timeout);
+            parsed.put(key, timeout);
+        });
+        return parsed;
+    }
+
+    /**
+     * Таймаут JDBC-запроса задается в целых секундах: значение меньше секунды превратилось бы в 0,
+     * то есть в отсутствие таймаута, а дробная часть была бы потеряна.
+     */
+    private static void validateTimeout(String property, Duration timeout) {
+        if (timeout.getSeconds() < 1 || timeout.getNano() != 0) {
+            throw new IllegalStateException("Таймаут " + property + " должен быть целым числом секунд не меньше 1 с, указано: " + timeout);
+        }
+    }
+
+    private Duration resolveTimeout(String entityName, String operation) {
+        Duration timeout = defaultTimeout;
+        Duration byOperation = operationTimeoutDurations.get(operation);
+        Duration byEntity = entityTimeoutDurations.get(entityName);
+        if (byOperation != null || byEntity != null) {
+            if (byOperation == null) {
+                timeout = byEntity;
+            } else if (byEntity == null) {
+                timeout = byOperation;
+            } else {
+                timeout = byOperation.compareTo(byEntity) <= 0 ? byOperation : byEntity;
+            }
+        }
+        return timeout;
+    }
+
+    private double estimateCost(QueryResult queryResult, long timeoutMs) {
+        Query explain = entityManager.createNativeQuery("EXPLAIN " + queryResult.getSql());
+        explain.setHint(QUERY_TIMEOUT_HINT, timeoutMs);
+        queryResult.getParams().forEach(explain::setParameter);
+        Object firstLine = explain.getResultList().stream().findFirst().orElse(null);
+        if (firstLine == null) {
+            return 0;
+        }
+        Matcher matcher = TOTAL_COST.matcher(firstLine.toString());
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) : 0;
+    }
+
+    private boolean acquireHeavySlot(String entityName, double cost) {
+        log.info("Тяжелый запрос к сущности '{}' (стоимость {}) поставлен в очередь.", entityName, cost);
+        try {
+            if (heavyQuerySlots.tryAcquire(heavyQueryWaitTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Слишком много ресурсоемких запросов, повторите попытку позже.");
+    }
+
+    /**
+     * Допуск запроса к выполнению. Закрытие освобождает слот очереди тяжелых запросов
+     * и отвязывает сессию от объекта отмены.
+     */
+    public final class Admission implements AutoCloseable {
+        private final QueryCancellation cancellation;
+        private final boolean heavySlotAcquired;
+
+        private Admission(QueryCancellation cancellation, boolean heavySlotAcquired) {
+            this.cancellation = cancellation;
+            this.heavySlotAcquired = heavySlotAcquired;
+        }
+
+        @Override
+        public void close() {
+            if (cancellation != null) {
+                cancellation.detach();
+            }
+            if (heavySlotAcquired) {
+                heavyQuerySlots.release();
+            }
+        }
+    }
+
+    /**
+     * Объект отмены выполняемого запроса. Метод {@link #cancel(String)} безопасно
+     * вызывать из любого потока.
+     */
+    public static class QueryCancellation {
+        private volatile Session session;
+        private volatile boolean cancelled;
+        private volatile String reason;
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public void cancel(String reason) {
+            this.reason = reason;
+            this.cancelled = true;
+            Session current = session;
+            if (current != null) {
+                try {
+                    current.cancelQuery();
+                    log.info("Выполняемый запрос отменен: {}", reason);
+                } catch (Exception e) {
+                    log.warn("Не удалось отменить выполняемый запрос: {}", e.getMessage());
+                }
+            }
+        }
+
+        private void attach(Session session) {
+            this.session = session;
+        }
+
+        private void detach() {
+            this.session = null;
+        }
+    }
+}
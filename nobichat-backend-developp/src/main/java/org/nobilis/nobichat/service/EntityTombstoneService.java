@@ -0,0 +1,70 @@
+package org.nobilis.nobichat.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Журнал удалений динамических сущностей для дельта-синхронизации.
+ * Запись о удалении создается в той же транзакции, что и само удаление,
+ * и хранится ограниченное время (delta-sync.tombstone-retention).
+ */
+@Slf4j
+@Service
+public class EntityTombstoneService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${delta-sync.tombstone-retention:30d}")
+    private Duration retention;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordDeletion(String entityName, UUID entityId) {
+        entityManager.createNativeQuery("INSERT INTO entity_tombstones (entity_name, entity_id) VALUES (:entityName, :entityId)")
+                .setParameter("entityName", entityName)
+                .setParameter("entityId", entityId)
+                .executeUpdate();
+    }
+
+    @Transactional(readOnly = true)
+    public List<UUID> findDeletedSince(String entityName, Instant since) {
+        @SuppressWarnings("unchecked")
+        List<Object> ids = entityManager.createNativeQuery(
+                        "SELECT DISTINCT entity_id FROM entity_tombstones WHERE entity_name = :entityName AND deleted_date > :since")
+                .setParameter("entityName", entityName)
+                .setParameter("since", since)
+                .getResultList();
+        return ids.stream()
+                .map(id -> id instanceof UUID uuid ? uuid : UUID.fromString(id.toString()))
+                .toList();
+    }
+
+    /**
+     * Самый ранний момент, для которого журнал удалений еще полон.
+     */
+    public Instant getRetentionHorizon() {
+        return Instant.now().minus(retention);
+    }
+
+    @Scheduled(cron = "${delta-sync.tombstone-cleanup-cron:0 30 3 * * *}")
+    @Transactional
+    public void purgeExpired() {
+        int removed = entityManager.createNativeQuery("DELETE FROM entity_tombstones WHERE deleted_date < :horizon")
+                .setParameter("horizon", getRetentionHorizon())
+                .executeUpdate();
+        if (removed > 0) {
+            log.info("Удалено {} устаревших записей журнала удалений.", removed);
+        }
+    }
+}
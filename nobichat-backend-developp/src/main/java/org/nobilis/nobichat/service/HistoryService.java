@@ -19,6 +19,8 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -28,6 +30,12 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class HistoryService {
 
+    /**
+     * Запас на расхождение часов реплик: сообщение не может быть создано раньше своей сессии,
+     * но created_date проставляется разными экземплярами приложения.
+     */
+    private static final Duration CLOCK_SKEW_MARGIN = Duration.ofDays(1);
+
     private final UserChatSessionRepository sessionRepository;
     private final HistoryMapper historyMapper;
     private final ChatMessageRepository chatMessageRepository;
@@ -58,7 +66,13 @@ public class HistoryService {
     @Transactional(readOnly = true)
     public PromptsHistoryDto.PromptsHistoryResponseDto getSessionHistory(UUID sessionId) {
 
-        List<ChatMessage> messages = chatMessageRepository.findBySessionIdOrderByCreationDateAsc(sessionId);
+        Instant sessionCreated = sessionRepository.findById(sessionId)
+                .map(UserChatSession::getCreationDate)
+                .orElse(null);
+        List<ChatMessage> messages = sessionCreated == null
+                ? chatMessageRepository.findBySessionIdOrderByCreationDateAsc(sessionId)
+                : chatMessageRepository.findBySessionIdAndCreationDateGreaterThanEqualOrderByCreationDateAsc(
+                        sessionId, sessionCreated.minus(CLOCK_SKEW_MARGIN));
 
         List<PromptsHistoryDto.PromptHistoryDto> history = messages.stream()
                 .map(this::mapMessageToPromptHistoryDto)
@@ -1,17 +1,28 @@
 package org.nobilis.nobichat.service;
 
-import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.dto.llm.LLMResponseDto;
+import org.nobilis.nobichat.exception.LlmAdmissionRejectedException;
+import org.nobilis.nobichat.service.llm.LlmAdmissionScheduler;
+import org.nobilis.nobichat.service.llm.LlmMetrics;
+import org.nobilis.nobichat.service.llm.LlmModelRouter;
+import org.nobilis.nobichat.service.llm.LlmRateLimiter;
+import org.nobilis.nobichat.service.llm.PromptFamily;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 
 @Slf4j
 @Service
@@ -20,48 +31,104 @@ public class LLMService {
 
     private final ChatClient.Builder chatClientBuilder;
     private final OpenAiChatOptions defaultOptions;
-    private final RateLimiterRegistry rateLimiterRegistry;
+    private final LlmAdmissionScheduler admissionScheduler;
+    private final LlmRateLimiter llmRateLimiter;
+    private final LlmModelRouter modelRouter;
+    private final LlmMetrics llmMetrics;
+
+    public static final double TEMPERATURE = 0.1;
+
+    @Value("${llm.stream.timeout:120s}")
+    private Duration streamTimeout;
+
+    /**
+     * Клиент создается один раз: builder общий, а параметры модели задаются в каждом запросе,
+     * иначе параллельные вызовы разных моделей (маршрутизация, хеджирование) перезаписывали бы их друг у друга.
+     */
+    private ChatClient chatClient;
+
+    @PostConstruct
+    void initChatClient() {
+        chatClient = chatClientBuilder.build();
+    }
 
     public LLMResponseDto sendToSingleModel(String prompt, String modelName, Boolean useRateLimiter) {
-        String targetModel;
+        return sendToSingleModel(prompt, modelName, useRateLimiter, PromptFamily.OTHER);
+    }
 
+    /**
+     * Если модель не указана явно, она выбирается маршрутизатором по семейству промпта
+     * (с хеджированием резервной моделью). Допуск к LLM запрашивается один раз до маршрутизации;
+     * дополнительные вызовы маршрутизатора получают допуск отдельно.
+     */
+    public LLMResponseDto sendToSingleModel(String prompt, String modelName, Boolean useRateLimiter, PromptFamily family) {
         if (modelName == null || modelName.isBlank()) {
-            targetModel = defaultOptions.getModel();
-        } else {
-            targetModel = modelName;
+            if (useRateLimiter) {
+                acquire(modelRouter.primaryModel(family), family);
+            }
+            return modelRouter.route(family, model -> invoke(prompt, model, family),
+                    useRateLimiter ? extraCallAdmission : LlmModelRouter.ExtraCallAdmission.NONE);
         }
-        return callSingleModel(prompt, targetModel, useRateLimiter);
+        return callSingleModel(prompt, modelName, useRateLimiter, family);
+    }
+
+    public String resolveModel(String modelName) {
+        if (modelName == null || modelName.isBlank()) {
+            return defaultOptions.getModel();
+        }
+        return modelName;
+    }
+
+    /**
+     * Строка, однозначно описывающая модель и параметры генерации; используется в ключе кэша ответов.
+     */
+    public String optionsFingerprint(String modelName) {
+        return resolveModel(modelName) + "|t=" + TEMPERATURE + "|max=" + defaultOptions.getMaxTokens();
+    }
+
+    public String optionsFingerprint(PromptFamily family) {
+        return optionsFingerprint(modelRouter.primaryModel(family));
     }
 
     public LLMResponseDto callSingleModel(String prompt, String modelName, Boolean useRateLimiter) {
+        return callSingleModel(prompt, modelName, useRateLimiter, PromptFamily.OTHER);
+    }
+
+    public LLMResponseDto callSingleModel(String prompt, String modelName, Boolean useRateLimiter, PromptFamily family) {
         if (useRateLimiter) {
-            rateLimiterRegistry.rateLimiter("openRouterLimiter").acquirePermission();
+            acquire(modelName, family);
         }
+        return invoke(prompt, modelName, family);
+    }
 
+    /**
+     * Вызов модели провайдера без ожидания допуска.
+     */
+    private LLMResponseDto invoke(String prompt, String modelName, PromptFamily family) {
+        long startTime = System.nanoTime();
         try {
             OpenAiChatOptions options = OpenAiChatOptions.builder()
                     .model(modelName)
-                    .temperature(0.1)
+                    .temperature(TEMPERATURE)
                     .build();
 
-            ChatClient chatClient = chatClientBuilder
-                    .defaultOptions(options)
-                    .build();
-
-            long startTime = System.currentTimeMillis();
             ChatResponse response = chatClient.prompt()
                     .user(prompt)
+                    .options(options)
                     .call()
                     .chatResponse();
 
-            long endTime = System.currentTimeMillis();
-            Duration responseDuration = Duration.ofMillis(endTime - startTime);
+            long durationNanos = System.nanoTime() - startTime;
+            long responseTimeMs = TimeUnit.NANOSECONDS.toMillis(durationNanos);
 
             Generation generation = response.getResult();
             Usage usage = response.getMetadata().getUsage();
+            llmRateLimiter.onProviderRateLimit(response.getMetadata().getRateLimit());
 
             String content = (generation != null && generation.getOutput() != null)
                     ? generation.getOutput().getText() : "";
+            llmMetrics.recordSuccess(modelName, family, false, durationNanos,
+                    usage.getPromptTokens(), usage.getCompletionTokens(), usage.getTotalTokens());
 
             return LLMResponseDto.builder()
                     .modelName(modelName)
@@ -69,9 +136,11 @@ public class LLMService {
                     .promptTokens(usage.getPromptTokens())
                     .completionTokens(usage.getCompletionTokens())
                     .totalTokens(usage.getTotalTokens())
-                    .responseTime(responseDuration.toMillis() + "ms")
+                    .responseTimeMs(responseTimeMs)
+                    .responseTime(responseTimeMs + "ms")
                     .build();
         } catch (Exception e) {
+            llmMetrics.recordFailure(modelName, family, false, System.nanoTime() - startTime, e);
             log.error("Failed to get response from model '{}': {}", modelName, e.getMessage());
             return LLMResponseDto.builder()
                     .modelName(modelName)
@@ -79,4 +148,117 @@ public class LLMService {
                     .build();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Потоковый вызов модели. Каждый полученный фрагмент текста передается в {@code onDelta};
+     * если обработчик вернул true, подписка на поток отменяется и генерация прекращается досрочно.
+     *
+     * @param prompt         текст промпта
+     * @param modelName      имя модели (null — модель по умолчанию)
+     * @param useRateLimiter использовать ли общий лимитер запросов
+     * @param family         семейство промпта (приоритет в очереди допуска)
+     * @param onDelta        обработчик фрагментов, возвращающий признак достаточности ответа
+     * @return накопленный (возможно, неполный) ответ модели
+     */
+    public LLMResponseDto streamSingleModel(String prompt, String modelName, Boolean useRateLimiter, PromptFamily family,
+                                            Predicate<String> onDelta) {
+        String targetModel = modelName == null || modelName.isBlank() ? modelRouter.primaryModel(family) : modelName;
+        if (useRateLimiter) {
+            acquire(targetModel, family);
+        }
+
+        StringBuilder content = new StringBuilder();
+        AtomicReference<Usage> lastUsage = new AtomicReference<>();
+        AtomicBoolean enough = new AtomicBoolean(false);
+        long startTime = System.nanoTime();
+        try {
+            OpenAiChatOptions options = OpenAiChatOptions.builder()
+                    .model(targetModel)
+                    .temperature(TEMPERATURE)
+                    .streamUsage(true)
+                    .build();
+
+            chatClient.prompt()
+                    .user(prompt)
+                    .options(options)
+                    .stream()
+                    .chatResponse()
+                    .doOnNext(chunk -> {
+                        if (chunk.getMetadata() != null && chunk.getMetadata().getUsage() != null
+                                && chunk.getMetadata().getUsage().getTotalTokens() != null
+                                && chunk.getMetadata().getUsage().getTotalTokens() > 0) {
+                            lastUsage.set(chunk.getMetadata().getUsage());
+                            llmRateLimiter.onProviderRateLimit(chunk.getMetadata().getRateLimit());
+                        }
+                        Generation generation = chunk.getResult();
+                        String delta = (generation != null && generation.getOutput() != null)
+                                ? generation.getOutput().getText() : null;
+                        if (delta != null && !delta.isEmpty()) {
+                            content.append(delta);
+                            if (onDelta.test(delta)) {
+                                enough.set(true);
+                            }
+                        }
+                    })
+                    .takeUntil(chunk -> enough.get())
+                    .blockLast(streamTimeout);
+
+            long durationNanos = System.nanoTime() - startTime;
+            long responseTime = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            if (enough.get()) {
+                log.debug("Потоковая генерация модели '{}' остановлена досрочно через {} мс", targetModel, responseTime);
+            }
+
+            Usage usage = lastUsage.get();
+            llmMetrics.recordSuccess(targetModel, family, true, durationNanos,
+                    usage != null ? usage.getPromptTokens() : null,
+                    usage != null ? usage.getCompletionTokens() : null,
+                    usage != null ? usage.getTotalTokens() : null);
+            return LLMResponseDto.builder()
+                    .modelName(targetModel)
+                    .content(content.toString())
+                    .promptTokens(usage != null ? usage.getPromptTokens() : null)
+                    .completionTokens(usage != null ? usage.getCompletionTokens() : null)
+                    .totalTokens(usage != null ? usage.getTotalTokens() : null)
+                    .responseTimeMs(responseTime)
+                    .responseTime(responseTime + "ms")
+                    .build();
+        } catch (Exception e) {
+            llmMetrics.recordFailure(targetModel, family, true, System.nanoTime() - startTime, e);
+            log.error("Failed to stream response from model '{}': {}", targetModel, e.getMessage());
+            return LLMResponseDto.builder()
+                    .modelName(targetModel)
+                    .content("Error: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    private final LlmModelRouter.ExtraCallAdmission extraCallAdmission = new LlmModelRouter.ExtraCallAdmission() {
+        @Override
+        public void acquireForRetry(PromptFamily family) {
+            acquire(modelRouter.primaryModel(family), family);
+        }
+
+        @Override
+        public boolean tryAcquireForHedge(PromptFamily family) {
+            return admissionScheduler.tryAcquireIfIdle(family);
+        }
+    };
+
+    /**
+     * Ожидание допуска записывается в любом исходе, иначе отказы по таймауту очереди выпадают из метрики.
+     */
+    private void acquire(String modelName, PromptFamily family) {
+        long waitStart = System.nanoTime();
+        LlmMetrics.AdmissionOutcome outcome = LlmMetrics.AdmissionOutcome.ERROR;
+        try {
+            admissionScheduler.acquire(family);
+            outcome = LlmMetrics.AdmissionOutcome.ADMITTED;
+        } catch (LlmAdmissionRejectedException e) {
+            outcome = LlmMetrics.AdmissionOutcome.REJECTED;
+            throw e;
+        } finally {
+            llmMetrics.recordLimiterWait(modelName, family, System.nanoTime() - waitStart, outcome);
+        }
+    }
+}
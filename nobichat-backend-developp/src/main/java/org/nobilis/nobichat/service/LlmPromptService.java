@@ -1,18 +1,25 @@
 package org.nobilis.nobichat.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.dto.llm.LLMResponseDto;
 import org.nobilis.nobichat.dto.ontology.OntologyDto;
 import org.nobilis.nobichat.events.event.LlmCallEvent;
 import org.nobilis.nobichat.model.ChatMessage;
-import org.nobilis.nobichat.model.Scenario;
 import org.nobilis.nobichat.repository.ScenarioRepository;
+import org.nobilis.nobichat.service.llm.LlmResponseCache;
+import org.nobilis.nobichat.service.llm.PromptFamily;
+import org.nobilis.nobichat.service.llm.PromptFragmentCache;
+import org.nobilis.nobichat.util.json.IncrementalJsonFieldExtractor;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -20,154 +27,330 @@ import java.util.stream.Collectors;
 @Slf4j
 public class LlmPromptService {
 
+    /*
+     * Промпты собираются так, чтобы длинная неизменная часть (роль, правила, примеры) шла первой
+     * и совпадала байт в байт между вызовами: это позволяет провайдеру переиспользовать кэш префикса.
+     * Редко меняющиеся части (каталог сценариев, онтология) идут следом, сообщение пользователя — в конце.
+     */
+    private static final String FREE_MODE_PROMPT_PREFIX = """
+            [ROLE]
+            Ты — AI-классификатор команд главного меню.
+            [CONTEXT]
+            1.  **Возможные интенты:**
+                *   `LAUNCH_SCENARIO`: Запустить существующий сценарий.
+                *   `START_SCENARIO_CONSTRUCTOR`: Начать создание нового сценария.
+                *   `UNKNOWN`: Другое.
+            2.  **Доступные сценарии:** перечислены в [AVAILABLE SCENARIOS].
+            [TASK]
+            Классифицируй [USER REQUEST] и верни JSON. Для `LAUNCH_SCENARIO` найди `scenarioName`.
+            [TARGET SCHEMA]
+            { "intent": "...", "scenarioName": "...", "scenarioDraftText": "..." }
+            """;
+
+    private static final String CONSTRUCTOR_MODE_PROMPT_PREFIX = """
+            [ROLE]
+            Ты — AI-классификатор команд редактора сценариев.
+            [CONTEXT]
+            1.  **Возможные интенты:**
+                *   `START_SCENARIO_PREVIEW`: Войти в режим просмотра (ключевые слова: "покажи", "просмотр", "сохранить", "готово").
+                *   `PUBLISH_SCENARIO`: Окончательно опубликовать сценарий (ключевые слова: "опубликовать", "завершить окончательно").
+            [TASK]
+            Классифицируй [USER REQUEST] в JSON. Если интент не распознан, считай, что пользователь продолжает редактирование, и верни пустой JSON.
+            [TARGET SCHEMA]
+            { "intent": "..." }
+            """;
+
+    private static final String EXECUTION_MODE_PROMPT_PREFIX = """
+            [ROLE]
+            Ты — AI-классификатор команд в режиме исполнения сценария.
+
+            [TASK]
+            Твоя задача — проанализировать [USER REQUEST] и классифицировать его как одну из трех команд.
+            1.  **Команда Навигации:**
+                *   Если пользователь говорит "дальше", "следующий", "вперед" -> верни интент `NAVIGATE_EXECUTION` с `direction: "NEXT"`.
+                *   Если пользователь говорит "назад", "предыдущий", "вернись" -> верни интент `NAVIGATE_EXECUTION` с `direction: "BACK"`.
+            2.  **Команда Сохранения:**
+                *   Если пользователь говорит "сохранить", "применить", "записать", "сохрани" -> верни интент `SAVE_SCENARIO_DATA`.
+            3.  **Неизвестная Команда:**
+                *   Для любого другого текста (включая белиберду) -> верни интент `UNKNOWN_EXECUTION_COMMAND`.
+            
+            [TARGET SCHEMA]
+            ```json
+            {
+              "intent": "NAVIGATE_EXECUTION | SAVE_SCENARIO_DATA | UNKNOWN_EXECUTION_COMMAND",
+              "direction": "NEXT | BACK | null"
+            }
+            ```
+
+            [EXAMPLES]
+            1.  Запрос: "дальше"
+                Ответ: { "intent": "NAVIGATE_EXECUTION", "direction": "NEXT" }
+            2.  Запрос: "Сохранить"
+                Ответ: { "intent": "SAVE_SCENARIO_DATA" }
+            3.  Запрос: "привет"
+                Ответ: { "intent": "UNKNOWN_EXECUTION_COMMAND" }
+            
+            """;
+
+    private static final String IS_EDIT_COMMAND_PROMPT_PREFIX = """
+            [ROLE]
+            Ты — бинарный классификатор намерения редактирования.
+            
+            [TASK]
+            Проанализируй [USER REQUEST]. Если он содержит явное намерение что-то изменить, добавить или удалить (например, "измени название", "добавь поле", "удали шаг"), верни JSON `{"isEditCommand": true}`.
+            В противном случае, включая бессмысленный набор символов, верни `{"isEditCommand": false}`.
+            
+            [OUTPUT FORMAT]
+                            Твой ответ должен быть **СТРОГО** только валидным JSON-объектом. Ничего больше.
+
+            [EXAMPLES]
+            1. Запрос: "поменяй описание шага 2 на 'новое описание'" -> {"isEditCommand": true}
+            2. Запрос: "добавь шаг" -> {"isEditCommand": true}
+            3. Запрос: "привет" -> {"isEditCommand": false}
+            4. Запрос: "ываофыова" -> {"isEditCommand": false}
+            5. Запрос: "Удали шаг <какой-то шаг>" -> {"isEditCommand": true}
+
+            """;
+
+    private static final String PREVIEW_MODE_PROMPT_PREFIX = """
+            [ROLE]
+            Ты — AI-классификатор команд режима просмотра.
+            [CONTEXT]
+            1.  **Возможные интенты:**
+                *   `NAVIGATE_PREVIEW`: Переместиться по шагам ("дальше", "назад").
+                *   `PUBLISH_SCENARIO`: Окончательно опубликовать сценарий ("опубликовать").
+            [TASK]
+            Классифицируй [USER REQUEST] в JSON. Для `NAVIGATE_PREVIEW` определи `direction`. Если интент не распознан, считай, что пользователь хочет выйти из просмотра и редактировать, верни пустой JSON.
+            [TARGET SCHEMA]
+            { "intent": "...", "direction": "NEXT | BACK | null" }
+            """;
+
+    private static final String PREVIEW_MODE_COMBINED_PROMPT_PREFIX = """
+            [ROLE]
+            Ты — AI-классификатор команд режима просмотра.
+            [CONTEXT]
+            1.  **Возможные интенты:**
+                *   `NAVIGATE_PREVIEW`: Переместиться по шагам ("дальше", "назад").
+                *   `PUBLISH_SCENARIO`: Окончательно опубликовать сценарий ("опубликовать").
+            [TASK]
+            Классифицируй [USER REQUEST] в JSON. Для `NAVIGATE_PREVIEW` определи `direction`.
+            Если интент не распознан, верни `intent: null` и определи `isEditCommand`: true, если запрос содержит явное намерение что-то изменить, добавить или удалить в сценарии (например, "измени название", "добавь поле", "удали шаг"), иначе false (включая бессмысленный набор символов).
+            [TARGET SCHEMA]
+            { "intent": "NAVIGATE_PREVIEW | PUBLISH_SCENARIO | null", "direction": "NEXT | BACK | null", "isEditCommand": true | false }
+            [EXAMPLES]
+            1. Запрос: "дальше" -> { "intent": "NAVIGATE_PREVIEW", "direction": "NEXT", "isEditCommand": false }
+            2. Запрос: "опубликовать" -> { "intent": "PUBLISH_SCENARIO", "direction": null, "isEditCommand": false }
+            3. Запрос: "поменяй описание шага 2 на 'новое описание'" -> { "intent": null, "direction": null, "isEditCommand": true }
+            4. Запрос: "ываофыова" -> { "intent": null, "direction": null, "isEditCommand": false }
+            """;
+
+    private static final String SCENARIO_PROMPT_ROLE_AND_SCHEMA = """
+            [ROLE]
+            Ты — AI-инженер-аналитик. Твоя задача — пошагово создавать JSON-определение бизнес-сценария 'ScenarioDefinition', строго следуя правилам и используя предоставленные контексты.
+
+            [TARGET SCHEMA]
+            Твоей конечной целью всегда является валидный JSON, соответствующий этой структуре:
+            {
+              "name": "string", "description": "string",
+              "steps": [
+                {
+                  "name": "string", "description": "string", "stepIndex": "integer",
+                  "template": "form | list",
+                  "entity": "string (technical name from ontology)",
+                  "entityFields": ["string (technical field name)", ...]
+                }
+              ]
+            }
+
+            """;
+
+    private static final String SCENARIO_MAPPING_RULES = """
+            1.  **Извлечение, а не Игнорирование:** Ты должен попытаться извлечь значение для КАЖДОГО поля, упомянутого пользователем.
+
+            2.  **Маппинг Шаблона (`template`):**
+                *   "форма", "карточка" -> **"form"**
+                *   "список", "таблица" -> **"list"**
+                *   **Если шаблон не похож ни на один из них, вставь то, что написал пользователь, КАК ЕСТЬ (например, "super-form").**
+
+            3.  **Маппинг Сущности (`entity`):**
+                *   Найди в [ONTOLOGY CONTEXT] техническое имя сущности, соответствующее упоминанию пользователя (например, "клиент" -> "customer").
+                *   **КРИТИЧЕСКИ ВАЖНО:** Если ты НЕ МОЖЕШЬ найти точное соответствие в онтологии, ты ОБЯЗАН вставить в поле `entity` то слово, которое использовал пользователь, **КАК ЕСТЬ** (например, "customerTYPO"). **НЕ ОСТАВЛЯЙ ПОЛЕ ПУСТЫМ (`null`)**.
+
+            4.  **Маппинг Полей (`entityFields`):**
+                *   Для КАЖДОГО поля, упомянутого пользователем, найди его техническое имя в [ONTOLOGY CONTEXT] (например, "Наименование клиента" -> "name").
+                *   **КРИТИЧЕСКИ ВАЖНО:** Если ты НЕ МОЖЕШЬ найти техническое имя для какого-то поля, ты ОБЯЗАН вставить в массив `entityFields` то название, которое использовал пользователь, **КАК ЕСТЬ** (например, "nameTYPO"). **НЕ ИГНОРИРУЙ НЕИЗВЕСТНЫЕ ПОЛЯ**.
+                *   Финальный массив `entityFields` должен содержать смесь из найденных технических имен и ненайденных пользовательских имен.
+
+            5.  **Сохранение Контекста:** Не удаляй уже существующую информацию из [CURRENT STATE], только дополняй или изменяй ее в соответствии с [USER INPUT].
+
+            [EXAMPLE OF CORRECT (even if invalid) BEHAVIOR]
+            -   **ЕСЛИ [USER INPUT]:** "Шаг для сущности `qwerty`, поля `ИНН` и `неверное поле`."
+            -   **ТЫ ДОЛЖЕН СГЕНЕРИРОВАТЬ ТАКОЙ ФРАГМЕНТ JSON:**
+                ```json
+                {
+                  ...
+                  "entity": "qwerty",
+                  "entityFields": ["inn", "неверное поле"]
+                }
+                ```
+
+            """;
+
+    private static final String SCENARIO_ENRICHMENT_PROMPT_PREFIX = SCENARIO_PROMPT_ROLE_AND_SCHEMA + """
+            [TASK AND RULES]
+            Твоя задача — создать **НОВЫЙ ПОЛНЫЙ JSON**, который является результатом обновления [CURRENT STATE] на основе [USER INPUT]. Ты должен СТРОГО следовать этим правилам:
+
+            """ + SCENARIO_MAPPING_RULES + """
+            [OUTPUT FORMAT]
+            -   Твой ответ — это ВСЕГДА только полный и валидный JSON-объект. Не добавляй ничего, кроме самого JSON.
+
+            """;
+
+    private static final String SCENARIO_PATCH_PROMPT_PREFIX = SCENARIO_PROMPT_ROLE_AND_SCHEMA + """
+            [TASK AND RULES]
+            Твоя задача — описать, как изменить [CURRENT STATE] на основе [USER INPUT], в виде **JSON Patch (RFC 6902)**. Не пересылай документ целиком — только операции изменения. Ты должен СТРОГО следовать этим правилам:
+
+            """ + SCENARIO_MAPPING_RULES + """
+            [PATCH RULES]
+            -   Допустимые операции: `add`, `remove`, `replace`, `move`, `copy`, `test`.
+            -   Пути (`path`, `from`) — JSON Pointer от корня [CURRENT STATE]: `/name`, `/description`, `/steps/0/entityFields/-` и т.п.
+            -   В [CURRENT STATE] опущены пустые поля и поля со значением null. Чтобы задать такое поле, используй `add` (например, `{"op": "add", "path": "/steps", "value": []}`).
+            -   Новый шаг добавляй целиком: `{"op": "add", "path": "/steps/-", "value": {"name": "...", ...}}`.
+            -   Если изменений нет, верни пустой массив `[]`.
+
+            [OUTPUT FORMAT]
+            -   Твой ответ — это ВСЕГДА только валидный JSON-массив операций. Не добавляй ничего, кроме самого массива.
+
+            """;
+
+
     private final LLMService llmService;
     private final ApplicationEventPublisher eventPublisher;
     private final ScenarioRepository scenarioRepository;
+    private final LlmResponseCache llmResponseCache;
+    private final ObjectMapper objectMapper;
+    private final PromptFragmentCache promptFragmentCache;
 
     public LLMResponseDto sendPromptToLlm(String prompt, List<ChatMessage> history, boolean stream, UUID messageId) {
-        LLMResponseDto llmResponse = llmService.sendToSingleModel(prompt, null, true);
+        return sendPromptToLlm(prompt, PromptFamily.OTHER, messageId);
+    }
+
+    /**
+     * Отправляет промпт в LLM через кэш ответов. Для ответов из кэша событие {@link LlmCallEvent}
+     * публикуется с признаком cached, а время ответа отражает время поиска в кэше.
+     *
+     * @param prompt    текст промпта
+     * @param family    семейство промпта, определяющее политику кэширования
+     * @param messageId сообщение чата, к которому относится вызов
+     * @return ответ модели
+     */
+    public LLMResponseDto sendPromptToLlm(String prompt, PromptFamily family, UUID messageId) {
+        long start = System.currentTimeMillis();
+        LlmResponseCache.Result result = llmResponseCache.getOrLoad(family, llmService.optionsFingerprint(family), prompt,
+                () -> llmService.sendToSingleModel(prompt, null, true, family));
+
+        LLMResponseDto llmResponse = result.response();
+        if (result.cached()) {
+            long lookupTimeMs = System.currentTimeMillis() - start;
+            llmResponse = llmResponse.toBuilder()
+                    .responseTimeMs(lookupTimeMs)
+                    .responseTime(lookupTimeMs + "ms")
+                    .build();
+            log.debug("Ответ LLM для промпта семейства {} получен из кэша.", family);
+        }
         if (messageId != null) {
-            eventPublisher.publishEvent(new LlmCallEvent(this, prompt, llmResponse, messageId));
+            eventPublisher.publishEvent(new LlmCallEvent(this, prompt, llmResponse, messageId, result.cached(), family));
+        }
+        return llmResponse;
+    }
+
+    /**
+     * Потоковый вариант {@link #sendPromptToLlm(String, PromptFamily, UUID)} для промптов с JSON-ответом.
+     * Поля верхнего уровня разбираются по мере генерации; как только {@code enough} признает набор
+     * полученных полей достаточным, генерация прерывается, а содержимым ответа становится JSON
+     * из уже полученных полей. Такой неполный ответ в кэш не сохраняется, полный — сохраняется как обычно.
+     *
+     * @param prompt    текст промпта
+     * @param family    семейство промпта
+     * @param messageId сообщение чата, к которому относится вызов
+     * @param enough    условие досрочного завершения по полученным полям
+     * @return ответ модели
+     */
+    public LLMResponseDto streamPromptToLlm(String prompt, PromptFamily family, UUID messageId,
+                                            Predicate<Map<String, Object>> enough) {
+        long start = System.currentTimeMillis();
+        boolean[] stoppedEarly = {false};
+        LlmResponseCache.Result result = llmResponseCache.getOrLoad(family, llmService.optionsFingerprint(family), prompt, () -> {
+            IncrementalJsonFieldExtractor extractor = new IncrementalJsonFieldExtractor();
+            LLMResponseDto response = llmService.streamSingleModel(prompt, null, true, family, delta -> {
+                extractor.feed(delta);
+                stoppedEarly[0] = !extractor.isClosed() && enough.test(extractor.getFields());
+                return stoppedEarly[0];
+            });
+            if (stoppedEarly[0]) {
+                try {
+                    response.setContent(objectMapper.writeValueAsString(extractor.getFields()));
+                } catch (JsonProcessingException e) {
+                    log.warn("Не удалось сериализовать досрочно полученные поля: {}", e.getMessage());
+                }
+            }
+            return response;
+        }, response -> !stoppedEarly[0]);
+
+        LLMResponseDto llmResponse = result.response();
+        if (result.cached()) {
+            long lookupTimeMs = System.currentTimeMillis() - start;
+            llmResponse = llmResponse.toBuilder()
+                    .responseTimeMs(lookupTimeMs)
+                    .responseTime(lookupTimeMs + "ms")
+                    .build();
+        }
+        if (messageId != null) {
+            eventPublisher.publishEvent(new LlmCallEvent(this, prompt, llmResponse, messageId, result.cached(), family));
         }
         return llmResponse;
     }
 
     public String buildFreeModeExtractionPrompt(String userQuery) {
-        String scenariosContext = buildAvailableScenariosContext();
-        String promptTemplate = """
-                [ROLE]
-                Ты — AI-классификатор команд главного меню.
-                [CONTEXT]
-                1.  **Возможные интенты:**
-                    *   `LAUNCH_SCENARIO`: Запустить существующий сценарий.
-                    *   `START_SCENARIO_CONSTRUCTOR`: Начать создание нового сценария.
-                    *   `UNKNOWN`: Другое.
-                2.  **Доступные сценарии:**
-                    %s
-                [TASK]
-                Классифицируй [USER REQUEST] и верни JSON. Для `LAUNCH_SCENARIO` найди `scenarioName`.
-                [TARGET SCHEMA]
-                { "intent": "...", "scenarioName": "...", "scenarioDraftText": "..." }
-                [USER REQUEST]
-                %s
-                [RESPONSE]
-                """;
-        return String.format(promptTemplate, scenariosContext, userQuery);
+        String scenariosContext = promptFragmentCache.get("available-scenarios", promptFragmentCache.getCatalogueVersion(),
+                this::buildAvailableScenariosContext);
+        return FREE_MODE_PROMPT_PREFIX
+                + "[AVAILABLE SCENARIOS]\n" + scenariosContext + "\n"
+                + "[USER REQUEST]\n" + userQuery + "\n[RESPONSE]\n";
     }
 
     public String buildConstructorModeExtractionPrompt(String userQuery) {
-        String promptTemplate = """
-                [ROLE]
-                Ты — AI-классификатор команд редактора сценариев.
-                [CONTEXT]
-                1.  **Возможные интенты:**
-                    *   `START_SCENARIO_PREVIEW`: Войти в режим просмотра (ключевые слова: "покажи", "просмотр", "сохранить", "готово").
-                    *   `PUBLISH_SCENARIO`: Окончательно опубликовать сценарий (ключевые слова: "опубликовать", "завершить окончательно").
-                [TASK]
-                Классифицируй [USER REQUEST] в JSON. Если интент не распознан, считай, что пользователь продолжает редактирование, и верни пустой JSON.
-                [TARGET SCHEMA]
-                { "intent": "..." }
-                [USER REQUEST]
-                %s
-                [RESPONSE]
-                """;
-        return String.format(promptTemplate, userQuery);
+        return CONSTRUCTOR_MODE_PROMPT_PREFIX + "[USER REQUEST]\n" + userQuery + "\n[RESPONSE]\n";
     }
 
     public String buildExecutionModeExtractionPrompt(String userQuery) {
-        String promptTemplate = """
-                [ROLE]
-                Ты — AI-классификатор команд в режиме исполнения сценария.
-
-                [TASK]
-                Твоя задача — проанализировать [USER REQUEST] и классифицировать его как одну из трех команд.
-                1.  **Команда Навигации:**
-                    *   Если пользователь говорит "дальше", "следующий", "вперед" -> верни интент `NAVIGATE_EXECUTION` с `direction: "NEXT"`.
-                    *   Если пользователь говорит "назад", "предыдущий", "вернись" -> верни интент `NAVIGATE_EXECUTION` с `direction: "BACK"`.
-                2.  **Команда Сохранения:**
-                    *   Если пользователь говорит "сохранить", "применить", "записать", "сохрани" -> верни интент `SAVE_SCENARIO_DATA`.
-                3.  **Неизвестная Команда:**
-                    *   Для любого другого текста (включая белиберду) -> верни интент `UNKNOWN_EXECUTION_COMMAND`.
-                
-                [TARGET SCHEMA]
-                ```json
-                {
-                  "intent": "NAVIGATE_EXECUTION | SAVE_SCENARIO_DATA | UNKNOWN_EXECUTION_COMMAND",
-                  "direction": "NEXT | BACK | null"
-                }
-                ```
-
-                [EXAMPLES]
-                1.  Запрос: "дальше"
-                    Ответ: { "intent": "NAVIGATE_EXECUTION", "direction": "NEXT" }
-                2.  Запрос: "Сохранить"
-                    Ответ: { "intent": "SAVE_SCENARIO_DATA" }
-                3.  Запрос: "привет"
-                    Ответ: { "intent": "UNKNOWN_EXECUTION_COMMAND" }
-                
-                [USER REQUEST]
-                %s
-
-                [RESPONSE]
-                """;
-
-        return String.format(promptTemplate, userQuery);
+        return EXECUTION_MODE_PROMPT_PREFIX + "[USER REQUEST]\n" + userQuery + "\n\n[RESPONSE]\n";
     }
 
     public String buildIsEditCommandPrompt(String userQuery) {
-        String promptTemplate = """
-                [ROLE]
-                Ты — бинарный классификатор намерения редактирования.
-                
-                [TASK]
-                Проанализируй [USER REQUEST]. Если он содержит явное намерение что-то изменить, добавить или удалить (например, "измени название", "добавь поле", "удали шаг"), верни JSON `{"isEditCommand": true}`.
-                В противном случае, включая бессмысленный набор символов, верни `{"isEditCommand": false}`.
-                
-                [OUTPUT FORMAT]
-                                Твой ответ должен быть **СТРОГО** только валидным JSON-объектом. Ничего больше.
-
-                [EXAMPLES]
-                1. Запрос: "поменяй описание шага 2 на 'новое описание'" -> {"isEditCommand": true}
-                2. Запрос: "добавь шаг" -> {"isEditCommand": true}
-                3. Запрос: "привет" -> {"isEditCommand": false}
-                4. Запрос: "ываофыова" -> {"isEditCommand": false}
-                5. Запрос: "Удали шаг <какой-то шаг>" -> {"isEditCommand": true}
-
-                [USER REQUEST]
-                %s
-
-                [RESPONSE]
-                """;
-        return String.format(promptTemplate, userQuery);
+        return IS_EDIT_COMMAND_PROMPT_PREFIX + "[USER REQUEST]\n" + userQuery + "\n\n[RESPONSE]\n";
     }
 
     public String buildPreviewModeExtractionPrompt(String userQuery) {
-        String promptTemplate = """
-                [ROLE]
-                Ты — AI-классификатор команд режима просмотра.
-                [CONTEXT]
-                1.  **Возможные интенты:**
-                    *   `NAVIGATE_PREVIEW`: Переместиться по шагам ("дальше", "назад").
-                    *   `PUBLISH_SCENARIO`: Окончательно опубликовать сценарий ("опубликовать").
-                [TASK]
-                Классифицируй [USER REQUEST] в JSON. Для `NAVIGATE_PREVIEW` определи `direction`. Если интент не распознан, считай, что пользователь хочет выйти из просмотра и редактировать, верни пустой JSON.
-                [TARGET SCHEMA]
-                { "intent": "...", "direction": "NEXT | BACK | null" }
-                [USER REQUEST]
-                %s
-                [RESPONSE]
-                """;
-        return String.format(promptTemplate, userQuery);
+        return PREVIEW_MODE_PROMPT_PREFIX + "[USER REQUEST]\n" + userQuery + "\n[RESPONSE]\n";
+    }
+
+    /**
+     * Классификатор режима просмотра, который в одном ответе возвращает интент, направление
+     * и признак команды редактирования (вместо двух последовательных вызовов).
+     */
+    public String buildPreviewModeCombinedPrompt(String userQuery) {
+        return PREVIEW_MODE_COMBINED_PROMPT_PREFIX + "[USER REQUEST]\n" + userQuery + "\n[RESPONSE]\n";
     }
 
     private String buildAvailableScenariosContext() {
-        List<Scenario> scenarios = scenarioRepository.findAll();
+        List<ScenarioRepository.ScenarioSummary> scenarios = scenarioRepository.findAllSummaries();
         if (scenarios.isEmpty()) {
             return "В системе нет доступных для запуска сценариев.";
         }
         return "В системе доступны следующие сценарии:\n" +
                 scenarios.stream()
-                        .map(s -> String.format("- Название: \"%s\", ID: \"%s\"", s.getDefinition().getName(), s.getId()))
+                        .map(s -> String.format("- Название: \"%s\", ID: \"%s\"", s.getName(), s.getId()))
                         .collect(Collectors.joining("\n"));
     }
 
@@ -218,77 +401,21 @@ public class LlmPromptService {
     }
 
     public String buildScenarioEnrichmentPrompt(String userInput, String currentScenarioJson, String ontologyContext) {
-        String promptTemplate = """
-            [ROLE]
-            Ты — AI-инженер-аналитик. Твоя задача — пошагово создавать JSON-определение бизнес-сценария 'ScenarioDefinition', строго следуя правилам и используя предоставленные контексты.
-
-            [TARGET SCHEMA]
-            Твоей конечной целью всегда является валидный JSON, соответствующий этой структуре:
-            {
-              "name": "string", "description": "string",
-              "steps": [
-                {
-                  "name": "string", "description": "string", "stepIndex": "integer",
-                  "template": "form | list",
-                  "entity": "string (technical name from ontology)",
-                  "entityFields": ["string (technical field name)", ...]
-                }
-              ]
-            }
-
-            [ONTOLOGY CONTEXT]
-            Это твой ИСТОЧНИК ПРАВДЫ для сущностей и полей.
-            ---
-            %s
-            ---
-
-            [CURRENT STATE]
-            Это JSON-структура сценария, которую мы уже собрали.
-            ```json
-            %s
-            ```
-
-            [USER INPUT]
-            Это новая информация от пользователя, которую нужно интегрировать в [CURRENT STATE].
-            > "%s"
-
-            [TASK AND RULES]
-            Твоя задача — создать **НОВЫЙ ПОЛНЫЙ JSON**, который является результатом обновления [CURRENT STATE] на основе [USER INPUT]. Ты должен СТРОГО следовать этим правилам:
-
-            1.  **Извлечение, а не Игнорирование:** Ты должен попытаться извлечь значение для КАЖДОГО поля, упомянутого пользователем.
-
-            2.  **Маппинг Шаблона (`template`):**
-                *   "форма", "карточка" -> **"form"**
-                *   "список", "таблица" -> **"list"**
-                *   **Если шаблон не похож ни на один из них, вставь то, что написал пользователь, КАК ЕСТЬ (например, "super-form").**
-
-            3.  **Маппинг Сущности (`entity`):**
-                *   Найди в [ONTOLOGY CONTEXT] техническое имя сущности, соответствующее упоминанию пользователя (например, "клиент" -> "customer").
-                *   **КРИТИЧЕСКИ ВАЖНО:** Если ты НЕ МОЖЕШЬ найти точное соответствие в онтологии, ты ОБЯЗАН вставить в поле `entity` то слово, которое использовал пользователь, **КАК ЕСТЬ** (например, "customerTYPO"). **НЕ ОСТАВЛЯЙ ПОЛЕ ПУСТЫМ (`null`)**.
-
-            4.  **Маппинг Полей (`entityFields`):**
-                *   Для КАЖДОГО поля, упомянутого пользователем, найди его техническое имя в [ONTOLOGY CONTEXT] (например, "Наименование клиента" -> "name").
-                *   **КРИТИЧЕСКИ ВАЖНО:** Если ты НЕ МОЖЕШЬ найти техническое имя для какого-то поля, ты ОБЯЗАН вставить в массив `entityFields` то название, которое использовал пользователь, **КАК ЕСТЬ** (например, "nameTYPO"). **НЕ ИГНОРИРУЙ НЕИЗВЕСТНЫЕ ПОЛЯ**.
-                *   Финальный массив `entityFields` должен содержать смесь из найденных технических имен и ненайденных пользовательских имен.
-
-            5.  **Сохранение Контекста:** Не удаляй уже существующую информацию из [CURRENT STATE], только дополняй или изменяй ее в соответствии с [USER INPUT].
-
-            [EXAMPLE OF CORRECT (even if invalid) BEHAVIOR]
-            -   **ЕСЛИ [USER INPUT]:** "Шаг для сущности `qwerty`, поля `ИНН` и `неверное поле`."
-            -   **ТЫ ДОЛЖЕН СГЕНЕРИРОВАТЬ ТАКОЙ ФРАГМЕНТ JSON:**
-                ```json
-                {
-                  ...
-                  "entity": "qwerty",
-                  "entityFields": ["inn", "неверное поле"]
-                }
-                ```
+        return SCENARIO_ENRICHMENT_PROMPT_PREFIX + buildScenarioContextSuffix(userInput, currentScenarioJson, ontologyContext);
+    }
 
-            [OUTPUT FORMAT]
-            -   Твой ответ — это ВСЕГДА только полный и валидный JSON-объект. Не добавляй ничего, кроме самого JSON.
+    /**
+     * Вариант {@link #buildScenarioEnrichmentPrompt}, в котором модель возвращает не весь сценарий,
+     * а JSON Patch к текущему состоянию.
+     */
+    public String buildScenarioPatchPrompt(String userInput, String currentScenarioJson, String ontologyContext) {
+        return SCENARIO_PATCH_PROMPT_PREFIX + buildScenarioContextSuffix(userInput, currentScenarioJson, ontologyContext);
+    }
 
-            [RESPONSE]
-            """;
-        return String.format(promptTemplate, ontologyContext, currentScenarioJson, userInput);
+    private String buildScenarioContextSuffix(String userInput, String currentScenarioJson, String ontologyContext) {
+        return "[ONTOLOGY CONTEXT]\nЭто твой ИСТОЧНИК ПРАВДЫ для сущностей и полей.\n---\n" + ontologyContext + "\n---\n\n"
+                + "[CURRENT STATE]\nЭто JSON-структура сценария, которую мы уже собрали.\n```json\n" + currentScenarioJson + "\n```\n\n"
+                + "[USER INPUT]\nЭто новая информация от пользователя, которую нужно интегрировать в [CURRENT STATE].\n> \"" + userInput + "\"\n\n"
+                + "[RESPONSE]\n";
     }
 }
\ No newline at end of file
@@ -61,4 +61,13 @@ public class LocalStorageService {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Внутренняя ошибка при доступе к файлу.", e);
         }
     }
+
+    public void delete(String storageFileName) {
+        try {
+            Path file = Paths.get(folderToSaveFile).resolve(storageFileName).normalize();
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл '{}': {}", storageFileName, e.getMessage());
+        }
+    }
 }
\ No newline at end of file
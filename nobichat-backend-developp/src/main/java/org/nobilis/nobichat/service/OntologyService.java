@@ -18,6 +18,7 @@ import org.springframework.util.FileCopyUtils;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -107,6 +108,15 @@ public class OntologyService {
         return getOntologyFromDb();
     }
 
+    /**
+     * Версия текущей онтологии — дата ее последнего изменения. Читается без загрузки JSON схемы,
+     * поэтому подходит для проверки актуальности кэшей, построенных по онтологии.
+     */
+    public Instant getOntologyVersion() {
+        return ontologyRepository.findLatestUpdateDate()
+                .orElseThrow(() -> new ResourceNotFoundException("Отсутствует онтология в БД."));
+    }
+
     @Transactional
     public OntologyDto updateOntology(OntologyDto newOntologyDtoSchema) {
         Ontology storage = ontologyRepository.findFirstByOrderByCreationDateDesc()
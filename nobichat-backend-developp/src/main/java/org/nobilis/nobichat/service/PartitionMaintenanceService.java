@@ -0,0 +1,210 @@
+package org.nobilis.nobichat.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обслуживание помесячных секций chat_messages (по created_date) и llm_request_log (по timestamp).
+ * <p>
+ * Секции создаются заранее на partitioning.months-ahead месяцев вперед (функция БД
+ * {@code create_monthly_partitions}) при старте и по расписанию. Секции старше срока хранения
+ * отсоединяются и либо переносятся в схему архива, либо удаляются (partitioning.retention.action).
+ * Границы секций и сроки считаются в UTC; срок 0 — хранить бессрочно. По умолчанию llm_request_log
+ * хранится 6 месяцев, chat_messages — бессрочно. Первичный ключ секционированных таблиц — (id, дата), поэтому
+ * поиск только по id (например, ChatMessageRepository.findById) проверяет индекс каждой секции и дорожает
+ * с каждым месяцем хранения; для долгоживущих инсталляций срок хранения chat_messages стоит задавать явно.
+ * <p>
+ * Строки вне созданных секций попадают в DEFAULT-секцию ({@code <table>_default}), так что сбой обслуживания
+ * дольше months-ahead не останавливает вставки. Функция {@code create_monthly_partitions} переносит такие строки
+ * в создаваемую секцию; если в DEFAULT-секции остаются строки, обслуживание пишет предупреждение.
+ * <p>
+ * На секционированную chat_messages нельзя сослаться внешним ключом по одному id, поэтому перед
+ * отсоединением секции указатели user_chat_sessions.current_ui_message_id на ее сообщения обнуляются,
+ * а при удалении удаляются и вложения с их файлами. Между репликами обслуживание сериализуется
+ * advisory lock'ом: реплика, не получившая блокировку, пропускает шаг.
+ * <p>
+ * Фрагменты промптов (llm_prompt_fragments) живут дольше отдельных записей журнала, поэтому чистятся
+ * по last_used_at: удаляются фрагменты, не использованные дольше partitioning.retention.prompt-fragments-months
+ * (по умолчанию — срок хранения llm_request_log) и еще сутки сверх него, так как writer обновляет отметку
+ * не чаще раза в сутки. При DETACH записи в схеме архива после очистки восстанавливаются без удаленных
+ * фрагментов; чтобы архив оставался читаемым, срок для фрагментов задается больше срока журнала.
+ */
+@Slf4j
+@Service
+public class PartitionMaintenanceService {
+
+    public enum RetentionAction {DETACH, DROP}
+
+    private static final long ADVISORY_LOCK_KEY = 0x6e6f6269_70617274L;
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM", Locale.ROOT);
+    private static final Pattern ARCHIVE_SCHEMA_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private static final String CHAT_MESSAGES = "chat_messages";
+    private static final String LLM_REQUEST_LOG = "llm_request_log";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LocalStorageService localStorageService;
+    private final int monthsAhead;
+    private final int chatMessagesRetentionMonths;
+    private final int llmRequestLogRetentionMonths;
+    private final int promptFragmentsRetentionMonths;
+    private final RetentionAction retentionAction;
+    private final String archiveSchema;
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       LocalStorageService localStorageService,
+                                       @Value("${partitioning.months-ahead:3}") int monthsAhead,
+                                       @Value("${partitioning.retention.chat-messages-months:0}") int chatMessagesRetentionMonths,
+                                       @Value("${partitioning.retention.llm-request-log-months:6}") int llmRequestLogRetentionMonths,
+                                       @Value("${partitioning.retention.prompt-fragments-months:${partitioning.retention.llm-request-log-months:6}}") int promptFragmentsRetentionMonths,
+                                       @Value("${partitioning.retention.action:DETACH}") RetentionAction retentionAction,
+                                       @Value("${partitioning.retention.archive-schema:archive}") String archiveSchema) {
+        if (!ARCHIVE_SCHEMA_NAME.matcher(archiveSchema).matches()) {
+            throw new IllegalArgumentException("Некорректное имя схемы архива: " + archiveSchema);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.localStorageService = localStorageService;
+        this.monthsAhead = monthsAhead;
+        this.chatMessagesRetentionMonths = chatMessagesRetentionMonths;
+        this.llmRequestLogRetentionMonths = llmRequestLogRetentionMonths;
+        this.promptFragmentsRetentionMonths = promptFragmentsRetentionMonths;
+        this.retentionAction = retentionAction;
+        this.archiveSchema = archiveSchema;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${partitioning.maintenance-cron:0 15 3 * * *}")
+    public void maintain() {
+        try {
+            ensureFuturePartitions(CHAT_MESSAGES);
+            ensureFuturePartitions(LLM_REQUEST_LOG);
+            checkDefaultPartition(CHAT_MESSAGES);
+            checkDefaultPartition(LLM_REQUEST_LOG);
+            applyRetention(CHAT_MESSAGES, chatMessagesRetentionMonths);
+            applyRetention(LLM_REQUEST_LOG, llmRequestLogRetentionMonths);
+            purgeUnusedPromptFragments();
+        } catch (DataAccessException e) {
+            log.error("Ошибка обслуживания секций таблиц истории чата", e);
+        }
+    }
+
+    private void ensureFuturePartitions(String table) {
+        Integer created = transactionTemplate.execute(status -> {
+            if (!tryLock()) {
+                return null;
+            }
+            return jdbcTemplate.queryForObject("SELECT create_monthly_partitions(?, ?, ?)", Integer.class,
+                    table, LocalDate.now(ZoneOffset.UTC), monthsAhead);
+        });
+        if (created != null && created > 0) {
+            log.info("Для таблицы {} создано новых секций: {}", table, created);
+        }
+    }
+
+    private void checkDefaultPartition(String table) {
+        String partition = table + "_default";
+        Boolean hasRows = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class);
+        if (Boolean.TRUE.equals(hasRows)) {
+            log.warn("В секции {} есть строки вне помесячных секций: проверьте обслуживание секций таблицы {}", partition, table);
+        }
+    }
+
+    private void applyRetention(String table, int retentionMonths) {
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestKept = YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths);
+        Pattern partitionName = Pattern.compile(Pattern.quote(table) + "_p(\\d{6})");
+
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass ORDER BY c.relname
+                """, String.class, table);
+        for (String partition : partitions) {
+            Matcher matcher = partitionName.matcher(partition);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), PARTITION_MONTH).isBefore(oldestKept)) {
+                expirePartition(table, partition);
+            }
+        }
+    }
+
+    private void purgeUnusedPromptFragments() {
+        if (promptFragmentsRetentionMonths <= 0) {
+            return;
+        }
+        OffsetDateTime cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(promptFragmentsRetentionMonths)
+                .atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC).minusDays(1);
+        Integer deleted = transactionTemplate.execute(status -> {
+            if (!tryLock()) {
+                return null;
+            }
+            return jdbcTemplate.update("DELETE FROM llm_prompt_fragments WHERE last_used_at < ?", cutoff);
+        });
+        if (deleted != null && deleted > 0) {
+            log.info("Удалено неиспользуемых фрагментов промптов: {}", deleted);
+        }
+    }
+
+    private void expirePartition(String table, String partition) {
+        List<String> removedFiles = transactionTemplate.execute(status -> {
+            if (!tryLock()) {
+                return null;
+            }
+            List<String> attachmentIds = List.of();
+            if (CHAT_MESSAGES.equals(table)) {
+                jdbcTemplate.update("UPDATE user_chat_sessions SET current_ui_message_id = NULL " +
+                        "WHERE current_ui_message_id IN (SELECT id FROM " + partition + ")");
+                if (retentionAction == RetentionAction.DROP) {
+                    attachmentIds = jdbcTemplate.queryForList("DELETE FROM attachments " +
+                            "WHERE chat_message_id IN (SELECT id FROM " + partition + ") RETURNING id::text", String.class);
+                }
+            }
+            jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION " + partition);
+            if (retentionAction == RetentionAction.DROP) {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+            } else {
+                jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+                jdbcTemplate.execute("ALTER TABLE " + partition + " SET SCHEMA " + archiveSchema);
+            }
+            return attachmentIds;
+        });
+        if (removedFiles == null) {
+            return;
+        }
+        removedFiles.forEach(localStorageService::delete);
+        if (retentionAction == RetentionAction.DROP) {
+            log.info("Секция {} удалена по сроку хранения (вложений удалено: {})", partition, removedFiles.size());
+        } else {
+            log.info("Секция {} отсоединена и перенесена в схему {}", partition, archiveSchema);
+        }
+    }
+
+    private boolean tryLock() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, ADVISORY_LOCK_KEY));
+    }
+}
@@ -0,0 +1,238 @@
+package org.nobilis.nobichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.model.QueryResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Опциональная запись нагрузки динамических запросов в локальный ротируемый файл (JSON Lines).
+ * Для каждого выполненного {@link QueryResult} сохраняется нормализованная форма SQL,
+ * сигнатура типов параметров и, с заданной вероятностью, обезличенные значения параметров.
+ * Файл читается раннером воспроизведения из профиля workload-replay.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryWorkloadRecorder {
+
+    public static final String LIMIT_PARAM = "__limit";
+    public static final String OFFSET_PARAM = "__offset";
+    private static final Pattern LIMIT_OFFSET = Pattern.compile("LIMIT (\\d+) OFFSET (\\d+)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String FILE_NAME = "query-workload.jsonl";
+
+    private final ObjectMapper objectMapper;
+
+    private final ExecutorService writerExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(10_000), r -> {
+        Thread thread = new Thread(r, "query-workload-writer");
+        thread.setDaemon(true);
+        return thread;
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    @Value("${query-workload.capture.enabled:false}")
+    private boolean enabled;
+
+    @Value("${query-workload.capture.directory:/opt/app/log/query-workload}")
+    private String directory;
+
+    @Value("${query-workload.capture.value-sample-rate:0.05}")
+    private double valueSampleRate;
+
+    @Value("${query-workload.capture.max-file-size-mb:50}")
+    private long maxFileSizeMb;
+
+    @Value("${query-workload.capture.max-files:10}")
+    private int maxFiles;
+
+    private BufferedWriter writer;
+    private Path currentFile;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Регистрирует выполнение запроса. Запись в файл выполняется асинхронно;
+     * при переполнении очереди записи события отбрасываются.
+     *
+     * @param kind           Тип операции (search, count, get, insert, update, delete и т.д.).
+     * @param queryResult    Результат работы {@link DynamicQueryBuilder}.
+     * @param extraParams    Параметры, добавленные сервисом сверх QueryResult (например, id_param).
+     * @param durationNanos  Время выполнения запроса.
+     */
+    public void record(String kind, QueryResult queryResult, Map<String, Object> extraParams, long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Map<String, Object> params = new LinkedHashMap<>(queryResult.getParams());
+            if (extraParams != null) {
+                params.putAll(extraParams);
+            }
+            String sql = WHITESPACE.matcher(queryResult.getSql()).replaceAll(" ").trim();
+            Matcher matcher = LIMIT_OFFSET.matcher(sql);
+            if (matcher.find()) {
+                params.put(LIMIT_PARAM, Integer.parseInt(matcher.group(1)));
+                params.put(OFFSET_PARAM, Long.parseLong(matcher.group(2)));
+                sql = matcher.replaceFirst("LIMIT :" + LIMIT_PARAM + " OFFSET :" + OFFSET_PARAM);
+            }
+
+            Map<String, String> paramTypes = new LinkedHashMap<>();
+            params.forEach((name, value) -> paramTypes.put(name, value == null ? "null" : value.getClass().getSimpleName()));
+
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("ts", System.currentTimeMillis());
+            entry.put("kind", kind);
+            entry.put("shape", shapeId(sql));
+            entry.put("sql", sql);
+            entry.put("paramTypes", paramTypes);
+            if (ThreadLocalRandom.current().nextDouble() < valueSampleRate) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                params.forEach((name, value) -> values.put(name, anonymize(value)));
+                entry.put("params", values);
+            }
+            entry.put("durationMicros", TimeUnit.NANOSECONDS.toMicros(durationNanos));
+
+            String line = objectMapper.writeValueAsString(entry);
+            writerExecutor.execute(() -> write(line));
+        } catch (Exception e) {
+            log.debug("Не удалось записать запрос в журнал нагрузки: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Идентификатор формы запроса: первые 16 символов SHA-256 от нормализованного SQL.
+     */
+    public static String shapeId(String normalizedSql) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalizedSql.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest).substring(0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Обезличивает значение с сохранением типа и длины: буквы и цифры строк заменяются,
+     * символы-шаблоны LIKE (%, _) и пробелы сохраняются, UUID заменяются стабильным хэшем.
+     * Числа, даты и логические значения сохраняются, так как влияют на селективность.
+     */
+    private Object anonymize(Object value) {
+        if (value instanceof String s) {
+            StringBuilder sb = new StringBuilder(s.length());
+            s.codePoints().forEach(cp -> {
+                if (Character.isDigit(cp)) {
+                    sb.append('0');
+                } else if (Character.isLetter(cp)) {
+                    sb.append(Character.UnicodeScript.of(cp) == Character.UnicodeScript.CYRILLIC ? 'ж' : 'x');
+                } else {
+                    sb.appendCodePoint(cp);
+                }
+            });
+            return sb.toString();
+        }
+        if (value instanceof UUID uuid) {
+            return UUID.nameUUIDFromBytes(uuid.toString().getBytes(StandardCharsets.UTF_8)).toString();
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value instanceof BigDecimal ? value.toString() : value;
+        }
+        if (value instanceof LocalDate || value instanceof Instant || value instanceof OffsetDateTime) {
+            return value.toString();
+        }
+        return value == null ? null : value.getClass().getSimpleName();
+    }
+
+    private synchronized void write(String line) {
+        try {
+            if (writer == null) {
+                openWriter();
+            }
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+            if (Files.size(currentFile) >= maxFileSizeMb * 1024 * 1024) {
+                rotate();
+            }
+        } catch (IOException e) {
+            log.warn("Ошибка записи журнала нагрузки в {}: {}", currentFile, e.getMessage());
+        }
+    }
+
+    private void openWriter() throws IOException {
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        currentFile = dir.resolve(FILE_NAME);
+        writer = Files.newBufferedWriter(currentFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log.info("Запись нагрузки динамических запросов включена: {}", currentFile);
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        writer = null;
+        String suffix = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+        Files.move(currentFile, currentFile.resolveSibling("query-workload." + suffix + ".jsonl"));
+
+        try (Stream<Path> files = Files.list(currentFile.getParent())) {
+            List<Path> rotated = files
+                    .filter(p -> p.getFileName().toString().matches("query-workload\\..+\\.jsonl"))
+                    .sorted()
+                    .toList();
+            for (int i = 0; i < rotated.size() - maxFiles; i++) {
+                Files.deleteIfExists(rotated.get(i));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writerExecutor.shutdown();
+        try {
+            writerExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
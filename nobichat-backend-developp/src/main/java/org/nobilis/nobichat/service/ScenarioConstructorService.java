@@ -1,8 +1,11 @@
 package org.nobilis.nobichat.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.dto.ScenarioDefinition;
 import org.nobilis.nobichat.dto.chat.ChatRequest;
@@ -12,40 +15,83 @@ import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.ScenarioDraft;
 import org.nobilis.nobichat.model.UserChatSession;
 import org.nobilis.nobichat.repository.ScenarioDraftRepository;
+import org.nobilis.nobichat.service.llm.PromptFamily;
+import org.nobilis.nobichat.service.ontology.OntologyContextRetriever;
+import org.nobilis.nobichat.util.json.JsonPatchApplier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ScenarioConstructorService {
 
+    private static final Set<String> DEFINITION_FIELDS = Set.of("name", "description", "steps");
+    private static final Set<String> STEP_FIELDS = Set.of(
+            "name", "description", "stepIndex", "template", "entity", "entityFields", "transitions");
+
     private final ScenarioDraftRepository draftRepository;
     private final LlmPromptService llmPromptService;
-    private final OntologyService ontologyService;
+    private final OntologyContextRetriever ontologyContextRetriever;
     private final ObjectMapper objectMapper;
     private final ScenarioFormatterService formatterService;
     private final ScenarioHelperService scenarioHelperService;
     private final ScenarioValidatorService validatorService;
+    private final ScenarioStateLoader scenarioStateLoader;
+    private final MeterRegistry meterRegistry;
+    private final boolean patchMode;
+    /**
+     * Сериализация черновика для промпта без null и пустых полей.
+     */
+    private final ObjectMapper compactMapper;
+
+    public ScenarioConstructorService(ScenarioDraftRepository draftRepository,
+                                      LlmPromptService llmPromptService,
+                                      OntologyContextRetriever ontologyContextRetriever,
+                                      ObjectMapper objectMapper,
+                                      ScenarioFormatterService formatterService,
+                                      ScenarioHelperService scenarioHelperService,
+                                      ScenarioValidatorService validatorService,
+                                      ScenarioStateLoader scenarioStateLoader,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${scenario-enrichment.mode:patch}") String mode) {
+        this.draftRepository = draftRepository;
+        this.llmPromptService = llmPromptService;
+        this.ontologyContextRetriever = ontologyContextRetriever;
+        this.objectMapper = objectMapper;
+        this.formatterService = formatterService;
+        this.scenarioHelperService = scenarioHelperService;
+        this.validatorService = validatorService;
+        this.scenarioStateLoader = scenarioStateLoader;
+        this.meterRegistry = meterRegistry;
+        this.patchMode = "patch".equalsIgnoreCase(mode);
+        this.compactMapper = objectMapper.copy().setSerializationInclusion(JsonInclude.Include.NON_EMPTY);
+    }
 
     public ChatResponseDto processUserInput(ChatRequest request, UserChatSession session, ChatMessage chatMessage) {
         String userInput = request.getMessage();
-        ScenarioDraft draft = draftRepository.findById(session.getActiveDraftId())
+        ScenarioDraft draft = scenarioStateLoader.findDraft(session.getActiveDraftId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Активный черновик сценария не найден."));
 
         try {
-            String currentJson = objectMapper.writeValueAsString(draft.getDefinition());
-            String ontologyContext = buildSimpleOntologyContext();
-            String prompt = llmPromptService.buildScenarioEnrichmentPrompt(userInput, currentJson, ontologyContext);
-            LLMResponseDto llmResponse = llmPromptService.sendPromptToLlm(prompt, null, false, chatMessage.getId());
-            String updatedJson = llmPromptService.sanitizeLlmJsonResponse(llmResponse.getContent());
+            ScenarioDefinition currentDefinition = Optional.ofNullable(draft.getDefinition()).orElseGet(ScenarioDefinition::new);
+            JsonNode currentTree = compactMapper.valueToTree(currentDefinition);
+            String currentJson = compactMapper.writeValueAsString(currentTree);
+            String ontologyContext = ontologyContextRetriever.buildContext(userInput, draftEntities(currentDefinition));
 
-            ScenarioDefinition updatedDefinition = objectMapper.readValue(updatedJson, ScenarioDefinition.class);
+            ScenarioDefinition updatedDefinition = patchMode
+                    ? enrichByPatch(userInput, currentTree, currentJson, ontologyContext, chatMessage)
+                    : null;
+            if (updatedDefinition == null) {
+                updatedDefinition = enrichByRegeneration(userInput, currentJson, ontologyContext, chatMessage);
+            }
             sanitizeDefinition(updatedDefinition);
 
             reindexSteps(updatedDefinition);
@@ -56,6 +102,7 @@ public class ScenarioConstructorService {
                 draft.setName(updatedDefinition.getName());
             }
             draftRepository.save(draft);
+            scenarioStateLoader.evictDraft(draft.getId());
 
             validatorService.validateCorrectness(updatedDefinition);
 
@@ -69,6 +116,80 @@ public class ScenarioConstructorService {
         }
     }
 
+    private ScenarioDefinition enrichByRegeneration(String userInput, String currentJson, String ontologyContext,
+                                                    ChatMessage chatMessage) throws JsonProcessingException {
+        String prompt = llmPromptService.buildScenarioEnrichmentPrompt(userInput, currentJson, ontologyContext);
+        LLMResponseDto llmResponse = llmPromptService.sendPromptToLlm(prompt, PromptFamily.ENRICHMENT, chatMessage.getId());
+        String updatedJson = llmPromptService.sanitizeLlmJsonResponse(llmResponse.getContent());
+        countEnrichment("full", "applied");
+        return objectMapper.readValue(updatedJson, ScenarioDefinition.class);
+    }
+
+    /**
+     * Запрашивает у модели JSON Patch к текущему черновику и применяет его.
+     *
+     * @return обновленный сценарий или null, если патч не удалось разобрать, проверить или применить
+     */
+    private ScenarioDefinition enrichByPatch(String userInput, JsonNode currentTree, String currentJson,
+                                             String ontologyContext, ChatMessage chatMessage) {
+        String prompt = llmPromptService.buildScenarioPatchPrompt(userInput, currentJson, ontologyContext);
+        LLMResponseDto llmResponse = llmPromptService.sendPromptToLlm(prompt, PromptFamily.ENRICHMENT, chatMessage.getId());
+        try {
+            JsonNode response = objectMapper.readTree(llmPromptService.sanitizeLlmJsonResponse(llmResponse.getContent()));
+            if (response.isObject()) {
+                // Модель прислала сценарий целиком — принимаем его как результат полной перегенерации.
+                countEnrichment("patch", "full_document");
+                return objectMapper.treeToValue(response, ScenarioDefinition.class);
+            }
+            validatePatchPaths(response);
+            JsonNode patched = JsonPatchApplier.apply(currentTree, response);
+            ScenarioDefinition definition = objectMapper.treeToValue(patched, ScenarioDefinition.class);
+            countEnrichment("patch", "applied");
+            log.debug("JSON Patch из {} операций применен к черновику.", response.size());
+            return definition;
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            log.warn("JSON Patch от модели отклонен, выполняется полная перегенерация сценария: {}", e.getMessage());
+            countEnrichment("patch", "fallback");
+            return null;
+        }
+    }
+
+    /**
+     * Патч может затрагивать только поля {@link ScenarioDefinition} и его шагов.
+     */
+    private void validatePatchPaths(JsonNode patch) {
+        if (!patch.isArray()) {
+            throw new IllegalArgumentException("ответ модели не является массивом операций");
+        }
+        for (JsonNode operation : patch) {
+            for (String field : List.of("path", "from")) {
+                JsonNode pointer = operation.get(field);
+                if (pointer != null && pointer.isTextual()) {
+                    validatePath(pointer.asText());
+                }
+            }
+        }
+    }
+
+    private void validatePath(String path) {
+        String[] segments = path.split("/", -1);
+        if (segments.length < 2 || !segments[0].isEmpty() || !DEFINITION_FIELDS.contains(segments[1])) {
+            throw new IllegalArgumentException("недопустимый путь '" + path + "'");
+        }
+        if ("steps".equals(segments[1]) && segments.length > 3 && !STEP_FIELDS.contains(segments[3])) {
+            throw new IllegalArgumentException("недопустимое поле шага в пути '" + path + "'");
+        }
+    }
+
+    private void countEnrichment(String mode, String outcome) {
+        Counter.builder("scenario.enrichment")
+                .description("Обновления черновика сценария по ответу LLM")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+
     private void reindexSteps(ScenarioDefinition definition) {
         if (definition == null || CollectionUtils.isEmpty(definition.getSteps())) return;
         int index = 1;
@@ -126,15 +247,14 @@ public class ScenarioConstructorService {
         return "Шаг полностью описан. Вы можете описать следующий шаг или сказать 'покажи', чтобы войти в режим просмотра.";
     }
 
-    private String buildSimpleOntologyContext() {
-        return ontologyService.getAllEntityMetaForPrompt().entrySet().stream()
-                .map(entry -> {
-                    String entityName = entry.getKey();
-                    String fields = ontologyService.getFieldsForEntity(entityName).stream()
-                            .map(f -> f.getName() + " (" + f.getUserFriendlyName() + ")")
-                            .collect(Collectors.joining(", "));
-                    return String.format("Сущность: %s. Поля: %s", entityName, fields);
-                })
-                .collect(Collectors.joining("\n"));
+    private List<String> draftEntities(ScenarioDefinition definition) {
+        if (definition == null || CollectionUtils.isEmpty(definition.getSteps())) {
+            return List.of();
+        }
+        return definition.getSteps().stream()
+                .map(ScenarioDefinition.ScenarioStep::getEntity)
+                .filter(StringUtils::hasText)
+                .distinct()
+                .toList();
     }
-}
\ No newline at end of file
+}
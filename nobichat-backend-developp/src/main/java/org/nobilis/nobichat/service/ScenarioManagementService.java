@@ -4,8 +4,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.nobilis.nobichat.dto.ScenarioInfoListDto;
 import org.nobilis.nobichat.dto.ScenarioNameListDto;
-import org.nobilis.nobichat.model.Scenario;
+import org.nobilis.nobichat.events.event.ScenarioCatalogueChangedEvent;
 import org.nobilis.nobichat.repository.ScenarioRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 public class ScenarioManagementService {
 
     private final ScenarioRepository scenarioRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     public ScenarioNameListDto getAllScenarioNames() {
@@ -30,12 +32,12 @@ public class ScenarioManagementService {
 
     @Transactional(readOnly = true)
     public ScenarioInfoListDto getAllScenarioInfo() {
-        List<Scenario> scenarios = scenarioRepository.findAll();
+        List<ScenarioRepository.ScenarioSummary> scenarios = scenarioRepository.findAllSummaries();
 
         List<ScenarioInfoListDto.ScenarioInfo> scenarioInfos = scenarios.stream()
                 .map(scenario -> ScenarioInfoListDto.ScenarioInfo.builder()
                         .id(scenario.getId())
-                        .name(scenario.getDefinition().getName())
+                        .name(scenario.getName())
                         .build())
                 .collect(Collectors.toList());
 
@@ -50,6 +52,7 @@ public class ScenarioManagementService {
         }
 
         scenarioRepository.deleteById(scenarioId);
+        eventPublisher.publishEvent(new ScenarioCatalogueChangedEvent(this, scenarioId));
         log.info("Сценарий с ID {} успешно удален.", scenarioId);
     }
 }
@@ -0,0 +1,108 @@
+package org.nobilis.nobichat.service;
+
+import org.nobilis.nobichat.model.Scenario;
+import org.nobilis.nobichat.model.ScenarioDraft;
+import org.nobilis.nobichat.model.UserChatSession;
+import org.nobilis.nobichat.repository.ScenarioDraftRepository;
+import org.nobilis.nobichat.repository.ScenarioRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Загрузка черновика и сценария активной сессии параллельно с классификацией намерения.
+ * {@link #open()} открывает область обработки сообщения и привязывает ее к текущему потоку,
+ * {@link #prefetch(UserChatSession)} запускает загрузки, а обработчики получают результат через
+ * {@link #findDraft(UUID)} / {@link #findScenario(UUID)}: внутри области — из уже выполняющейся
+ * загрузки, вне ее — обычным запросом к репозиторию.
+ * <p>
+ * Загруженные сущности отсоединены от контекста персистентности (загружены в другом потоке),
+ * поэтому изменения сохраняются через save(), а после сохранения запись нужно сбросить {@link #evictDraft(UUID)}.
+ */
+@Component
+public class ScenarioStateLoader {
+
+    private final ThreadLocal<ChatPipelineScope> currentScope = new ThreadLocal<>();
+
+    private final ScenarioDraftRepository draftRepository;
+    private final ScenarioRepository scenarioRepository;
+    private final ExecutorService executor;
+    private final Duration timeout;
+
+    public ScenarioStateLoader(ScenarioDraftRepository draftRepository,
+                               ScenarioRepository scenarioRepository,
+                               @Qualifier("chatPipelineExecutor") ExecutorService executor,
+                               @Value("${chat.pipeline.timeout:60s}") Duration timeout) {
+        this.draftRepository = draftRepository;
+        this.scenarioRepository = scenarioRepository;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    public ChatPipelineScope open() {
+        ChatPipelineScope scope = new ChatPipelineScope(executor, timeout, currentScope::remove);
+        currentScope.set(scope);
+        return scope;
+    }
+
+    public void prefetch(UserChatSession session) {
+        ChatPipelineScope scope = currentScope.get();
+        if (scope == null) {
+            return;
+        }
+        UUID draftId = session.getActiveDraftId();
+        if (draftId != null) {
+            scope.fork(draftKey(draftId), () -> draftRepository.findById(draftId));
+        }
+        UUID scenarioId = session.getActiveScenarioId();
+        if (scenarioId != null) {
+            scope.fork(scenarioKey(scenarioId), () -> scenarioRepository.findById(scenarioId));
+        }
+    }
+
+    public Optional<ScenarioDraft> findDraft(UUID draftId) {
+        ChatPipelineScope scope = currentScope.get();
+        if (scope != null) {
+            Optional<Future<Optional<ScenarioDraft>>> task = scope.task(draftKey(draftId));
+            if (task.isPresent()) {
+                return scope.await(task.get());
+            }
+        }
+        return draftRepository.findById(draftId);
+    }
+
+    public Optional<Scenario> findScenario(UUID scenarioId) {
+        ChatPipelineScope scope = currentScope.get();
+        if (scope != null) {
+            Optional<Future<Optional<Scenario>>> task = scope.task(scenarioKey(scenarioId));
+            if (task.isPresent()) {
+                return scope.await(task.get());
+            }
+        }
+        return scenarioRepository.findById(scenarioId);
+    }
+
+    /**
+     * Сбрасывает предзагруженный черновик после его изменения, чтобы последующие чтения шли в БД.
+     */
+    public void evictDraft(UUID draftId) {
+        ChatPipelineScope scope = currentScope.get();
+        if (scope != null) {
+            scope.forget(draftKey(draftId));
+        }
+    }
+
+    private String draftKey(UUID draftId) {
+        return "draft:" + draftId;
+    }
+
+    private String scenarioKey(UUID scenarioId) {
+        return "scenario:" + scenarioId;
+    }
+}
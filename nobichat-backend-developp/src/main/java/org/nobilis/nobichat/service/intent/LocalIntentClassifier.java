@@ -0,0 +1,152 @@
+package org.nobilis.nobichat.service.intent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
+import org.nobilis.nobichat.service.intent.model.TrainedIntentModel;
+import org.nobilis.nobichat.util.text.RussianTextNormalizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Детерминированный классификатор коротких команд ("дальше", "назад", "сохранить" и т.п.),
+ * который вызывается до обращения к LLM. Словари повторяют ключевые слова из промптов
+ * {@code build*ModeExtractionPrompt} в {@link org.nobilis.nobichat.service.LlmPromptService}.
+ * <p>
+ * Команда считается распознанной, только если каждое слово запроса является либо
+ * ключевым словом одного и того же правила, либо служебным словом ("пожалуйста", "давай", "шаг").
+ * Если правила не сработали, используется обученная модель {@link TrainedIntentModel} (при ее наличии
+ * и достаточной уверенности). Во всех остальных случаях классификатор возвращает пустой результат,
+ * и решение принимает LLM.
+ */
+@Slf4j
+@Component
+public class LocalIntentClassifier {
+
+    public enum Mode {
+        EXECUTION, CONSTRUCTOR, PREVIEW
+    }
+
+    private record Rule(String intent, String direction) {
+    }
+
+    private static final Set<String> FILLER_WORDS = Set.of(
+            "пожалуйста", "плиз", "давай", "давайте", "ну", "ок", "окей", "ok", "так", "теперь", "тогда",
+            "можно", "мне", "на", "к", "в", "по", "шаг", "шагу", "шаге", "шага", "страницу", "страница",
+            "этот", "это", "все", "всё", "сценарий", "сценария", "данные", "пжл", "плз");
+
+    private final TrainedIntentModel trainedModel;
+    private final boolean enabled;
+    private final Map<Mode, Map<String, Rule>> dictionaries = new EnumMap<>(Mode.class);
+    private final Set<String> fillerStems;
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    public LocalIntentClassifier(MeterRegistry meterRegistry,
+                                 TrainedIntentModel trainedModel,
+                                 @Value("${intent.fast-path.enabled:true}") boolean enabled) {
+        this.trainedModel = trainedModel;
+        this.enabled = enabled;
+        this.fillerStems = FILLER_WORDS.stream().map(RussianTextNormalizer::stem).collect(Collectors.toSet());
+
+        Rule next = new Rule("NAVIGATE_EXECUTION", "NEXT");
+        Rule back = new Rule("NAVIGATE_EXECUTION", "BACK");
+        Rule save = new Rule("SAVE_SCENARIO_DATA", null);
+        Map<String, Rule> execution = new HashMap<>();
+        register(execution, next, "дальше", "далее", "следующий", "следующая", "следующее", "следующему", "вперед", "продолжить", "продолжи", "продолжай");
+        register(execution, back, "назад", "предыдущий", "предыдущая", "предыдущему", "вернись", "вернуться", "верни", "обратно");
+        register(execution, save, "сохранить", "сохрани", "сохраните", "сохраняй", "применить", "примени", "примените", "записать", "запиши", "запишите");
+        dictionaries.put(Mode.EXECUTION, execution);
+
+        Rule preview = new Rule("START_SCENARIO_PREVIEW", null);
+        Rule publish = new Rule("PUBLISH_SCENARIO", null);
+        Map<String, Rule> constructor = new HashMap<>();
+        register(constructor, preview, "покажи", "показать", "просмотр", "просмотреть", "посмотреть", "превью", "сохранить", "сохрани", "готово", "готов");
+        register(constructor, publish, "опубликовать", "опубликуй", "опубликуйте", "публикуй", "публикация", "публиковать");
+        dictionaries.put(Mode.CONSTRUCTOR, constructor);
+
+        Rule previewNext = new Rule("NAVIGATE_PREVIEW", "NEXT");
+        Rule previewBack = new Rule("NAVIGATE_PREVIEW", "BACK");
+        Map<String, Rule> previewMode = new HashMap<>();
+        register(previewMode, previewNext, "дальше", "далее", "следующий", "следующая", "следующее", "следующему", "вперед");
+        register(previewMode, previewBack, "назад", "предыдущий", "предыдущая", "предыдущему", "вернись", "обратно");
+        register(previewMode, publish, "опубликовать", "опубликуй", "опубликуйте", "публикуй", "публикация", "публиковать");
+        dictionaries.put(Mode.PREVIEW, previewMode);
+
+        for (Mode mode : Mode.values()) {
+            for (String outcome : List.of("rule", "model", "miss")) {
+                counters.put(mode + ":" + outcome, Counter.builder("chat.intent.fast_path")
+                        .description("Результат локальной классификации команд до обращения к LLM")
+                        .tag("mode", mode.name().toLowerCase())
+                        .tag("outcome", outcome)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Пытается классифицировать сообщение без обращения к LLM.
+     *
+     * @param mode    режим сессии
+     * @param message текст пользователя
+     * @return распознанное намерение или пустой Optional, если уверенности нет
+     */
+    public Optional<IntentAndQueryResponse> classify(Mode mode, String message) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<IntentAndQueryResponse> result = match(dictionaries.get(mode), message);
+        if (result.isPresent()) {
+            counters.get(mode + ":rule").increment();
+            log.info("Команда '{}' распознана локально в режиме {}: intent={}, direction={}",
+                    message, mode, result.get().getIntent(), result.get().getDirection());
+            return result;
+        }
+        result = trainedModel.predict(mode, message);
+        counters.get(mode + ":" + (result.isPresent() ? "model" : "miss")).increment();
+        return result;
+    }
+
+    private Optional<IntentAndQueryResponse> match(Map<String, Rule> dictionary, String message) {
+        List<String> tokens = RussianTextNormalizer.tokenize(message);
+        if (tokens.isEmpty() || tokens.size() > 6) {
+            return Optional.empty();
+        }
+        Rule matched = null;
+        for (String token : tokens) {
+            String stem = RussianTextNormalizer.stem(token);
+            Rule rule = dictionary.get(stem);
+            if (rule != null) {
+                if (matched != null && !matched.equals(rule)) {
+                    return Optional.empty();
+                }
+                matched = rule;
+            } else if (!fillerStems.contains(stem)) {
+                return Optional.empty();
+            }
+        }
+        if (matched == null) {
+            return Optional.empty();
+        }
+        IntentAndQueryResponse response = new IntentAndQueryResponse();
+        response.setIntent(matched.intent());
+        response.setDirection(matched.direction());
+        return Optional.of(response);
+    }
+
+    private static void register(Map<String, Rule> dictionary, Rule rule, String... keywords) {
+        for (String keyword : keywords) {
+            for (String token : RussianTextNormalizer.tokenize(keyword)) {
+                dictionary.put(RussianTextNormalizer.stem(token), rule);
+            }
+        }
+    }
+}
@@ -8,9 +8,9 @@ import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.Scenario;
 import org.nobilis.nobichat.model.UserChatSession;
-import org.nobilis.nobichat.repository.ScenarioRepository;
 import org.nobilis.nobichat.service.DynamicEntityQueryService;
 import org.nobilis.nobichat.service.ScenarioHelperService;
+import org.nobilis.nobichat.service.ScenarioStateLoader;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -20,7 +20,7 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class NavigateExecutionHandler implements IntentHandler {
 
-    private final ScenarioRepository scenarioRepository;
+    private final ScenarioStateLoader scenarioStateLoader;
     private final ScenarioHelperService scenarioHelperService;
     private final DynamicEntityQueryService dynamicEntityQueryService;
 
@@ -31,7 +31,7 @@ public class NavigateExecutionHandler implements IntentHandler {
 
     @Override
     public ChatResponseDto handle(IntentAndQueryResponse intent, ChatRequest request, UserChatSession session, ChatMessage message) {
-        Scenario scenario = scenarioRepository.findById(session.getActiveScenarioId()).orElseThrow();
+        Scenario scenario = scenarioStateLoader.findScenario(session.getActiveScenarioId()).orElseThrow();
         ScenarioDefinition definition = scenario.getDefinition();
 
         ScenarioDefinition.ScenarioStep currentStep = definition.getSteps().stream()
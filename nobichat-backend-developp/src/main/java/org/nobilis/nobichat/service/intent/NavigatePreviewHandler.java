@@ -8,8 +8,8 @@ import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.ScenarioDraft;
 import org.nobilis.nobichat.model.UserChatSession;
-import org.nobilis.nobichat.repository.ScenarioDraftRepository;
 import org.nobilis.nobichat.service.ScenarioHelperService;
+import org.nobilis.nobichat.service.ScenarioStateLoader;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
@@ -20,7 +20,7 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class NavigatePreviewHandler implements IntentHandler {
 
-    private final ScenarioDraftRepository draftRepository;
+    private final ScenarioStateLoader scenarioStateLoader;
     private final ScenarioHelperService scenarioHelperService;
 
     @Override
@@ -30,7 +30,7 @@ public class NavigatePreviewHandler implements IntentHandler {
 
     @Override
     public ChatResponseDto handle(IntentAndQueryResponse intent, ChatRequest request, UserChatSession session, ChatMessage message) {
-        ScenarioDraft draft = draftRepository.findById(session.getActiveDraftId())
+        ScenarioDraft draft = scenarioStateLoader.findDraft(session.getActiveDraftId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Активный черновик не найден."));
 
         ScenarioDefinition definition = draft.getDefinition();
@@ -12,9 +12,9 @@ import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.Scenario;
 import org.nobilis.nobichat.model.UserChatSession;
-import org.nobilis.nobichat.repository.ScenarioRepository;
 import org.nobilis.nobichat.service.DynamicEntityQueryService;
 import org.nobilis.nobichat.service.ScenarioHelperService;
+import org.nobilis.nobichat.service.ScenarioStateLoader;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
@@ -26,7 +26,7 @@ import java.util.UUID;
 @Slf4j
 public class ProcessScenarioInputHandler implements IntentHandler {
 
-    private final ScenarioRepository scenarioRepository;
+    private final ScenarioStateLoader scenarioStateLoader;
     private final ScenarioHelperService scenarioHelperService;
     private final ObjectMapper objectMapper;
     private final DynamicEntityQueryService dynamicEntityQueryService;
@@ -39,7 +39,7 @@ public class ProcessScenarioInputHandler implements IntentHandler {
     @SneakyThrows
     @Override
     public ChatResponseDto handle(IntentAndQueryResponse intent, ChatRequest request, UserChatSession session, ChatMessage message) {
-        Scenario scenario = scenarioRepository.findById(session.getActiveScenarioId())
+        Scenario scenario = scenarioStateLoader.findScenario(session.getActiveScenarioId())
                 .orElseThrow(() -> new IllegalStateException("Активный сценарий не найден, хотя сессия находится в режиме исполнения."));
 
         ScenarioDefinition definition = scenario.getDefinition();
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import org.nobilis.nobichat.dto.chat.ChatRequest;
 import org.nobilis.nobichat.dto.chat.ChatResponseDto;
 import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
+import org.nobilis.nobichat.events.event.ScenarioCatalogueChangedEvent;
 import org.nobilis.nobichat.exception.ChatFlowException;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.Scenario;
@@ -12,6 +13,7 @@ import org.nobilis.nobichat.model.UserChatSession;
 import org.nobilis.nobichat.repository.ScenarioDraftRepository;
 import org.nobilis.nobichat.repository.ScenarioRepository;
 import org.nobilis.nobichat.service.ScenarioValidatorService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,6 +26,7 @@ public class PublishScenarioHandler implements IntentHandler {
     private final ScenarioDraftRepository draftRepository;
     private final ScenarioRepository scenarioRepository;
     private final ScenarioValidatorService validatorService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public String getIntentType() {
@@ -50,6 +53,7 @@ public class PublishScenarioHandler implements IntentHandler {
         Scenario scenario = new Scenario();
         scenario.setDefinition(draft.getDefinition());
         scenarioRepository.save(scenario);
+        eventPublisher.publishEvent(new ScenarioCatalogueChangedEvent(this, scenario.getId()));
 
         session.setIsInConstructorMode(false);
         session.setIsInPreviewMode(false);
@@ -12,9 +12,9 @@ import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.Scenario;
 import org.nobilis.nobichat.model.UserChatSession;
-import org.nobilis.nobichat.repository.ScenarioRepository;
 import org.nobilis.nobichat.service.DynamicEntityQueryService;
 import org.nobilis.nobichat.service.ScenarioHelperService;
+import org.nobilis.nobichat.service.ScenarioStateLoader;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
@@ -30,7 +30,7 @@ import java.util.UUID;
 public class SaveScenarioDataHandler implements IntentHandler {
 
     private final DynamicEntityQueryService dynamicEntityQueryService;
-    private final ScenarioRepository scenarioRepository;
+    private final ScenarioStateLoader scenarioStateLoader;
     private final ScenarioHelperService scenarioHelperService;
     private final ObjectMapper objectMapper;
 
@@ -84,7 +84,7 @@ public class SaveScenarioDataHandler implements IntentHandler {
             throw new RuntimeException("Ошибка обработки JSON контекста", e);
         }
 
-        Scenario scenario = scenarioRepository.findById(session.getActiveScenarioId()).orElseThrow();
+        Scenario scenario = scenarioStateLoader.findScenario(session.getActiveScenarioId()).orElseThrow();
         ScenarioDefinition.ScenarioStep currentStep = scenario.getDefinition().getSteps().stream()
                 .filter(s -> s.getName().equals(session.getCurrentStepName())).findFirst().orElseThrow();
 
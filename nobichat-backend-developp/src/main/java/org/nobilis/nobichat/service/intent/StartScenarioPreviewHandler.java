@@ -8,8 +8,8 @@ import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
 import org.nobilis.nobichat.model.ChatMessage;
 import org.nobilis.nobichat.model.ScenarioDraft;
 import org.nobilis.nobichat.model.UserChatSession;
-import org.nobilis.nobichat.repository.ScenarioDraftRepository;
 import org.nobilis.nobichat.service.ScenarioHelperService;
+import org.nobilis.nobichat.service.ScenarioStateLoader;
 import org.nobilis.nobichat.service.ScenarioValidatorService;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -21,7 +21,7 @@ import java.util.Comparator;
 @RequiredArgsConstructor
 public class StartScenarioPreviewHandler implements IntentHandler {
 
-    private final ScenarioDraftRepository draftRepository;
+    private final ScenarioStateLoader scenarioStateLoader;
     private final ScenarioValidatorService validatorService;
     private final ScenarioHelperService scenarioHelperService;
 
@@ -32,7 +32,7 @@ public class StartScenarioPreviewHandler implements IntentHandler {
 
     @Override
     public ChatResponseDto handle(IntentAndQueryResponse intent, ChatRequest request, UserChatSession session, ChatMessage message) {
-        ScenarioDraft draft = draftRepository.findById(session.getActiveDraftId())
+        ScenarioDraft draft = scenarioStateLoader.findDraft(session.getActiveDraftId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Активный черновик не найден."));
 
         validatorService.validateCompleteness(draft.getDefinition());
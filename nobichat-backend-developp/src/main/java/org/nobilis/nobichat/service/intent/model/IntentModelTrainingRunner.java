@@ -0,0 +1,225 @@
+package org.nobilis.nobichat.service.intent.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.service.LlmPromptService;
+import org.nobilis.nobichat.service.intent.LocalIntentClassifier;
+import org.nobilis.nobichat.service.llm.LlmRequestLogReader;
+import org.nobilis.nobichat.service.llm.PromptFamily;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Офлайн-обучение модели намерений по истории llm_request_log.
+ * Из каждого промпта классификации извлекается секция [USER REQUEST], а из JSON-ответа LLM —
+ * метка {@code INTENT|DIRECTION}. Часть выборки откладывается для оценки: в отчет попадают
+ * общая точность, доля запросов выше порога уверенности и точность на них.
+ * <p>
+ * Записи отбираются в SQL по колонке prompt_family, режим определяется по ней же. Записи, сделанные
+ * до появления колонки, читаются только при intent.training.include-unlabeled=true: для них
+ * восстанавливается каждый промпт, а режим определяется по тексту секции [ROLE].
+ * <p>
+ * Режим свободного диалога не обучается: там LLM помимо намерения извлекает сущность и запрос,
+ * которые такая модель предсказать не может.
+ */
+@Slf4j
+@Component
+@Profile("intent-training")
+@RequiredArgsConstructor
+public class IntentModelTrainingRunner implements CommandLineRunner {
+
+    private static final String USER_REQUEST_MARKER = "[USER REQUEST]";
+    private static final String RESPONSE_MARKER = "[RESPONSE]";
+
+    /**
+     * Фрагменты секции [ROLE], по которым определяется режим промпта.
+     */
+    private static final Map<LocalIntentClassifier.Mode, String> ROLE_MARKERS = Map.of(
+            LocalIntentClassifier.Mode.EXECUTION, "классификатор команд в режиме исполнения сценария",
+            LocalIntentClassifier.Mode.CONSTRUCTOR, "классификатор команд редактора сценариев",
+            LocalIntentClassifier.Mode.PREVIEW, "классификатор команд режима просмотра");
+
+    private final LlmRequestLogReader llmRequestLogReader;
+    private final ObjectMapper objectMapper;
+    private final LlmPromptService llmPromptService;
+    private final ApplicationContext applicationContext;
+
+    @Value("${intent.training.output:${intent.model.path:intent-model.json}}")
+    private String output;
+
+    @Value("${intent.training.since-days:180}")
+    private int sinceDays;
+
+    @Value("${intent.training.holdout-fraction:0.2}")
+    private double holdoutFraction;
+
+    @Value("${intent.training.include-unlabeled:false}")
+    private boolean includeUnlabeled;
+
+    @Value("${intent.training.seed:42}")
+    private long seed;
+
+    @Value("${intent.model.confidence-threshold:0.97}")
+    private double confidenceThreshold;
+
+    @Override
+    public void run(String... args) throws Exception {
+        Map<LocalIntentClassifier.Mode, List<IntentTextModel.Sample>> samples = loadSamples();
+
+        IntentTextModel model = new IntentTextModel();
+        model.setTrainedAt(Instant.now());
+        Random random = new Random(seed);
+
+        for (Map.Entry<LocalIntentClassifier.Mode, List<IntentTextModel.Sample>> entry : samples.entrySet()) {
+            List<IntentTextModel.Sample> all = new ArrayList<>(entry.getValue());
+            Collections.shuffle(all, random);
+            int holdoutSize = (int) Math.round(all.size() * holdoutFraction);
+            List<IntentTextModel.Sample> holdout = all.subList(0, holdoutSize);
+            List<IntentTextModel.Sample> train = all.subList(holdoutSize, all.size());
+
+            if (!holdout.isEmpty()) {
+                report(entry.getKey(), IntentTextModel.train(train), holdout, train.size());
+            }
+            model.getModes().put(entry.getKey().name(), IntentTextModel.train(all));
+        }
+
+        Path path = Path.of(output);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        objectMapper.writeValue(path.toFile(), model);
+        log.info("Модель намерений сохранена в {}", path.toAbsolutePath());
+
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+
+    private Map<LocalIntentClassifier.Mode, List<IntentTextModel.Sample>> loadSamples() {
+        Map<LocalIntentClassifier.Mode, List<IntentTextModel.Sample>> samples = new EnumMap<>(LocalIntentClassifier.Mode.class);
+        int[] skipped = {0};
+
+        List<PromptFamily> families = Arrays.stream(LocalIntentClassifier.Mode.values())
+                .map(mode -> PromptFamily.valueOf(mode.name()))
+                .toList();
+        llmRequestLogReader.forEachSince(LocalDateTime.now().minusDays(sinceDays), families, includeUnlabeled, row -> {
+            String prompt = row.getPrompt();
+            if (prompt == null || row.getResponse() == null || !prompt.contains(USER_REQUEST_MARKER)) {
+                return;
+            }
+            LocalIntentClassifier.Mode mode = row.getPromptFamily() != null
+                    ? LocalIntentClassifier.Mode.valueOf(row.getPromptFamily())
+                    : detectMode(prompt);
+            String text = extractUserRequest(prompt);
+            String label = mode == null || text == null ? null : extractLabel(mode, row.getResponse());
+            if (label == null) {
+                skipped[0]++;
+                return;
+            }
+            samples.computeIfAbsent(mode, k -> new ArrayList<>()).add(new IntentTextModel.Sample(text, label));
+        });
+
+        samples.forEach((mode, list) -> log.info("Режим {}: {} примеров", mode, list.size()));
+        log.info("Пропущено записей без распознаваемого режима или ответа: {}", skipped[0]);
+        return samples;
+    }
+
+    private LocalIntentClassifier.Mode detectMode(String prompt) {
+        return ROLE_MARKERS.entrySet().stream()
+                .filter(e -> prompt.contains(e.getValue()))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Секция ищется как отдельная строка: в тексте правил промпта маркер тоже упоминается.
+     */
+    private String extractUserRequest(String prompt) {
+        int start = prompt.lastIndexOf("\n" + USER_REQUEST_MARKER + "\n");
+        if (start < 0) {
+            return null;
+        }
+        start += USER_REQUEST_MARKER.length() + 2;
+        int end = prompt.indexOf(RESPONSE_MARKER, start);
+        String text = (end < 0 ? prompt.substring(start) : prompt.substring(start, end)).trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    private String extractLabel(LocalIntentClassifier.Mode mode, String response) {
+        if (response.startsWith("Error:")) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(llmPromptService.sanitizeLlmJsonResponse(response));
+            String intent = textOrNull(node.get("intent"));
+            String direction = textOrNull(node.get("direction"));
+            if (mode == LocalIntentClassifier.Mode.EXECUTION && intent == null) {
+                intent = "UNKNOWN_EXECUTION_COMMAND";
+            }
+            return IntentTextModel.Label.format(intent, direction);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String textOrNull(JsonNode node) {
+        if (node == null || node.isNull() || node.asText().isBlank() || "null".equalsIgnoreCase(node.asText())) {
+            return null;
+        }
+        return node.asText().trim();
+    }
+
+    private void report(LocalIntentClassifier.Mode mode, IntentTextModel.ModeModel model,
+                        List<IntentTextModel.Sample> holdout, int trainSize) {
+        int correct = 0;
+        int confident = 0;
+        int confidentCorrect = 0;
+        Map<String, int[]> perLabel = new TreeMap<>();
+
+        for (IntentTextModel.Sample sample : holdout) {
+            IntentTextModel.Prediction prediction = IntentTextModel.predict(model, sample.text());
+            boolean hit = prediction != null && prediction.label().equals(sample.label());
+            int[] stats = perLabel.computeIfAbsent(sample.label(), k -> new int[2]);
+            stats[0]++;
+            if (hit) {
+                correct++;
+                stats[1]++;
+            }
+            if (prediction != null && prediction.confidence() >= confidenceThreshold) {
+                confident++;
+                if (hit) {
+                    confidentCorrect++;
+                }
+            }
+        }
+
+        log.info("=== Режим {}: обучение {} / проверка {} ===", mode, trainSize, holdout.size());
+        log.info("Точность: {}", percent(correct, holdout.size()));
+        log.info("Покрытие при пороге {}: {}, точность на покрытых: {}",
+                confidenceThreshold, percent(confident, holdout.size()), percent(confidentCorrect, confident));
+        perLabel.forEach((label, stats) ->
+                log.info("  {} — {} примеров, точность {}", label, stats[0], percent(stats[1], stats[0])));
+    }
+
+    private String percent(int part, int total) {
+        return total == 0 ? "n/a" : String.format("%.1f%%", 100.0 * part / total);
+    }
+}
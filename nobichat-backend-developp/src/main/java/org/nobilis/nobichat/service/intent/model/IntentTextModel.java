@@ -0,0 +1,150 @@
+package org.nobilis.nobichat.service.intent.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nobilis.nobichat.util.text.RussianTextNormalizer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Мультиномиальный наивный байесовский классификатор на символьных n-граммах.
+ * Обучается на парах "текст запроса → метка намерения" из llm_request_log и
+ * сериализуется в JSON целиком (для коротких команд модель занимает единицы мегабайт).
+ * Метка имеет вид {@code INTENT|DIRECTION}, где обе части могут быть пустыми.
+ */
+@Data
+@NoArgsConstructor
+public class IntentTextModel {
+
+    public static final int MIN_NGRAM = 2;
+    public static final int MAX_NGRAM = 4;
+    private static final double ALPHA = 0.5;
+
+    private Instant trainedAt;
+    private Map<String, ModeModel> modes = new HashMap<>();
+
+    @Data
+    @NoArgsConstructor
+    public static class ModeModel {
+        private int sampleCount;
+        private Map<String, Double> classLogPrior = new HashMap<>();
+        private Map<String, Map<String, Double>> featureLogProb = new HashMap<>();
+        private Map<String, Double> unseenLogProb = new HashMap<>();
+    }
+
+    public record Sample(String text, String label) {
+    }
+
+    public record Prediction(String label, double confidence) {
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Label {
+        private String intent;
+        private String direction;
+
+        public static Label parse(String label) {
+            int separator = label.indexOf('|');
+            String intent = label.substring(0, separator);
+            String direction = label.substring(separator + 1);
+            return new Label(intent.isEmpty() ? null : intent, direction.isEmpty() ? null : direction);
+        }
+
+        public static String format(String intent, String direction) {
+            return (intent == null ? "" : intent) + "|" + (direction == null ? "" : direction);
+        }
+    }
+
+    /**
+     * Обучает модель одного режима с аддитивным сглаживанием.
+     *
+     * @param samples обучающие примеры
+     * @return параметры модели
+     */
+    public static ModeModel train(List<Sample> samples) {
+        Map<String, Integer> classCounts = new HashMap<>();
+        Map<String, Map<String, Integer>> featureCounts = new HashMap<>();
+        Set<String> vocabulary = new HashSet<>();
+
+        for (Sample sample : samples) {
+            classCounts.merge(sample.label(), 1, Integer::sum);
+            Map<String, Integer> counts = featureCounts.computeIfAbsent(sample.label(), k -> new HashMap<>());
+            for (String gram : features(sample.text())) {
+                counts.merge(gram, 1, Integer::sum);
+                vocabulary.add(gram);
+            }
+        }
+
+        ModeModel model = new ModeModel();
+        model.setSampleCount(samples.size());
+        for (Map.Entry<String, Integer> entry : classCounts.entrySet()) {
+            String label = entry.getKey();
+            model.getClassLogPrior().put(label, Math.log((double) entry.getValue() / samples.size()));
+
+            Map<String, Integer> counts = featureCounts.get(label);
+            long total = counts.values().stream().mapToLong(Integer::longValue).sum();
+            double denominator = total + ALPHA * vocabulary.size();
+
+            Map<String, Double> logProb = new HashMap<>();
+            counts.forEach((gram, count) -> logProb.put(gram, Math.log((count + ALPHA) / denominator)));
+            model.getFeatureLogProb().put(label, logProb);
+            model.getUnseenLogProb().put(label, Math.log(ALPHA / denominator));
+        }
+        return model;
+    }
+
+    /**
+     * Возвращает наиболее вероятную метку и ее апостериорную вероятность.
+     *
+     * @param model параметры режима
+     * @param text  текст запроса
+     * @return предсказание или null, если модель пуста
+     */
+    public static Prediction predict(ModeModel model, String text) {
+        if (model == null || model.getClassLogPrior().isEmpty()) {
+            return null;
+        }
+        List<String> grams = features(text);
+        Map<String, Double> scores = new HashMap<>();
+        for (Map.Entry<String, Double> prior : model.getClassLogPrior().entrySet()) {
+            String label = prior.getKey();
+            Map<String, Double> logProb = model.getFeatureLogProb().get(label);
+            double unseen = model.getUnseenLogProb().get(label);
+            double score = prior.getValue();
+            for (String gram : grams) {
+                score += logProb.getOrDefault(gram, unseen);
+            }
+            scores.put(label, score);
+        }
+
+        double max = scores.values().stream().mapToDouble(Double::doubleValue).max().orElseThrow();
+        double normalizer = scores.values().stream().mapToDouble(s -> Math.exp(s - max)).sum();
+        String best = scores.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElseThrow();
+        return new Prediction(best, 1.0 / normalizer);
+    }
+
+    /**
+     * Символьные n-граммы нормализованного текста с маркерами границ.
+     */
+    static List<String> features(String text) {
+        String normalized = " " + String.join(" ", RussianTextNormalizer.tokenize(text)) + " ";
+        List<String> grams = new ArrayList<>();
+        for (int n = MIN_NGRAM; n <= MAX_NGRAM; n++) {
+            for (int i = 0; i + n <= normalized.length(); i++) {
+                grams.add(normalized.substring(i, i + n));
+            }
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,87 @@
+package org.nobilis.nobichat.service.intent.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.chat.softMode.IntentAndQueryResponse;
+import org.nobilis.nobichat.service.intent.LocalIntentClassifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Обученная модель намерений, загружаемая из файла при старте приложения.
+ * Файл создается {@link IntentModelTrainingRunner}. Если путь не задан или файл отсутствует,
+ * модель не используется и все нераспознанные правилами команды уходят в LLM.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TrainedIntentModel {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${intent.model.path:}")
+    private String modelPath;
+
+    @Value("${intent.model.confidence-threshold:0.97}")
+    private double confidenceThreshold;
+
+    @Value("${intent.model.min-samples:200}")
+    private int minSamples;
+
+    private volatile IntentTextModel model;
+
+    @PostConstruct
+    public void load() {
+        if (!StringUtils.hasText(modelPath)) {
+            log.info("Путь к модели намерений не задан, локальная модель отключена.");
+            return;
+        }
+        Path path = Path.of(modelPath);
+        if (!Files.exists(path)) {
+            log.warn("Файл модели намерений {} не найден, локальная модель отключена.", path);
+            return;
+        }
+        try {
+            model = objectMapper.readValue(path.toFile(), IntentTextModel.class);
+            log.info("Загружена модель намерений {} (обучена {}), режимы: {}", path, model.getTrainedAt(), model.getModes().keySet());
+        } catch (Exception e) {
+            log.error("Не удалось загрузить модель намерений {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Предсказывает намерение, если уверенность модели не ниже порога.
+     *
+     * @param mode    режим сессии
+     * @param message текст пользователя
+     * @return намерение (intent может быть null, если модель уверена, что команда не распознана)
+     */
+    public Optional<IntentAndQueryResponse> predict(LocalIntentClassifier.Mode mode, String message) {
+        IntentTextModel current = model;
+        if (current == null || !StringUtils.hasText(message)) {
+            return Optional.empty();
+        }
+        IntentTextModel.ModeModel modeModel = current.getModes().get(mode.name());
+        if (modeModel == null || modeModel.getSampleCount() < minSamples) {
+            return Optional.empty();
+        }
+        IntentTextModel.Prediction prediction = IntentTextModel.predict(modeModel, message);
+        if (prediction == null || prediction.confidence() < confidenceThreshold) {
+            return Optional.empty();
+        }
+        IntentTextModel.Label label = IntentTextModel.Label.parse(prediction.label());
+        IntentAndQueryResponse response = new IntentAndQueryResponse();
+        response.setIntent(label.getIntent());
+        response.setDirection(label.getDirection());
+        log.info("Команда '{}' классифицирована моделью в режиме {}: {} (уверенность {})",
+                message, mode, prediction.label(), String.format("%.3f", prediction.confidence()));
+        return Optional.of(response);
+    }
+}
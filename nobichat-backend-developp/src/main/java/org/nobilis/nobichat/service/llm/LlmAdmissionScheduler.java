@@ -0,0 +1,359 @@
+package org.nobilis.nobichat.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.exception.LlmAdmissionRejectedException;
+import org.nobilis.nobichat.model.User;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Очередь допуска запросов к LLM.
+ * Вызывающий поток ставит заявку в ограниченную очередь и ждет своей очереди не дольше max-wait;
+ * если очередь заполнена или по текущему темпу лимитера ожидание заведомо превысит max-wait,
+ * заявка сразу отклоняется с {@link LlmAdmissionRejectedException} (429 + Retry-After).
+ * Разрешения {@link LlmRateLimiter} запрашивает единственный поток-диспетчер, поэтому рабочие потоки
+ * не блокируются внутри лимитера.
+ * <p>
+ * Заявки делятся на классы приоритета по семейству промпта (классификация раньше обогащения сценария)
+ * и обслуживаются взвешенно, чтобы низкий приоритет не голодал. Внутри класса заявки выбираются
+ * по кругу сначала между организациями, затем между пользователями организации.
+ */
+@Slf4j
+@Component
+public class LlmAdmissionScheduler implements SmartLifecycle {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * Порядок обслуживания классов: на четыре заявки HIGH приходится две NORMAL и одна LOW.
+     */
+    private static final List<Priority> SERVICE_CYCLE = List.of(
+            Priority.HIGH, Priority.HIGH, Priority.NORMAL, Priority.HIGH, Priority.HIGH, Priority.NORMAL, Priority.LOW);
+
+    private static final class Ticket {
+        private final Priority priority;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<Void> admitted = new CompletableFuture<>();
+
+        private Ticket(Priority priority) {
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Круговая очередь: организации по кругу, внутри организации — пользователи по кругу.
+     */
+    private static final class FairQueue {
+        private final ArrayDeque<String> organizations = new ArrayDeque<>();
+        private final Map<String, ArrayDeque<String>> usersByOrganization = new HashMap<>();
+        private final Map<String, ArrayDeque<Ticket>> ticketsByUser = new HashMap<>();
+        private int size;
+
+        void add(String organization, String user, Ticket ticket) {
+            ArrayDeque<String> users = usersByOrganization.get(organization);
+            if (users == null) {
+                users = new ArrayDeque<>();
+                usersByOrganization.put(organization, users);
+                organizations.addLast(organization);
+            }
+            String userKey = organization + "/" + user;
+            ArrayDeque<Ticket> tickets = ticketsByUser.get(userKey);
+            if (tickets == null) {
+                tickets = new ArrayDeque<>();
+                ticketsByUser.put(userKey, tickets);
+                users.addLast(user);
+            }
+            tickets.addLast(ticket);
+            size++;
+        }
+
+        Ticket poll() {
+            String organization = organizations.pollFirst();
+            if (organization == null) {
+                return null;
+            }
+            ArrayDeque<String> users = usersByOrganization.get(organization);
+            String user = users.pollFirst();
+            String userKey = organization + "/" + user;
+            ArrayDeque<Ticket> tickets = ticketsByUser.get(userKey);
+            Ticket ticket = tickets.pollFirst();
+            size--;
+
+            if (tickets.isEmpty()) {
+                ticketsByUser.remove(userKey);
+            } else {
+                users.addLast(user);
+            }
+            if (users.isEmpty()) {
+                usersByOrganization.remove(organization);
+            } else {
+                organizations.addLast(organization);
+            }
+            return ticket;
+        }
+    }
+
+    private final LlmRateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+    private final int capacity;
+    private final Duration maxWait;
+    private final Map<PromptFamily, Priority> priorities = new EnumMap<>(PromptFamily.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Map<Priority, FairQueue> queues = new EnumMap<>(Priority.class);
+    private int queued;
+    private int cyclePosition;
+
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+    private final DistributionSummary queuePosition;
+
+    private volatile boolean running;
+    private Thread dispatcher;
+
+    public LlmAdmissionScheduler(LlmRateLimiter rateLimiter,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${llm-admission.capacity:200}") int capacity,
+                                 @Value("${llm-admission.max-wait:20s}") Duration maxWait,
+                                 @Value("#{${llm-admission.priorities}}") Map<String, String> priorityByFamily) {
+        this.rateLimiter = rateLimiter;
+        this.meterRegistry = meterRegistry;
+        this.capacity = capacity;
+        this.maxWait = maxWait;
+        for (PromptFamily family : PromptFamily.values()) {
+            priorities.put(family, Priority.valueOf(priorityByFamily.getOrDefault(family.name(), Priority.NORMAL.name())));
+        }
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new FairQueue());
+            waitTimers.put(priority, Timer.builder("llm.admission.wait")
+                    .description("Время ожидания допуска запроса к LLM")
+                    .tag("priority", priority.name().toLowerCase())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+            FairQueue queue = queues.get(priority);
+            Gauge.builder("llm.admission.queue.size", lock, l -> queue.size)
+                    .description("Количество заявок в очереди допуска к LLM")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        this.queuePosition = DistributionSummary.builder("llm.admission.queue.position")
+                .description("Позиция заявки в очереди допуска к LLM в момент постановки")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ждет допуска к LLM для текущего пользователя.
+     *
+     * @param family семейство промпта, определяющее приоритет
+     * @throws LlmAdmissionRejectedException если заявка не принята или не дождалась допуска за max-wait
+     */
+    public void acquire(PromptFamily family) {
+        Priority priority = priorities.get(family);
+        String[] owner = currentOwner();
+        Ticket ticket = enqueue(priority, owner[0], owner[1]);
+        try {
+            ticket.admitted.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            waitTimers.get(priority).record(System.nanoTime() - ticket.enqueuedAt, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            ticket.admitted.cancel(false);
+            reject("timeout", "Не дождались очереди к LLM за " + maxWait.toSeconds() + " с.", estimateWaitSeconds(queued));
+        } catch (InterruptedException e) {
+            ticket.admitted.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание допуска к LLM прервано", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка допуска к LLM", e.getCause());
+        }
+    }
+
+    /**
+     * Допуск для необязательного дополнительного вызова (хеджа): выдается, только если в очереди
+     * никто не ждет, чтобы дублирующие запросы не добавляли нагрузку при насыщении.
+     *
+     * @return true, если допуск получен
+     */
+    public boolean tryAcquireIfIdle(PromptFamily family) {
+        lock.lock();
+        try {
+            if (queued > 0) {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            acquire(family);
+            return true;
+        } catch (LlmAdmissionRejectedException e) {
+            return false;
+        }
+    }
+
+    private Ticket enqueue(Priority priority, String organization, String user) {
+        lock.lock();
+        try {
+            if (queued >= capacity) {
+                reject("queue_full", "Очередь запросов к LLM заполнена.", estimateWaitSeconds(queued));
+            }
+            long estimate = estimateWaitSeconds(queued + 1);
+            if (estimate > maxWait.toSeconds()) {
+                reject("wait_estimate", "Ожидаемое время ожидания ответа LLM слишком велико.", estimate);
+            }
+            Ticket ticket = new Ticket(priority);
+            queues.get(priority).add(organization, user, ticket);
+            queuePosition.record(queued);
+            queued++;
+            notEmpty.signal();
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reject(String reason, String message, long retryAfterSeconds) {
+        Counter.builder("llm.admission.rejected")
+                .description("Отклоненные заявки на вызов LLM")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.warn("Заявка к LLM отклонена ({}): {} Повтор через {} с.", reason, message, retryAfterSeconds);
+        throw new LlmAdmissionRejectedException(message, retryAfterSeconds);
+    }
+
+    /**
+     * Оценка ожидания по текущему темпу лимитера: позиция / (разрешений в секунду).
+     */
+    private long estimateWaitSeconds(int position) {
+        return (long) Math.ceil(position / rateLimiter.getPermitsPerSecond());
+    }
+
+    private Ticket takeNext() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queued == 0) {
+                notEmpty.await();
+            }
+            Priority preferred = SERVICE_CYCLE.get(cyclePosition);
+            cyclePosition = (cyclePosition + 1) % SERVICE_CYCLE.size();
+            Ticket ticket = queues.get(preferred).poll();
+            if (ticket == null) {
+                for (Priority priority : Priority.values()) {
+                    ticket = queues.get(priority).poll();
+                    if (ticket != null) {
+                        break;
+                    }
+                }
+            }
+            queued--;
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                Ticket ticket = takeNext();
+                if (ticket == null || ticket.admitted.isDone()) {
+                    continue;
+                }
+                long waitNanos = rateLimiter.reservePermission();
+                while (waitNanos < 0 && running) {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    waitNanos = rateLimiter.reservePermission();
+                }
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                // Если владелец заявки уже ушел по таймауту, отдаем полученное разрешение следующей заявке.
+                while (!ticket.admitted.complete(null)) {
+                    ticket = pollLive();
+                    if (ticket == null) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Ошибка диспетчера очереди LLM: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private Ticket pollLive() {
+        lock.lock();
+        try {
+            while (queued > 0) {
+                Ticket ticket = null;
+                for (Priority priority : Priority.values()) {
+                    ticket = queues.get(priority).poll();
+                    if (ticket != null) {
+                        break;
+                    }
+                }
+                queued--;
+                if (ticket != null && !ticket.admitted.isDone()) {
+                    return ticket;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String[] currentOwner() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            String organization = user.getOrganization() != null ? String.valueOf(user.getOrganization().getId()) : "none";
+            return new String[]{organization, String.valueOf(user.getId())};
+        }
+        return new String[]{"system", "system"};
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "llm-admission-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
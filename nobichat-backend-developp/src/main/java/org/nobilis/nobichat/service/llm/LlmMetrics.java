@@ -0,0 +1,132 @@
+package org.nobilis.nobichat.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Метрики вызовов LLM с тегами model и family (семейство промпта).
+ * <ul>
+ *     <li>{@code llm.call} — длительность вызова с гистограммой для перцентилей, тег outcome (success|error|timeout)
+ *     и mode (call|stream);</li>
+ *     <li>{@code llm.tokens} — счетчики токенов, тег type (prompt|completion|total);</li>
+ *     <li>{@code llm.call.errors} — ошибки вызова, теги type (error|timeout) и exception;</li>
+ *     <li>{@code llm.rate_limiter.wait} — ожидание допуска (очередь и общий лимитер) перед вызовом,
+ *     тег outcome (admitted|rejected|error), так что учитываются и заявки, не дождавшиеся допуска;</li>
+ *     <li>{@code llm.rate_limiter.rejected} — вызовы, которым отказано в допуске.</li>
+ * </ul>
+ * Количество моделей ограничено конфигурацией маршрутизации, поэтому кардинальность тегов невелика.
+ */
+@Component
+@RequiredArgsConstructor
+public class LlmMetrics {
+
+    public enum Outcome {SUCCESS, ERROR, TIMEOUT}
+
+    public enum AdmissionOutcome {ADMITTED, REJECTED, ERROR}
+
+    private static final Duration MIN_EXPECTED_DURATION = Duration.ofMillis(50);
+    private static final Duration MAX_EXPECTED_DURATION = Duration.ofMinutes(2);
+
+    private final MeterRegistry meterRegistry;
+
+    public void recordSuccess(String model, PromptFamily family, boolean streaming, long durationNanos,
+                              Integer promptTokens, Integer completionTokens, Integer totalTokens) {
+        recordCall(model, family, streaming, durationNanos, Outcome.SUCCESS);
+        recordTokens(model, family, "prompt", promptTokens);
+        recordTokens(model, family, "completion", completionTokens);
+        recordTokens(model, family, "total", totalTokens);
+    }
+
+    public void recordFailure(String model, PromptFamily family, boolean streaming, long durationNanos, Throwable error) {
+        Outcome outcome = isTimeout(error) ? Outcome.TIMEOUT : Outcome.ERROR;
+        recordCall(model, family, streaming, durationNanos, outcome);
+        Counter.builder("llm.call.errors")
+                .description("Ошибки вызовов LLM")
+                .tag("model", tagValue(model))
+                .tag("family", family.name().toLowerCase())
+                .tag("type", outcome.name().toLowerCase())
+                .tag("exception", error.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordLimiterWait(String model, PromptFamily family, long waitNanos, AdmissionOutcome outcome) {
+        if (outcome == AdmissionOutcome.REJECTED) {
+            Counter.builder("llm.rate_limiter.rejected")
+                    .description("Вызовы LLM, которым отказано в допуске")
+                    .tag("model", tagValue(model))
+                    .tag("family", family.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+        Timer.builder("llm.rate_limiter.wait")
+                .description("Ожидание допуска к LLM (очередь и общий лимитер) перед вызовом модели")
+                .tag("model", tagValue(model))
+                .tag("family", family.name().toLowerCase())
+                .tag("outcome", outcome.name().toLowerCase())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(meterRegistry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordCall(String model, PromptFamily family, boolean streaming, long durationNanos, Outcome outcome) {
+        Timer.builder("llm.call")
+                .description("Длительность вызова модели LLM")
+                .tag("model", tagValue(model))
+                .tag("family", family.name().toLowerCase())
+                .tag("mode", streaming ? "stream" : "call")
+                .tag("outcome", outcome.name().toLowerCase())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED_DURATION)
+                .maximumExpectedValue(MAX_EXPECTED_DURATION)
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordTokens(String model, PromptFamily family, String type, Integer tokens) {
+        if (tokens == null || tokens <= 0) {
+            return;
+        }
+        Counter.builder("llm.tokens")
+                .description("Токены, израсходованные на вызовы LLM")
+                .tag("model", tagValue(model))
+                .tag("family", family.name().toLowerCase())
+                .tag("type", type)
+                .register(meterRegistry)
+                .increment(tokens);
+    }
+
+    /**
+     * Таймаут распознается по причине в цепочке исключений; blockLast у потокового вызова
+     * сообщает о таймауте через IllegalStateException с текстом "Timeout on blocking read".
+     */
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof TimeoutException || e instanceof SocketTimeoutException || e instanceof HttpTimeoutException) {
+                return true;
+            }
+            if (e instanceof IllegalStateException && e.getMessage() != null && e.getMessage().startsWith("Timeout on blocking read")) {
+                return true;
+            }
+            if (e.getCause() == e) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private static String tagValue(String model) {
+        return model == null || model.isBlank() ? "unknown" : model;
+    }
+}
@@ -0,0 +1,290 @@
+package org.nobilis.nobichat.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.llm.LLMResponseDto;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Маршрутизация вызовов LLM по семействам промптов.
+ * Каждое семейство относится к уровню моделей (например, small для классификации и large для
+ * обогащения сценария), у уровня есть основная и резервная модель. Для каждой модели ведется
+ * скользящее окно задержек и ошибок.
+ * <p>
+ * Если основная модель не ответила за свой бюджет задержки (настроенный или, при достаточной
+ * статистике, ее текущий p95 — берется меньший), параллельно отправляется дублирующий запрос
+ * в резервную модель, и используется первый успешный ответ. Если доля ошибок основной модели
+ * превысила порог, уровень временно обслуживается в обратном порядке.
+ * <p>
+ * Допуск к LLM для основного вызова вызывающий получает до маршрутизации, поэтому окна задержек
+ * и бюджет хеджирования отражают только время ответа провайдера. Дополнительные вызовы
+ * (повтор в резервной модели и хедж) получают допуск явно через {@link ExtraCallAdmission};
+ * хедж отправляется, только если в очереди допуска никто не ждет.
+ */
+@Slf4j
+@Component
+public class LlmModelRouter {
+
+    private static final int WINDOW_SIZE = 200;
+    private static final int MIN_SAMPLES = 20;
+
+    private static final LLMResponseDto HEDGE_NOT_ADMITTED = LLMResponseDto.builder()
+            .content("Error: дублирующий запрос не отправлен")
+            .build();
+
+    private record Route(String tier, String primary, String backup, Duration hedgeAfter) {
+    }
+
+    /**
+     * Допуск дополнительных вызовов сверх основного.
+     */
+    public interface ExtraCallAdmission {
+
+        ExtraCallAdmission NONE = new ExtraCallAdmission() {
+            @Override
+            public void acquireForRetry(PromptFamily family) {
+            }
+
+            @Override
+            public boolean tryAcquireForHedge(PromptFamily family) {
+                return true;
+            }
+        };
+
+        /**
+         * Ждет допуска для повтора в резервной модели после ошибки основной.
+         */
+        void acquireForRetry(PromptFamily family);
+
+        /**
+         * Получает допуск для хеджа, если это не добавит нагрузки при насыщении.
+         *
+         * @return true, если допуск получен; false — хедж не отправляется
+         */
+        boolean tryAcquireForHedge(PromptFamily family);
+    }
+
+    private final AsyncTaskExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final boolean hedgingEnabled;
+    private final double errorRateThreshold;
+    private final Map<PromptFamily, Route> routes = new EnumMap<>(PromptFamily.class);
+    private final Map<String, ModelLatencyWindow> windows = new ConcurrentHashMap<>();
+
+    public LlmModelRouter(@Qualifier("llmCallExecutor") AsyncTaskExecutor executor,
+                          MeterRegistry meterRegistry,
+                          @Value("${spring.ai.openai.chat.options.model}") String defaultModel,
+                          @Value("${llm-routing.hedging-enabled:true}") boolean hedgingEnabled,
+                          @Value("${llm-routing.error-rate-threshold:0.5}") double errorRateThreshold,
+                          @Value("#{${llm-routing.families}}") Map<String, String> tierByFamily,
+                          @Value("#{${llm-routing.primary-models}}") Map<String, String> primaryByTier,
+                          @Value("#{${llm-routing.backup-models}}") Map<String, String> backupByTier,
+                          @Value("#{${llm-routing.hedge-after}}") Map<String, String> hedgeAfterByTier) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.hedgingEnabled = hedgingEnabled;
+        this.errorRateThreshold = errorRateThreshold;
+
+        for (PromptFamily family : PromptFamily.values()) {
+            String tier = tierByFamily.getOrDefault(family.name(), "large");
+            String primary = StringUtils.hasText(primaryByTier.get(tier)) ? primaryByTier.get(tier) : defaultModel;
+            String backup = StringUtils.hasText(backupByTier.get(tier)) && !backupByTier.get(tier).equals(primary)
+                    ? backupByTier.get(tier) : null;
+            Duration hedgeAfter = hedgeAfterByTier.containsKey(tier)
+                    ? DurationStyle.detectAndParse(hedgeAfterByTier.get(tier)) : Duration.ofSeconds(30);
+            routes.put(family, new Route(tier, primary, backup, hedgeAfter));
+        }
+        Map<String, Route> byTier = new HashMap<>();
+        routes.values().forEach(r -> byTier.putIfAbsent(r.tier(), r));
+        byTier.values().forEach(r -> {
+            window(r.primary());
+            if (r.backup() != null) {
+                window(r.backup());
+            }
+        });
+        log.info("Маршруты LLM: {}", routes);
+    }
+
+    /**
+     * @return основная модель для семейства промптов
+     */
+    public String primaryModel(PromptFamily family) {
+        return routes.get(family).primary();
+    }
+
+    /**
+     * Выполняет вызов по маршруту семейства с хеджированием резервной моделью.
+     *
+     * @param family    семейство промпта
+     * @param call      вызов модели по ее имени (только обращение к провайдеру, без ожидания допуска)
+     * @param admission допуск дополнительных вызовов
+     * @return первый успешный ответ (или ответ с ошибкой, если обе модели не справились)
+     */
+    public LLMResponseDto route(PromptFamily family, Function<String, LLMResponseDto> call, ExtraCallAdmission admission) {
+        Route route = routes.get(family);
+        String primary = route.primary();
+        String backup = route.backup();
+        if (backup != null && window(primary).size() >= MIN_SAMPLES && window(primary).errorRate() > errorRateThreshold
+                && window(backup).errorRate() < window(primary).errorRate()) {
+            log.warn("Доля ошибок модели {} превышает {}, запросы {} направляются в {}", primary, errorRateThreshold, family, backup);
+            primary = route.backup();
+            backup = route.primary();
+        }
+
+        if (backup == null || !hedgingEnabled) {
+            LLMResponseDto response = timed(primary, call);
+            if (isFailure(response) && backup != null) {
+                admission.acquireForRetry(family);
+                return timed(backup, call);
+            }
+            return response;
+        }
+
+        String primaryModel = primary;
+        String backupModel = backup;
+        CompletableFuture<LLMResponseDto> primaryCall = CompletableFuture.supplyAsync(() -> timed(primaryModel, call), executor);
+        try {
+            LLMResponseDto response = primaryCall.get(hedgeDelay(route, primaryModel).toMillis(), TimeUnit.MILLISECONDS);
+            if (!isFailure(response)) {
+                return response;
+            }
+            log.warn("Модель {} вернула ошибку, повторяем запрос {} в {}", primaryModel, family, backupModel);
+            admission.acquireForRetry(family);
+            return timed(backupModel, call);
+        } catch (TimeoutException e) {
+            return hedge(family, primaryCall, backupModel, call, admission);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание ответа LLM прервано", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private LLMResponseDto hedge(PromptFamily family, CompletableFuture<LLMResponseDto> primaryCall,
+                                 String backupModel, Function<String, LLMResponseDto> call, ExtraCallAdmission admission) {
+        CompletableFuture<LLMResponseDto> backupCall = CompletableFuture.supplyAsync(() -> {
+            if (!admission.tryAcquireForHedge(family)) {
+                Counter.builder("llm.routing.hedge_skipped")
+                        .description("Хеджи, не отправленные из-за отсутствия свободного допуска к LLM")
+                        .tag("family", family.name().toLowerCase())
+                        .register(meterRegistry)
+                        .increment();
+                return HEDGE_NOT_ADMITTED;
+            }
+            if (primaryCall.isDone()) {
+                return HEDGE_NOT_ADMITTED;
+            }
+            Counter.builder("llm.routing.hedged")
+                    .description("Запросы, продублированные в резервную модель")
+                    .tag("family", family.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+            log.info("Основная модель не уложилась в бюджет для {}, отправляем дублирующий запрос в {}", family, backupModel);
+            return timed(backupModel, call);
+        }, executor);
+        CompletableFuture<LLMResponseDto> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        for (CompletableFuture<LLMResponseDto> candidate : List.of(primaryCall, backupCall)) {
+            candidate.whenComplete((response, error) -> {
+                boolean last = pending.decrementAndGet() == 0;
+                if (error == null && !isFailure(response)) {
+                    winner.complete(response);
+                } else if (last) {
+                    if (error != null) {
+                        winner.completeExceptionally(error);
+                    } else if (response == HEDGE_NOT_ADMITTED) {
+                        // Хедж не отправлялся: результатом остается ответ (или ошибка) основной модели.
+                        primaryCall.whenComplete((primaryResponse, primaryError) -> {
+                            if (primaryError != null) {
+                                winner.completeExceptionally(primaryError);
+                            } else {
+                                winner.complete(primaryResponse);
+                            }
+                        });
+                    } else {
+                        winner.complete(response);
+                    }
+                }
+            });
+        }
+
+        try {
+            LLMResponseDto response = winner.join();
+            Counter.builder("llm.routing.winner")
+                    .description("Какая модель первой вернула ответ при хеджировании")
+                    .tag("model", String.valueOf(response.getModelName()))
+                    .register(meterRegistry)
+                    .increment();
+            return response;
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        } finally {
+            primaryCall.cancel(false);
+            backupCall.cancel(false);
+        }
+    }
+
+    private Duration hedgeDelay(Route route, String model) {
+        ModelLatencyWindow window = window(model);
+        long p95 = window.size() >= MIN_SAMPLES ? window.p95() : -1;
+        if (p95 > 0 && p95 < route.hedgeAfter().toMillis()) {
+            return Duration.ofMillis(p95);
+        }
+        return route.hedgeAfter();
+    }
+
+    private LLMResponseDto timed(String model, Function<String, LLMResponseDto> call) {
+        long start = System.currentTimeMillis();
+        LLMResponseDto response = call.apply(model);
+        window(model).record(System.currentTimeMillis() - start, isFailure(response));
+        return response;
+    }
+
+    private ModelLatencyWindow window(String model) {
+        return windows.computeIfAbsent(model, m -> {
+            ModelLatencyWindow window = new ModelLatencyWindow(WINDOW_SIZE);
+            Gauge.builder("llm.routing.p95", window, w -> w.size() >= MIN_SAMPLES ? w.p95() : Double.NaN)
+                    .description("p95 задержки модели по скользящему окну, мс")
+                    .tag("model", m)
+                    .register(meterRegistry);
+            Gauge.builder("llm.routing.error_rate", window, ModelLatencyWindow::errorRate)
+                    .description("Доля ошибок модели по скользящему окну")
+                    .tag("model", m)
+                    .register(meterRegistry);
+            return window;
+        });
+    }
+
+    private boolean isFailure(LLMResponseDto response) {
+        return response == null || response.getContent() == null || response.getContent().startsWith("Error:");
+    }
+
+    private RuntimeException unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error instanceof RuntimeException re ? re : new IllegalStateException(error);
+    }
+}
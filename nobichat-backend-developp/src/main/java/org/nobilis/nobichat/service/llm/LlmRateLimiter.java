@@ -0,0 +1,200 @@
+package org.nobilis.nobichat.service.llm;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий для всех реплик лимитер запросов к провайдеру LLM.
+ * <p>
+ * Основной режим — token bucket в Redis: резервирование выполняется атомарным Lua-скриптом, время
+ * берется из Redis (TIME), поэтому расхождение часов между узлами не влияет на темп. Разрешение
+ * можно взять "в долг": скрипт возвращает, сколько нужно подождать до его наступления, либо -1,
+ * если ожидание превысит допустимое.
+ * <p>
+ * Темп подстраивается под заголовки x-ratelimit-* провайдера: заявленный лимит задает скорость
+ * пополнения, а исчерпанный остаток блокирует ведро до момента сброса. Если Redis недоступен,
+ * узел переключается на локальный лимитер с бюджетом 1/N от общего (N — число реплик).
+ */
+@Slf4j
+@Component
+public class LlmRateLimiter {
+
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts', 'blocked_until', 'rate', 'capacity')
+            local rate = tonumber(state[4]) or tonumber(ARGV[2])
+            local capacity = tonumber(state[5]) or tonumber(ARGV[1])
+            local maxWait = tonumber(ARGV[3])
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            local blockedUntil = tonumber(state[3]) or 0
+            if now > ts then
+                tokens = math.min(capacity, tokens + (now - ts) * rate)
+                ts = now
+            end
+            local wait = 0
+            if blockedUntil > now then
+                wait = blockedUntil - now
+            end
+            local remaining = tokens - 1
+            if remaining < 0 then
+                wait = math.max(wait, math.ceil(-remaining / rate))
+            end
+            if wait > maxWait then
+                return -1
+            end
+            redis.call('HSET', KEYS[1], 'tokens', remaining, 'ts', ts)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate) * 2 + maxWait)
+            return wait
+            """, Long.class);
+
+    private static final RedisScript<Long> ADAPT_SCRIPT = new DefaultRedisScript<>("""
+            local t = redis.call('TIME')
+            local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+            if tonumber(ARGV[1]) > 0 then
+                redis.call('HSET', KEYS[1], 'rate', ARGV[1], 'capacity', ARGV[2])
+            end
+            if tonumber(ARGV[3]) > 0 then
+                local blockedUntil = now + tonumber(ARGV[3])
+                local current = tonumber(redis.call('HGET', KEYS[1], 'blocked_until')) or 0
+                if blockedUntil > current then
+                    redis.call('HSET', KEYS[1], 'blocked_until', blockedUntil)
+                end
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean redisMode;
+    private final String key;
+    private final int limitForPeriod;
+    private final Duration limitRefreshPeriod;
+    private final Duration maxReservationWait;
+    private final RateLimiter localLimiter;
+    private final Counter fallbackCounter;
+
+    private volatile double permitsPerSecond;
+    private volatile long redisRetryAt;
+
+    public LlmRateLimiter(StringRedisTemplate redisTemplate,
+                          RateLimiterRegistry rateLimiterRegistry,
+                          MeterRegistry meterRegistry,
+                          @Value("${llm-rate-limit.mode:redis}") String mode,
+                          @Value("${llm-rate-limit.key:nobichat:llm-rate:openrouter}") String key,
+                          @Value("${llm-rate-limit.limit-for-period:18}") int limitForPeriod,
+                          @Value("${llm-rate-limit.limit-refresh-period:1m}") Duration limitRefreshPeriod,
+                          @Value("${llm-rate-limit.replicas:1}") int replicas,
+                          @Value("${llm-rate-limit.max-reservation-wait:60s}") Duration maxReservationWait) {
+        this.redisTemplate = redisTemplate;
+        this.redisMode = "redis".equalsIgnoreCase(mode);
+        this.key = key;
+        this.limitForPeriod = limitForPeriod;
+        this.limitRefreshPeriod = limitRefreshPeriod;
+        this.maxReservationWait = maxReservationWait;
+        this.permitsPerSecond = limitForPeriod / (limitRefreshPeriod.toMillis() / 1000.0);
+
+        int localBudget = Math.max(1, limitForPeriod / Math.max(1, replicas));
+        this.localLimiter = rateLimiterRegistry.rateLimiter("llmLocalFallback", RateLimiterConfig.custom()
+                .limitForPeriod(localBudget)
+                .limitRefreshPeriod(limitRefreshPeriod)
+                .timeoutDuration(maxReservationWait)
+                .build());
+        this.fallbackCounter = Counter.builder("llm.rate_limit.fallback")
+                .description("Резервирования, выполненные локальным лимитером из-за недоступности Redis")
+                .register(meterRegistry);
+        Gauge.builder("llm.rate_limit.permits_per_second", this, l -> l.permitsPerSecond)
+                .description("Текущий темп общего лимитера запросов к LLM")
+                .register(meterRegistry);
+
+        log.info("Лимитер LLM: режим={}, лимит {} за {}, локальный резерв {} за {} ({} реплик)",
+                mode, limitForPeriod, limitRefreshPeriod, localBudget, limitRefreshPeriod, replicas);
+    }
+
+    /**
+     * Резервирует разрешение на один запрос.
+     *
+     * @return сколько наносекунд нужно подождать до использования разрешения, или -1,
+     * если разрешение не удастся получить в пределах max-reservation-wait
+     */
+    public long reservePermission() {
+        if (redisMode && System.currentTimeMillis() >= redisRetryAt) {
+            try {
+                Long waitMs = redisTemplate.execute(RESERVE_SCRIPT, List.of(key),
+                        String.valueOf(limitForPeriod),
+                        String.valueOf(permitsPerSecond / 1000.0),
+                        String.valueOf(maxReservationWait.toMillis()));
+                if (waitMs != null) {
+                    return waitMs < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(waitMs);
+                }
+            } catch (Exception e) {
+                redisRetryAt = System.currentTimeMillis() + 5_000;
+                log.warn("Redis недоступен для лимитера LLM, используется локальный лимитер: {}", e.getMessage());
+            }
+        }
+        if (redisMode) {
+            fallbackCounter.increment();
+        }
+        return localLimiter.reservePermission();
+    }
+
+    /**
+     * @return текущая оценка темпа выдачи разрешений (в секунду) для всего кластера
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Подстраивает лимитер под заголовки провайдера из последнего ответа.
+     *
+     * @param rateLimit метаданные лимита из ответа Spring AI (может быть null или пустым)
+     */
+    public void onProviderRateLimit(RateLimit rateLimit) {
+        if (rateLimit == null || rateLimit.getRequestsLimit() == null || rateLimit.getRequestsLimit() <= 0) {
+            return;
+        }
+        Duration reset = rateLimit.getRequestsReset();
+        long limit = rateLimit.getRequestsLimit();
+        long remaining = rateLimit.getRequestsRemaining() != null ? rateLimit.getRequestsRemaining() : limit;
+
+        double advertised = limit / (limitRefreshPeriod.toMillis() / 1000.0);
+        double adapted = Math.min(advertised, limitForPeriod / (limitRefreshPeriod.toMillis() / 1000.0));
+        long blockMs = remaining <= 0 && reset != null ? reset.toMillis() : 0;
+        if (adapted == permitsPerSecond && blockMs == 0) {
+            return;
+        }
+        if (adapted != permitsPerSecond) {
+            log.info("Провайдер LLM сообщил лимит {} запросов; темп лимитера {} -> {} в секунду", limit, permitsPerSecond, adapted);
+        }
+        permitsPerSecond = adapted;
+        if (blockMs > 0) {
+            log.warn("Провайдер LLM сообщил об исчерпании лимита, запросы приостановлены на {} мс", blockMs);
+        }
+        if (redisMode && System.currentTimeMillis() >= redisRetryAt) {
+            try {
+                redisTemplate.execute(ADAPT_SCRIPT, List.of(key),
+                        String.valueOf(adapted / 1000.0),
+                        String.valueOf(Math.min(limit, limitForPeriod)),
+                        String.valueOf(blockMs));
+            } catch (Exception e) {
+                log.warn("Не удалось обновить параметры лимитера LLM в Redis: {}", e.getMessage());
+            }
+        }
+    }
+}
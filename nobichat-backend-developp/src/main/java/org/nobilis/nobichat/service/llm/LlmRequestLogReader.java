@@ -0,0 +1,143 @@
+package org.nobilis.nobichat.service.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.llm.LlmRequestLogDto;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Чтение журнала вызовов LLM с восстановлением полного промпта и ответа.
+ * Поддерживает оба формата записей: старые с текстом в prompt/response и компактные
+ * (prompt_compact/response_compact, см. {@link PromptCompactor}).
+ */
+@Slf4j
+@Component
+public class LlmRequestLogReader {
+
+    private static final String SELECT_COLUMNS = """
+            SELECT id, timestamp, model_name, prompt, response, prompt_compact, response_compact,
+                   prompt_tokens, completion_tokens, total_tokens, response_time_ms, cached, chat_message_id, prompt_family
+            FROM llm_request_log
+            """;
+
+    private static final int FRAGMENT_CACHE_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PromptCompactor promptCompactor;
+    private final RowMapper<LlmRequestLogDto> rowMapper = this::mapRow;
+    private final Map<String, String> fragmentCache = Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > FRAGMENT_CACHE_SIZE;
+        }
+    });
+
+    public LlmRequestLogReader(JdbcTemplate jdbcTemplate, PromptCompactor promptCompactor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.promptCompactor = promptCompactor;
+    }
+
+    public Optional<LlmRequestLogDto> findById(UUID id) {
+        return jdbcTemplate.query(SELECT_COLUMNS + "WHERE id = ?", rowMapper, id).stream().findFirst();
+    }
+
+    public List<LlmRequestLogDto> findByChatMessageId(UUID chatMessageId) {
+        return jdbcTemplate.query(SELECT_COLUMNS + "WHERE chat_message_id = ? ORDER BY timestamp", rowMapper, chatMessageId);
+    }
+
+    /**
+     * Потоково обходит записи начиная с {@code since} (для пакетных задач, например воспроизведения ответов заглушкой LLM).
+     */
+    public void forEachSince(LocalDateTime since, Consumer<LlmRequestLogDto> consumer) {
+        jdbcTemplate.query(SELECT_COLUMNS + "WHERE timestamp >= ?",
+                rs -> {
+                    consumer.accept(mapRow(rs, rs.getRow()));
+                },
+                Timestamp.valueOf(since));
+    }
+
+    /**
+     * Потоково обходит записи указанных семейств начиная с {@code since} (например, для обучения модели намерений).
+     * Отбор по семейству выполняется в SQL, так что восстанавливаются только нужные промпты.
+     *
+     * @param since            начало периода
+     * @param families         семейства промптов
+     * @param includeUnlabeled включать записи без семейства, сделанные до появления колонки prompt_family
+     * @param consumer         обработчик записи
+     */
+    public void forEachSince(LocalDateTime since, Collection<PromptFamily> families, boolean includeUnlabeled,
+                             Consumer<LlmRequestLogDto> consumer) {
+        List<Object> args = new ArrayList<>();
+        args.add(Timestamp.valueOf(since));
+        families.forEach(family -> args.add(family.name()));
+        String familyCondition = families.isEmpty() ? "FALSE"
+                : "prompt_family IN (" + String.join(", ", Collections.nCopies(families.size(), "?")) + ")";
+        if (includeUnlabeled) {
+            familyCondition = "(" + familyCondition + " OR prompt_family IS NULL)";
+        }
+        jdbcTemplate.query(SELECT_COLUMNS + "WHERE timestamp >= ? AND " + familyCondition,
+                rs -> {
+                    consumer.accept(mapRow(rs, rs.getRow()));
+                },
+                args.toArray());
+    }
+
+    private LlmRequestLogDto mapRow(ResultSet rs, int rowNum) throws SQLException {
+        String prompt = rs.getString("prompt");
+        byte[] promptCompact = rs.getBytes("prompt_compact");
+        if (prompt == null && promptCompact != null) {
+            prompt = promptCompactor.rebuild(promptCompact, this::loadFragment);
+        }
+        String response = rs.getString("response");
+        if (response == null) {
+            response = PromptCompactor.decompress(rs.getBytes("response_compact"));
+        }
+        Timestamp timestamp = rs.getTimestamp("timestamp");
+
+        return LlmRequestLogDto.builder()
+                .id(rs.getObject("id", UUID.class))
+                .timestamp(timestamp == null ? null : timestamp.toLocalDateTime())
+                .modelName(rs.getString("model_name"))
+                .prompt(prompt)
+                .response(response)
+                .promptTokens(rs.getObject("prompt_tokens", Long.class))
+                .completionTokens(rs.getObject("completion_tokens", Long.class))
+                .totalTokens(rs.getObject("total_tokens", Long.class))
+                .responseTimeMs(rs.getObject("response_time_ms", Long.class))
+                .cached(rs.getObject("cached", Boolean.class))
+                .chatMessageId(rs.getObject("chat_message_id", UUID.class))
+                .promptFamily(rs.getString("prompt_family"))
+                .build();
+    }
+
+    private String loadFragment(String hash) {
+        String cached = fragmentCache.get(hash);
+        if (cached != null) {
+            return cached;
+        }
+        List<byte[]> content = jdbcTemplate.query("SELECT content FROM llm_prompt_fragments WHERE hash = ?",
+                (rs, rowNum) -> rs.getBytes("content"), hash);
+        if (content.isEmpty()) {
+            log.warn("Фрагмент промпта {} не найден", hash);
+            return null;
+        }
+        String fragment = PromptCompactor.decompress(content.get(0));
+        fragmentCache.put(hash, fragment);
+        return fragment;
+    }
+}
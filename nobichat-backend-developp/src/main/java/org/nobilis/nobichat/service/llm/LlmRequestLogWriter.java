@@ -0,0 +1,326 @@
+package org.nobilis.nobichat.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пакетная запись журнала вызовов LLM ({@code llm_request_log}).
+ * <p>
+ * Записи складываются в ограниченную очередь и пишутся отдельным потоком одним JDBC-пакетом в транзакции —
+ * по заполнении пакета или раз в flush-interval. {@code chat_message_id} пишется напрямую, без загрузки
+ * сообщения. Промпт хранится в компактном виде (см. {@link PromptCompactor}): новые фрагменты шаблонов
+ * вставляются в {@code llm_prompt_fragments} в той же транзакции, ответ модели хранится сжатым.
+ * При переполнении очереди новые записи отбрасываются (счетчик {@code llm.request_log.dropped}),
+ * а вызовы LLM не ждут базу. При остановке приложения очередь дописывается синхронно; записи, пришедшие
+ * после остановки, пишутся сразу в вызывающем потоке.
+ * <p>
+ * Если пакет не записался (например, сообщение чата уже удалено и не прошла проверка FK), записи пакета
+ * повторяются по одной, чтобы ошибка одной записи не теряла остальные.
+ * <p>
+ * У фрагментов ведется {@code last_used_at}: новые вставляются с текущим временем, у уже известных оно
+ * обновляется повторной вставкой не чаще раза в сутки на фрагмент. По нему {@code PartitionMaintenanceService} удаляет
+ * фрагменты, на которые не ссылаются записи в пределах срока хранения журнала.
+ */
+@Slf4j
+@Component
+public class LlmRequestLogWriter implements SmartLifecycle {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO llm_request_log (id, timestamp, prompt_compact, response_compact, prompt_tokens, completion_tokens,
+                                         total_tokens, response_time_ms, model_name, cached, chat_message_id, prompt_family)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_FRAGMENT_SQL = """
+            INSERT INTO llm_prompt_fragments (hash, content, original_length, created_at, last_used_at)
+            VALUES (?, ?, ?, now(), now())
+            ON CONFLICT (hash) DO UPDATE SET last_used_at = now()
+            """;
+
+    private static final int KNOWN_FRAGMENTS_LIMIT = 10_000;
+
+    public record Entry(LocalDateTime timestamp, String prompt, String response, String modelName,
+                        Integer promptTokens, Integer completionTokens, Integer totalTokens,
+                        Long responseTimeMs, boolean cached, UUID chatMessageId, PromptFamily family) {
+    }
+
+    private record Row(Entry entry, byte[] prompt, byte[] response, List<PromptCompactor.Fragment> fragments) {
+    }
+
+    private record StoredFragment(String hash, byte[] content, int originalLength) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PromptCompactor promptCompactor;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Counter writtenCounter;
+    private final Counter droppedCounter;
+    private final Counter failedCounter;
+    private final Counter originalBytesCounter;
+    private final Counter storedBytesCounter;
+    private final AtomicLong droppedSinceLastFlush = new AtomicLong();
+    /**
+     * Хэши фрагментов, уже записанных в llm_prompt_fragments, с датой последнего обновления last_used_at —
+     * чтобы не повторять вставки и обновлять отметку использования не чаще раза в сутки.
+     */
+    private final Map<String, LocalDate> knownFragments = Collections.synchronizedMap(
+            new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LocalDate> eldest) {
+                    return size() > KNOWN_FRAGMENTS_LIMIT;
+                }
+            });
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public LlmRequestLogWriter(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               PromptCompactor promptCompactor,
+                               MeterRegistry meterRegistry,
+                               @Value("${llm-request-log.queue-capacity:10000}") int queueCapacity,
+                               @Value("${llm-request-log.batch-size:200}") int batchSize,
+                               @Value("${llm-request-log.flush-interval:500ms}") Duration flushInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.promptCompactor = promptCompactor;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+
+        this.writtenCounter = Counter.builder("llm.request_log.written")
+                .description("Записи журнала вызовов LLM, сохраненные в БД")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("llm.request_log.dropped")
+                .description("Записи журнала вызовов LLM, отброшенные из-за переполнения очереди")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("llm.request_log.failed")
+                .description("Записи журнала вызовов LLM, которые не удалось сохранить")
+                .register(meterRegistry);
+        this.originalBytesCounter = Counter.builder("llm.request_log.bytes")
+                .description("Объем промптов и ответов журнала вызовов LLM")
+                .tag("kind", "original")
+                .register(meterRegistry);
+        this.storedBytesCounter = Counter.builder("llm.request_log.bytes")
+                .description("Объем промптов и ответов журнала вызовов LLM")
+                .tag("kind", "stored")
+                .register(meterRegistry);
+        Gauge.builder("llm.request_log.queue_size", queue, BlockingQueue::size)
+                .description("Записи журнала вызовов LLM, ожидающие записи в БД")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ставит запись в очередь без ожидания; при переполнении запись отбрасывается.
+     */
+    public void enqueue(Entry entry) {
+        if (!running) {
+            write(List.of(entry));
+            return;
+        }
+        if (!queue.offer(entry)) {
+            droppedCounter.increment();
+            droppedSinceLastFlush.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::writeLoop, "llm-request-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (writerThread != null) {
+            try {
+                writerThread.join(flushInterval.multipliedBy(2).toMillis() + 10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<Entry> batch = new ArrayList<>(batchSize);
+        int drained = 0;
+        while (queue.drainTo(batch, batchSize) > 0) {
+            drained += batch.size();
+            write(batch);
+            batch.clear();
+        }
+        log.info("Журнал вызовов LLM остановлен, при остановке дописано {} записей", drained);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Останавливается после веб-сервера; записи от воркеров, которые еще завершают вызовы LLM, после остановки пишутся синхронно.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Entry first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+            long dropped = droppedSinceLastFlush.getAndSet(0);
+            if (dropped > 0) {
+                log.warn("Очередь журнала вызовов LLM переполнена: отброшено {} записей", dropped);
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) {
+        List<Row> rows = batch.stream().map(this::toRow).toList();
+        LocalDate today = LocalDate.now();
+        Map<String, StoredFragment> newFragments = new LinkedHashMap<>();
+        for (Row row : rows) {
+            for (PromptCompactor.Fragment fragment : row.fragments()) {
+                LocalDate touched = knownFragments.get(fragment.hash());
+                // Давно не использованный фрагмент мог быть удален очисткой, поэтому он вставляется заново, а не обновляется
+                if ((touched == null || touched.isBefore(today)) && !newFragments.containsKey(fragment.hash())) {
+                    newFragments.put(fragment.hash(), new StoredFragment(fragment.hash(),
+                            PromptCompactor.compress(fragment.content()), fragment.content().length()));
+                }
+            }
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!newFragments.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_FRAGMENT_SQL, newFragments.values(), newFragments.size(), this::bindFragment);
+                }
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), this::bind);
+            });
+            newFragments.keySet().forEach(hash -> knownFragments.put(hash, today));
+            writtenCounter.increment(batch.size());
+            recordBytes(rows, newFragments.values());
+            log.debug("В журнал вызовов LLM записано {} записей", batch.size());
+        } catch (DataAccessException e) {
+            if (batch.size() == 1) {
+                failedCounter.increment();
+                log.error("Не удалось сохранить запись журнала вызовов LLM: {}", e.getMessage());
+                return;
+            }
+            log.warn("Пакет из {} записей журнала вызовов LLM не сохранен, запись по одной: {}", batch.size(), e.getMessage());
+            for (Entry entry : batch) {
+                write(List.of(entry));
+            }
+        }
+    }
+
+    private Row toRow(Entry entry) {
+        if (entry.prompt() == null) {
+            return new Row(entry, null, PromptCompactor.compress(entry.response()), List.of());
+        }
+        PromptCompactor.Compacted prompt = promptCompactor.compact(entry.prompt());
+        return new Row(entry, prompt.recipe(), PromptCompactor.compress(entry.response()), prompt.fragments());
+    }
+
+    private void recordBytes(List<Row> rows, Collection<StoredFragment> newFragments) {
+        long original = 0;
+        long stored = 0;
+        for (Row row : rows) {
+            original += utf8Length(row.entry().prompt()) + utf8Length(row.entry().response());
+            stored += length(row.prompt()) + length(row.response());
+        }
+        for (StoredFragment fragment : newFragments) {
+            stored += fragment.content().length;
+        }
+        originalBytesCounter.increment(original);
+        storedBytesCounter.increment(stored);
+    }
+
+    private static long utf8Length(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static long length(byte[] data) {
+        return data == null ? 0 : data.length;
+    }
+
+    private void bindFragment(PreparedStatement ps, StoredFragment fragment) throws SQLException {
+        ps.setString(1, fragment.hash());
+        ps.setBytes(2, fragment.content());
+        ps.setInt(3, fragment.originalLength());
+    }
+
+    private void bind(PreparedStatement ps, Row row) throws SQLException {
+        Entry entry = row.entry();
+        ps.setObject(1, UUID.randomUUID());
+        ps.setTimestamp(2, Timestamp.valueOf(entry.timestamp()));
+        ps.setBytes(3, row.prompt());
+        ps.setBytes(4, row.response());
+        ps.setObject(5, entry.promptTokens(), Types.BIGINT);
+        ps.setObject(6, entry.completionTokens(), Types.BIGINT);
+        ps.setObject(7, entry.totalTokens(), Types.BIGINT);
+        ps.setObject(8, entry.responseTimeMs(), Types.BIGINT);
+        ps.setString(9, entry.modelName());
+        ps.setBoolean(10, entry.cached());
+        ps.setObject(11, entry.chatMessageId(), Types.OTHER);
+        ps.setString(12, entry.family() == null ? null : entry.family().name());
+    }
+}
@@ -0,0 +1,196 @@
+package org.nobilis.nobichat.service.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.llm.LLMResponseDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Кэш ответов LLM по точному совпадению промпта.
+ * Ключ — SHA-256 от отпечатка модели с параметрами генерации и текста промпта. Первый уровень — LRU в памяти,
+ * второй — Redis (общий для всех экземпляров). TTL задается по семействам промптов; семейства без TTL
+ * (в частности, обогащение сценария) не кэшируются. Одновременные одинаковые промпты разделяют
+ * один вызов провайдера. Ответы с ошибкой не кэшируются.
+ */
+@Slf4j
+@Component
+public class LlmResponseCache {
+
+    private static final String REDIS_KEY_PREFIX = "nobichat:llm-cache:";
+
+    public record Result(LLMResponseDto response, boolean cached) {
+    }
+
+    private record Entry(LLMResponseDto response, long expiresAt) {
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final Map<PromptFamily, Duration> ttls = new EnumMap<>(PromptFamily.class);
+    private final Map<String, Entry> localCache;
+    private final ConcurrentHashMap<String, CompletableFuture<LLMResponseDto>> inFlight = new ConcurrentHashMap<>();
+
+    public LlmResponseCache(StringRedisTemplate redisTemplate,
+                            ObjectMapper objectMapper,
+                            @Value("${llm-cache.enabled:true}") boolean enabled,
+                            @Value("${llm-cache.redis.enabled:true}") boolean redisEnabled,
+                            @Value("${llm-cache.local.max-entries:2000}") int maxEntries,
+                            @Value("#{${llm-cache.ttl}}") Map<String, String> ttlByFamily) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.redisEnabled = redisEnabled;
+        ttlByFamily.forEach((family, ttl) -> ttls.put(PromptFamily.valueOf(family), DurationStyle.detectAndParse(ttl)));
+        this.localCache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        log.info("Кэш ответов LLM: enabled={}, redis={}, TTL по семействам: {}", enabled, redisEnabled, ttls);
+    }
+
+    /**
+     * Возвращает ответ из кэша или выполняет вызов LLM, объединяя одновременные одинаковые запросы.
+     *
+     * @param family  семейство промпта
+     * @param options отпечаток модели и параметров генерации, см. {@link org.nobilis.nobichat.service.LLMService#optionsFingerprint}
+     * @param prompt  текст промпта
+     * @param loader  вызов провайдера
+     * @return ответ и признак того, что он получен без собственного вызова провайдера
+     */
+    public Result getOrLoad(PromptFamily family, String options, String prompt, Supplier<LLMResponseDto> loader) {
+        return getOrLoad(family, options, prompt, loader, response -> true);
+    }
+
+    /**
+     * То же, что {@link #getOrLoad(PromptFamily, String, String, Supplier)}, но ответ сохраняется в кэш,
+     * только если его признал полным {@code complete}: так неполный ответ (например, потоковая генерация,
+     * остановленная досрочно) не подменяет полный при следующих обращениях. Одновременные ожидающие
+     * вызовы получают ответ в любом случае.
+     */
+    public Result getOrLoad(PromptFamily family, String options, String prompt, Supplier<LLMResponseDto> loader,
+                            Predicate<LLMResponseDto> complete) {
+        Duration ttl = ttls.get(family);
+        if (!enabled || ttl == null) {
+            return new Result(loader.get(), false);
+        }
+
+        String key = key(options, prompt);
+        LLMResponseDto cached = lookup(key);
+        if (cached != null) {
+            return new Result(cached, true);
+        }
+
+        CompletableFuture<LLMResponseDto> own = new CompletableFuture<>();
+        CompletableFuture<LLMResponseDto> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            log.debug("Промпт {} уже выполняется, ожидаем общий результат.", key);
+            try {
+                return new Result(existing.join(), true);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            LLMResponseDto response = loader.get();
+            if (isCacheable(response) && complete.test(response)) {
+                store(key, response, ttl);
+            }
+            own.complete(response);
+            return new Result(response, false);
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private LLMResponseDto lookup(String key) {
+        synchronized (localCache) {
+            Entry entry = localCache.get(key);
+            if (entry != null) {
+                if (entry.expiresAt() > System.currentTimeMillis()) {
+                    return entry.response();
+                }
+                localCache.remove(key);
+            }
+        }
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(REDIS_KEY_PREFIX + key);
+            if (json == null) {
+                return null;
+            }
+            LLMResponseDto response = objectMapper.readValue(json, LLMResponseDto.class);
+            Long ttlMs = redisTemplate.getExpire(REDIS_KEY_PREFIX + key, TimeUnit.MILLISECONDS);
+            if (ttlMs != null && ttlMs > 0) {
+                putLocal(key, response, ttlMs);
+            }
+            return response;
+        } catch (Exception e) {
+            log.warn("Не удалось прочитать ответ LLM из Redis: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(String key, LLMResponseDto response, Duration ttl) {
+        putLocal(key, response, ttl.toMillis());
+        if (!redisEnabled) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(REDIS_KEY_PREFIX + key, objectMapper.writeValueAsString(response), ttl);
+        } catch (Exception e) {
+            log.warn("Не удалось сохранить ответ LLM в Redis: {}", e.getMessage());
+        }
+    }
+
+    private void putLocal(String key, LLMResponseDto response, long ttlMs) {
+        synchronized (localCache) {
+            localCache.put(key, new Entry(response, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    private boolean isCacheable(LLMResponseDto response) {
+        return response != null
+                && response.getContent() != null
+                && !response.getContent().isBlank()
+                && !response.getContent().startsWith("Error:");
+    }
+
+    private String key(String options, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((options + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.nobilis.nobichat.service.llm;
+
+import java.util.Arrays;
+
+/**
+ * Скользящее окно последних вызовов одной модели: задержки и признаки ошибок.
+ * Используется маршрутизатором для оценки p95 и доли ошибок.
+ */
+class ModelLatencyWindow {
+
+    private final long[] latenciesMs;
+    private final boolean[] failures;
+    private int next;
+    private int size;
+
+    ModelLatencyWindow(int capacity) {
+        this.latenciesMs = new long[capacity];
+        this.failures = new boolean[capacity];
+    }
+
+    synchronized void record(long latencyMs, boolean failed) {
+        latenciesMs[next] = latencyMs;
+        failures[next] = failed;
+        next = (next + 1) % latenciesMs.length;
+        size = Math.min(size + 1, latenciesMs.length);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return p95 задержки успешных вызовов в миллисекундах или -1, если успешных вызовов нет
+     */
+    synchronized long p95() {
+        long[] successful = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!failures[i]) {
+                successful[count++] = latenciesMs[i];
+            }
+        }
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(successful, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(0.95 * count);
+        return sorted[Math.min(Math.max(rank - 1, 0), count - 1)];
+    }
+
+    synchronized double errorRate() {
+        if (size == 0) {
+            return 0;
+        }
+        int errors = 0;
+        for (int i = 0; i < size; i++) {
+            if (failures[i]) {
+                errors++;
+            }
+        }
+        return (double) errors / size;
+    }
+}
@@ -0,0 +1,186 @@
+package org.nobilis.nobichat.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Компактное представление промптов для журнала вызовов LLM.
+ * <p>
+ * Промпт разбивается на секции по строкам-заголовкам вида {@code [TASK]}. Секции статических шаблонов
+ * и контекста (роль, схема, примеры, каталог сценариев, онтология) не короче min-fragment-length
+ * выносятся во фрагменты, адресуемые SHA-256 от содержимого, и хранятся один раз. В записи журнала
+ * остается «рецепт»: ссылки на фрагменты и текст переменных секций (запрос пользователя, текущее
+ * состояние сценария), сжатый Deflate. Фрагменты и ответы модели тоже хранятся сжатыми.
+ */
+@Component
+public class PromptCompactor {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte SEGMENT_TEXT = 0;
+    private static final byte SEGMENT_FRAGMENT = 1;
+
+    private static final Pattern SECTION_HEADER = Pattern.compile("(?m)^\\[[A-Z][A-Z ]*]$");
+
+    /**
+     * Секции, содержимое которых уникально для каждого вызова: они остаются в записи журнала.
+     */
+    private static final Set<String> VARIABLE_SECTIONS = Set.of("[USER REQUEST]", "[USER INPUT]", "[CURRENT STATE]", "[RESPONSE]");
+
+    public record Fragment(String hash, String content) {
+    }
+
+    /**
+     * @param recipe    сжатый рецепт промпта
+     * @param fragments фрагменты, на которые ссылается рецепт
+     */
+    public record Compacted(byte[] recipe, List<Fragment> fragments) {
+    }
+
+    private final int minFragmentLength;
+
+    public PromptCompactor(@Value("${llm-request-log.min-fragment-length:200}") int minFragmentLength) {
+        this.minFragmentLength = minFragmentLength;
+    }
+
+    public Compacted compact(String prompt) {
+        List<Fragment> fragments = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(FORMAT_VERSION);
+            for (String section : splitSections(prompt)) {
+                if (isFragment(section)) {
+                    Fragment fragment = new Fragment(sha256(section), section);
+                    fragments.add(fragment);
+                    out.writeByte(SEGMENT_FRAGMENT);
+                    writeString(out, fragment.hash());
+                } else {
+                    out.writeByte(SEGMENT_TEXT);
+                    writeString(out, section);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Compacted(bytes.toByteArray(), fragments);
+    }
+
+    /**
+     * @param recipe         сжатый рецепт из {@link #compact(String)}
+     * @param fragmentLookup содержимое фрагмента по хэшу
+     * @return исходный текст промпта
+     */
+    public String rebuild(byte[] recipe, Function<String, String> fragmentLookup) {
+        StringBuilder prompt = new StringBuilder();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(recipe)))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Неизвестная версия формата промпта: " + version);
+            }
+            int type;
+            while ((type = in.read()) != -1) {
+                String value = readString(in);
+                if (type == SEGMENT_FRAGMENT) {
+                    String fragment = fragmentLookup.apply(value);
+                    if (fragment == null) {
+                        throw new IllegalStateException("Фрагмент промпта " + value + " не найден");
+                    }
+                    prompt.append(fragment);
+                } else {
+                    prompt.append(value);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return prompt.toString();
+    }
+
+    public static byte[] compress(String text) {
+        if (text == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static String decompress(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<String> splitSections(String prompt) {
+        List<String> sections = new ArrayList<>();
+        Matcher matcher = SECTION_HEADER.matcher(prompt);
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.start() > start) {
+                sections.add(prompt.substring(start, matcher.start()));
+            }
+            start = matcher.start();
+        }
+        if (start < prompt.length()) {
+            sections.add(prompt.substring(start));
+        }
+        return sections;
+    }
+
+    private boolean isFragment(String section) {
+        if (section.length() < minFragmentLength) {
+            return false;
+        }
+        int lineEnd = section.indexOf('\n');
+        String header = lineEnd < 0 ? section : section.substring(0, lineEnd);
+        return !VARIABLE_SECTIONS.contains(header);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
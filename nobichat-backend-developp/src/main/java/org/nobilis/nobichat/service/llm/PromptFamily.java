@@ -0,0 +1,35 @@
+package org.nobilis.nobichat.service.llm;
+
+/**
+ * Семейство промпта — по нему настраиваются кэширование, приоритеты и маршрутизация вызовов LLM.
+ */
+public enum PromptFamily {
+    /**
+     * Классификация команды главного меню.
+     */
+    FREE,
+    /**
+     * Классификация команды в режиме конструктора.
+     */
+    CONSTRUCTOR,
+    /**
+     * Классификация команды в режиме исполнения сценария.
+     */
+    EXECUTION,
+    /**
+     * Классификация команды в режиме просмотра.
+     */
+    PREVIEW,
+    /**
+     * Проверка, является ли команда редактированием сценария.
+     */
+    IS_EDIT,
+    /**
+     * Генерация/обогащение определения сценария.
+     */
+    ENRICHMENT,
+    /**
+     * Прочие вызовы.
+     */
+    OTHER
+}
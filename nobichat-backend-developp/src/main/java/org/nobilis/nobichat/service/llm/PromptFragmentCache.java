@@ -0,0 +1,69 @@
+package org.nobilis.nobichat.service.llm;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.events.event.ScenarioCatalogueChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Мемоизация редко меняющихся фрагментов промптов (каталог сценариев и т.п.).
+ * Фрагмент хранится вместе с версией источника, по которой он построен, и перестраивается
+ * при смене версии. Версия каталога сценариев увеличивается по {@link ScenarioCatalogueChangedEvent};
+ * так как событие локально для узла, изменения, сделанные на другой реплике, подхватываются
+ * по истечении TTL.
+ */
+@Slf4j
+@Component
+public class PromptFragmentCache {
+
+    private record Fragment(Object version, long builtAt, String text) {
+    }
+
+    private final Duration ttl;
+    private final Map<String, Fragment> fragments = new ConcurrentHashMap<>();
+    private final AtomicLong catalogueVersion = new AtomicLong();
+
+    public PromptFragmentCache(@Value("${prompt-fragments.ttl:10m}") Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param name    имя фрагмента
+     * @param version версия источника, по которой строится фрагмент
+     * @param builder построение фрагмента
+     * @return сохраненный фрагмент той же версии, не старше TTL, либо построенный заново
+     */
+    public String get(String name, Object version, Supplier<String> builder) {
+        long now = System.currentTimeMillis();
+        Fragment fragment = fragments.get(name);
+        if (fragment != null && Objects.equals(fragment.version(), version) && now - fragment.builtAt() < ttl.toMillis()) {
+            return fragment.text();
+        }
+        String text = builder.get();
+        fragments.put(name, new Fragment(version, now, text));
+        log.debug("Фрагмент промпта '{}' построен для версии {}", name, version);
+        return text;
+    }
+
+    /**
+     * @return локальная версия каталога опубликованных сценариев
+     */
+    public long getCatalogueVersion() {
+        return catalogueVersion.get();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onScenarioCatalogueChanged(ScenarioCatalogueChangedEvent event) {
+        long version = catalogueVersion.incrementAndGet();
+        log.info("Каталог сценариев изменен (сценарий {}), версия фрагментов промптов: {}", event.getScenarioId(), version);
+    }
+}
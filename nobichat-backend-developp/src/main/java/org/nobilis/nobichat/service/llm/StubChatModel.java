@@ -0,0 +1,353 @@
+package org.nobilis.nobichat.service.llm;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Офлайн-заглушка LLM для нагрузочных прогонов (профиль llm-stub): подменяет модель провайдера,
+ * поэтому весь конвейер — очередь допуска, лимитер, маршрутизация, кэш, журнал вызовов — работает как обычно,
+ * но без обращений к OpenRouter.
+ * <p>
+ * Семейство промпта определяется по секции [ROLE], запрос пользователя — по [USER REQUEST]/[USER INPUT].
+ * Режимы ({@link StubChatModelProperties.Mode}): воспроизведение ответов из llm_request_log, детерминированные
+ * правила и правила со случайной задержкой и числом токенов. Потоковые вызовы отдают ответ фрагментами,
+ * распределяя ту же задержку между первым фрагментом и остальными.
+ */
+@Slf4j
+@Component
+@Primary
+@Profile("llm-stub")
+public class StubChatModel implements ChatModel {
+
+    private static final String DEFAULT_MODEL = "llm-stub";
+
+    private static final Map<String, PromptFamily> ROLE_MARKERS = new LinkedHashMap<>();
+
+    static {
+        ROLE_MARKERS.put("классификатор команд главного меню", PromptFamily.FREE);
+        ROLE_MARKERS.put("классификатор команд редактора сценариев", PromptFamily.CONSTRUCTOR);
+        ROLE_MARKERS.put("классификатор команд в режиме исполнения сценария", PromptFamily.EXECUTION);
+        ROLE_MARKERS.put("классификатор команд режима просмотра", PromptFamily.PREVIEW);
+        ROLE_MARKERS.put("бинарный классификатор намерения редактирования", PromptFamily.IS_EDIT);
+        ROLE_MARKERS.put("JSON-определение бизнес-сценария", PromptFamily.ENRICHMENT);
+    }
+
+    private static final Pattern REQUEST_SECTION = Pattern.compile("(?s)\\[USER (?:REQUEST|INPUT)]\\n(.*?)\\n+\\[RESPONSE]");
+    private static final Pattern QUOTED_INPUT = Pattern.compile("(?s)>\\s*\"(.*)\"\\s*$");
+    private static final Pattern CURRENT_STATE = Pattern.compile("(?s)\\[CURRENT STATE].*?```json\\n(.*?)\\n```");
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{([a-zA-Z][a-zA-Z0-9]*)}}");
+
+    /**
+     * Оценка числа токенов по длине текста (~3 символа на токен для русского текста).
+     */
+    private static final int CHARS_PER_TOKEN = 3;
+
+    private record CompiledRule(Pattern match, Pattern promptMatch, String response, List<String> groups) {
+    }
+
+    private record Recorded(String response, Long responseTimeMs, Long promptTokens, Long completionTokens) {
+    }
+
+    private record Reply(String content, long latencyMs, int promptTokens, int completionTokens) {
+    }
+
+    private final StubChatModelProperties properties;
+    private final LlmRequestLogReader llmRequestLogReader;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Random random;
+    private final Map<PromptFamily, List<CompiledRule>> rules = new EnumMap<>(PromptFamily.class);
+
+    private volatile Map<String, Recorded> recordedByPrompt;
+    private volatile Map<String, Recorded> recordedByRequest;
+
+    public StubChatModel(StubChatModelProperties properties,
+                         LlmRequestLogReader llmRequestLogReader,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.llmRequestLogReader = llmRequestLogReader;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.random = new Random(properties.getSeed());
+        for (PromptFamily family : PromptFamily.values()) {
+            rules.put(family, properties.rulesFor(family).stream().map(StubChatModel::compile).toList());
+        }
+        log.warn("Вызовы LLM обслуживает заглушка в режиме {}", properties.getMode());
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        Reply reply = reply(prompt.getContents());
+        sleep(reply.latencyMs());
+        return response(modelName(prompt), reply.content(), reply);
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            Reply reply = reply(prompt.getContents());
+            String model = modelName(prompt);
+            List<String> chunks = split(reply.content(), Math.max(1, properties.getStreamChunkSize()));
+            long firstDelay = (long) (reply.latencyMs() * properties.getTimeToFirstTokenFraction());
+            long chunkDelay = chunks.size() > 1 ? (reply.latencyMs() - firstDelay) / (chunks.size() - 1) : 0;
+            return Flux.range(0, chunks.size())
+                    .concatMap(i -> Mono.just(i == chunks.size() - 1
+                                    ? response(model, chunks.get(i), reply)
+                                    : response(model, chunks.get(i), null))
+                            .delayElement(Duration.ofMillis(i == 0 ? firstDelay : chunkDelay)));
+        });
+    }
+
+    private Reply reply(String prompt) {
+        PromptFamily family = detectFamily(prompt);
+        String request = extractRequest(prompt);
+        int promptTokens = Math.max(1, prompt.length() / CHARS_PER_TOKEN);
+
+        if (properties.getMode() == StubChatModelProperties.Mode.REPLAY) {
+            ensureRecordedLoaded();
+            Recorded recorded = recordedByPrompt.get(PromptCompactor.sha256(prompt));
+            String source = "replay_prompt";
+            if (recorded == null && request != null) {
+                recorded = recordedByRequest.get(requestKey(family, request));
+                source = "replay_request";
+            }
+            if (recorded != null) {
+                count(family, source);
+                long latency = (long) (valueOr(recorded.responseTimeMs(), 0L) * properties.getReplay().getLatencyScale());
+                return new Reply(recorded.response(), latency,
+                        (int) (long) valueOr(recorded.promptTokens(), (long) promptTokens),
+                        (int) (long) valueOr(recorded.completionTokens(), (long) tokens(recorded.response())));
+            }
+        }
+
+        String content = applyRules(family, prompt, request);
+        count(family, "rules");
+        StubChatModelProperties.Distribution latency = properties.latencyFor(family);
+        if (properties.getMode() != StubChatModelProperties.Mode.SYNTHETIC) {
+            return new Reply(content, latency.getMedian().toMillis(), promptTokens, tokens(content));
+        }
+
+        if (nextDouble() < properties.getErrorRate()) {
+            sleep(sampleLogNormal(latency.getMedian().toMillis(), latency.getP95().toMillis()));
+            throw new TransientAiException("Искусственная ошибка заглушки LLM (семейство " + family + ")");
+        }
+        StubChatModelProperties.TokenDistribution tokens = properties.completionTokensFor(family);
+        return new Reply(content,
+                sampleLogNormal(latency.getMedian().toMillis(), latency.getP95().toMillis()),
+                promptTokens,
+                (int) Math.max(1, sampleLogNormal(tokens.getMedian(), tokens.getP95())));
+    }
+
+    private String applyRules(PromptFamily family, String prompt, String request) {
+        for (CompiledRule rule : rules.get(family)) {
+            Matcher matcher = null;
+            if (rule.match() != null) {
+                if (request == null) {
+                    continue;
+                }
+                matcher = rule.match().matcher(request);
+                if (!matcher.find()) {
+                    continue;
+                }
+            }
+            if (rule.promptMatch() != null && !rule.promptMatch().matcher(prompt).find()) {
+                continue;
+            }
+            Map<String, String> values = new HashMap<>();
+            values.put("request", jsonEscape(request == null ? "" : request));
+            Matcher state = CURRENT_STATE.matcher(prompt);
+            values.put("currentState", state.find() ? state.group(1) : "{}");
+            if (matcher != null) {
+                for (String group : rule.groups()) {
+                    String value = matcher.group(group);
+                    values.put(group, jsonEscape(value == null ? "" : value.trim()));
+                }
+            }
+            return PLACEHOLDER.matcher(rule.response())
+                    .replaceAll(m -> Matcher.quoteReplacement(values.getOrDefault(m.group(1), m.group())));
+        }
+        return "{}";
+    }
+
+    private void ensureRecordedLoaded() {
+        if (recordedByPrompt != null) {
+            return;
+        }
+        synchronized (this) {
+            if (recordedByPrompt != null) {
+                return;
+            }
+            StubChatModelProperties.Replay replay = properties.getReplay();
+            LocalDateTime until = replay.getUntil();
+            Map<String, Recorded> byPrompt = new HashMap<>();
+            Map<String, Recorded> byRequest = new HashMap<>();
+            llmRequestLogReader.forEachSince(LocalDateTime.now().minusDays(replay.getSinceDays()), row -> {
+                if (byPrompt.size() >= replay.getMaxEntries() || row.getPrompt() == null || row.getResponse() == null
+                        || row.getResponse().startsWith("Error:") || Boolean.TRUE.equals(row.getCached())
+                        || (until != null && row.getTimestamp() != null && row.getTimestamp().isAfter(until))) {
+                    return;
+                }
+                Recorded recorded = new Recorded(row.getResponse(), row.getResponseTimeMs(),
+                        row.getPromptTokens(), row.getCompletionTokens());
+                byPrompt.put(PromptCompactor.sha256(row.getPrompt()), recorded);
+                String request = extractRequest(row.getPrompt());
+                if (request != null) {
+                    byRequest.put(requestKey(detectFamily(row.getPrompt()), request), recorded);
+                }
+            });
+            log.info("Заглушка LLM: загружено {} записанных ответов ({} уникальных запросов)", byPrompt.size(), byRequest.size());
+            recordedByRequest = byRequest;
+            recordedByPrompt = byPrompt;
+        }
+    }
+
+    private ChatResponse response(String model, String content, Reply usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model(model);
+        if (usage != null) {
+            metadata.usage(new DefaultUsage(usage.promptTokens(), usage.completionTokens(),
+                    usage.promptTokens() + usage.completionTokens()));
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(content))), metadata.build());
+    }
+
+    private void count(PromptFamily family, String source) {
+        Counter.builder("llm.stub.responses")
+                .description("Ответы заглушки LLM по источнику")
+                .tag("family", family.name().toLowerCase())
+                .tag("source", source)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private long sampleLogNormal(long median, long p95) {
+        if (median <= 0) {
+            return 0;
+        }
+        double mu = Math.log(median);
+        double sigma = p95 > median ? (Math.log(p95) - mu) / 1.645 : 0;
+        double gaussian;
+        synchronized (random) {
+            gaussian = random.nextGaussian();
+        }
+        return Math.round(Math.exp(mu + sigma * gaussian));
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private String jsonEscape(String value) {
+        try {
+            String quoted = objectMapper.writeValueAsString(value);
+            return quoted.substring(1, quoted.length() - 1);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CompiledRule compile(StubChatModelProperties.Rule rule) {
+        List<String> groups = new ArrayList<>();
+        if (rule.getMatch() != null) {
+            Matcher matcher = NAMED_GROUP.matcher(rule.getMatch());
+            while (matcher.find()) {
+                groups.add(matcher.group(1));
+            }
+        }
+        return new CompiledRule(
+                rule.getMatch() == null ? null : Pattern.compile(rule.getMatch()),
+                rule.getPromptMatch() == null ? null : Pattern.compile(rule.getPromptMatch()),
+                rule.getResponse() == null ? "{}" : rule.getResponse(),
+                groups);
+    }
+
+    private static PromptFamily detectFamily(String prompt) {
+        return ROLE_MARKERS.entrySet().stream()
+                .filter(e -> prompt.contains(e.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(PromptFamily.OTHER);
+    }
+
+    private static String extractRequest(String prompt) {
+        Matcher matcher = REQUEST_SECTION.matcher(prompt);
+        if (!matcher.find()) {
+            return null;
+        }
+        String section = matcher.group(1).trim();
+        Matcher quoted = QUOTED_INPUT.matcher(section);
+        return quoted.find() ? quoted.group(1) : section;
+    }
+
+    private static String requestKey(PromptFamily family, String request) {
+        return family + "|" + request.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String modelName(Prompt prompt) {
+        return prompt.getOptions() != null && prompt.getOptions().getModel() != null
+                ? prompt.getOptions().getModel() : DEFAULT_MODEL;
+    }
+
+    private static List<String> split(String content, int chunkSize) {
+        if (content.isEmpty()) {
+            return List.of("");
+        }
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < content.length(); i += chunkSize) {
+            chunks.add(content.substring(i, Math.min(content.length(), i + chunkSize)));
+        }
+        return chunks;
+    }
+
+    private static int tokens(String text) {
+        return Math.max(1, text.length() / CHARS_PER_TOKEN);
+    }
+
+    private static <T> T valueOr(T value, T fallback) {
+        return value != null ? value : fallback;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание заглушки LLM прервано", e);
+        }
+    }
+}
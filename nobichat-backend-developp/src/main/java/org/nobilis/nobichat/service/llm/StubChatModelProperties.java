@@ -0,0 +1,152 @@
+package org.nobilis.nobichat.service.llm;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Настройки {@link StubChatModel} (префикс llm-stub), см. application-llm-stub.yml.
+ */
+@Data
+@Component
+@Profile("llm-stub")
+@ConfigurationProperties(prefix = "llm-stub")
+public class StubChatModelProperties {
+
+    public enum Mode {
+        /**
+         * Ответы из llm_request_log по совпадению промпта или запроса пользователя, задержка — записанная.
+         */
+        REPLAY,
+        /**
+         * Ответы по правилам, фиксированная задержка (медиана распределения семейства).
+         */
+        RULES,
+        /**
+         * Ответы по правилам, задержка и число токенов — случайные из заданных распределений.
+         */
+        SYNTHETIC
+    }
+
+    private Mode mode = Mode.RULES;
+
+    /**
+     * Зерно генератора для режима SYNTHETIC.
+     */
+    private long seed = 42;
+
+    /**
+     * Доля вызовов, завершающихся ошибкой (режим SYNTHETIC).
+     */
+    private double errorRate = 0.0;
+
+    /**
+     * Доля задержки до первого фрагмента потокового ответа.
+     */
+    private double timeToFirstTokenFraction = 0.3;
+
+    /**
+     * Размер фрагмента потокового ответа в символах.
+     */
+    private int streamChunkSize = 16;
+
+    private Distribution defaultLatency = new Distribution(Duration.ofMillis(800), Duration.ofMillis(2500));
+
+    private Map<PromptFamily, Distribution> latency = new EnumMap<>(PromptFamily.class);
+
+    /**
+     * Распределение числа токенов ответа (режим SYNTHETIC); в остальных режимах токены оцениваются по длине текста.
+     */
+    private TokenDistribution defaultCompletionTokens = new TokenDistribution(40, 400);
+
+    private Map<PromptFamily, TokenDistribution> completionTokens = new EnumMap<>(PromptFamily.class);
+
+    private Replay replay = new Replay();
+
+    /**
+     * Правила по семействам: выбирается первое правило, у которого совпали все заданные условия.
+     */
+    private Map<PromptFamily, List<Rule>> rules = new EnumMap<>(PromptFamily.class);
+
+    /**
+     * Логнормальное распределение, заданное медианой и 95-м перцентилем.
+     */
+    @Data
+    public static class Distribution {
+        private Duration median;
+        private Duration p95;
+
+        public Distribution() {
+        }
+
+        public Distribution(Duration median, Duration p95) {
+            this.median = median;
+            this.p95 = p95;
+        }
+    }
+
+    @Data
+    public static class TokenDistribution {
+        private int median;
+        private int p95;
+
+        public TokenDistribution() {
+        }
+
+        public TokenDistribution(int median, int p95) {
+            this.median = median;
+            this.p95 = p95;
+        }
+    }
+
+    @Data
+    public static class Replay {
+        /**
+         * Окно записей llm_request_log, из которых берутся ответы. Верхнюю границу стоит задать,
+         * чтобы в источник не попали ответы, записанные предыдущими прогонами с заглушкой.
+         */
+        private int sinceDays = 30;
+        private LocalDateTime until;
+        private int maxEntries = 50_000;
+        /**
+         * Множитель записанной задержки: 0 — отвечать сразу.
+         */
+        private double latencyScale = 1.0;
+    }
+
+    @Data
+    public static class Rule {
+        /**
+         * Регулярное выражение по тексту запроса пользователя; именованные группы доступны в ответе как {{имя}}.
+         */
+        private String match;
+        /**
+         * Регулярное выражение по всему промпту.
+         */
+        private String promptMatch;
+        /**
+         * Текст ответа. Подстановки: {{request}} — запрос пользователя, {{currentState}} — JSON из [CURRENT STATE].
+         */
+        private String response;
+    }
+
+    public Distribution latencyFor(PromptFamily family) {
+        return latency.getOrDefault(family, defaultLatency);
+    }
+
+    public TokenDistribution completionTokensFor(PromptFamily family) {
+        return completionTokens.getOrDefault(family, defaultCompletionTokens);
+    }
+
+    public List<Rule> rulesFor(PromptFamily family) {
+        return rules.getOrDefault(family, new ArrayList<>());
+    }
+}
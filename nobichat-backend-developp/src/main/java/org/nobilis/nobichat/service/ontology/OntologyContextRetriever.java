@@ -0,0 +1,202 @@
+package org.nobilis.nobichat.service.ontology;
+
+import lombok.extern.slf4j.Slf4j;
+import org.nobilis.nobichat.dto.ontology.OntologyDto;
+import org.nobilis.nobichat.service.OntologyService;
+import org.nobilis.nobichat.util.text.RussianTextNormalizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Отбор фрагмента онтологии для промпта конструктора сценариев.
+ * <p>
+ * По онтологии строится лексический индекс: для каждой сущности — основы слов из ее технического
+ * имени, userFriendlyName и синонимов (вес {@value #ENTITY_TERM_WEIGHT}), а также из имен, названий
+ * и синонимов полей (вес 1). Запрос пользователя оценивается по сумме весов совпавших основ с
+ * поправкой на редкость основы (IDF). Сущности текущего черновика включаются всегда, затем — лучшие
+ * по оценке, пока не набрано top-k сущностей или не исчерпан бюджет токенов. Остальные сущности
+ * перечисляются одной строкой без полей, если на это хватает бюджета.
+ * <p>
+ * Индекс перестраивается только при смене версии онтологии.
+ */
+@Slf4j
+@Component
+public class OntologyContextRetriever {
+
+    private static final int ENTITY_TERM_WEIGHT = 3;
+
+    /**
+     * Грубая оценка для смешанного русско-английского текста: около трех символов на токен.
+     */
+    private static final double CHARS_PER_TOKEN = 3.0;
+
+    private record IndexedEntity(String name, String line, String catalogueEntry, Map<String, Integer> termWeights) {
+    }
+
+    private record Index(Instant version, Map<String, IndexedEntity> entities, Map<String, Double> idf) {
+    }
+
+    private final OntologyService ontologyService;
+    private final int topK;
+    private final int maxTokens;
+
+    private volatile Index index;
+
+    public OntologyContextRetriever(OntologyService ontologyService,
+                                    @Value("${ontology-context.top-k:8}") int topK,
+                                    @Value("${ontology-context.max-tokens:2500}") int maxTokens) {
+        this.ontologyService = ontologyService;
+        this.topK = topK;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * @param userInput     сообщение пользователя
+     * @param draftEntities технические имена сущностей, уже используемых в черновике
+     * @return текст для блока [ONTOLOGY CONTEXT] в пределах бюджета токенов
+     */
+    public String buildContext(String userInput, Collection<String> draftEntities) {
+        Index current = currentIndex();
+
+        Map<String, Double> scores = new HashMap<>();
+        Set<String> queryTerms = new HashSet<>(RussianTextNormalizer.stems(userInput));
+        for (IndexedEntity entity : current.entities().values()) {
+            double score = 0;
+            for (String term : queryTerms) {
+                Integer weight = entity.termWeights().get(term);
+                if (weight != null) {
+                    score += weight * current.idf().getOrDefault(term, 0.0);
+                }
+            }
+            if (score > 0) {
+                scores.put(entity.name(), score);
+            }
+        }
+
+        LinkedHashSet<String> selected = new LinkedHashSet<>();
+        draftEntities.stream().filter(current.entities()::containsKey).forEach(selected::add);
+        scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed().thenComparing(Map.Entry.<String, Double>comparingByKey()))
+                .map(Map.Entry::getKey)
+                .forEach(selected::add);
+
+        List<String> lines = new ArrayList<>();
+        int usedTokens = 0;
+        int included = 0;
+        for (String name : selected) {
+            if (included >= topK) {
+                break;
+            }
+            String line = current.entities().get(name).line();
+            int lineTokens = estimateTokens(line);
+            if (usedTokens + lineTokens > maxTokens) {
+                break;
+            }
+            lines.add(line);
+            usedTokens += lineTokens;
+            included++;
+        }
+        Set<String> includedNames = new HashSet<>(selected.stream().limit(included).toList());
+
+        String catalogue = current.entities().values().stream()
+                .filter(e -> !includedNames.contains(e.name()))
+                .sorted(Comparator.comparing(IndexedEntity::name))
+                .map(IndexedEntity::catalogueEntry)
+                .collect(Collectors.joining(", "));
+        if (!catalogue.isEmpty()) {
+            String catalogueLine = "Другие сущности (поля по запросу): " + catalogue;
+            if (usedTokens + estimateTokens(catalogueLine) <= maxTokens) {
+                lines.add(catalogueLine);
+                usedTokens += estimateTokens(catalogueLine);
+            }
+        }
+
+        log.debug("Контекст онтологии: {} из {} сущностей, ~{} токенов", included, current.entities().size(), usedTokens);
+        return String.join("\n", lines);
+    }
+
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (int) Math.ceil(text.length() / CHARS_PER_TOKEN);
+    }
+
+    private Index currentIndex() {
+        Instant version = ontologyService.getOntologyVersion();
+        Index current = index;
+        if (current != null && version.equals(current.version())) {
+            return current;
+        }
+        synchronized (this) {
+            if (index == null || !version.equals(index.version())) {
+                index = buildIndex(version, ontologyService.getCurrentOntologySchema());
+                log.info("Индекс онтологии для промптов перестроен: версия {}, {} сущностей", version, index.entities().size());
+            }
+            return index;
+        }
+    }
+
+    private Index buildIndex(Instant version, OntologyDto ontology) {
+        Map<String, IndexedEntity> entities = new HashMap<>();
+        Map<String, Integer> documentFrequency = new HashMap<>();
+
+        for (Map.Entry<String, OntologyDto.EntitySchema> entry : ontology.getEntities().entrySet()) {
+            String name = entry.getKey();
+            OntologyDto.EntitySchema schema = entry.getValue();
+            OntologyDto.Meta meta = Optional.ofNullable(schema.getMeta()).orElse(new OntologyDto.Meta());
+            List<OntologyDto.EntitySchema.FieldSchema> fields = Optional.ofNullable(schema.getFields()).orElse(List.of());
+
+            Map<String, Integer> weights = new HashMap<>();
+            addTerms(weights, ENTITY_TERM_WEIGHT, name, meta.getUserFriendlyName(), meta.getUserFriendlyNamePlural());
+            Optional.ofNullable(meta.getSynonyms()).orElse(List.of())
+                    .forEach(synonym -> addTerms(weights, ENTITY_TERM_WEIGHT, synonym));
+            for (OntologyDto.EntitySchema.FieldSchema field : fields) {
+                addTerms(weights, 1, field.getName(), field.getUserFriendlyName());
+                Optional.ofNullable(field.getSynonyms()).orElse(List.of())
+                        .forEach(synonym -> addTerms(weights, 1, synonym));
+            }
+            weights.keySet().forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+
+            String friendlyName = Optional.ofNullable(meta.getUserFriendlyName()).orElse(name);
+            String fieldList = fields.stream()
+                    .map(f -> f.getName() + " (" + f.getUserFriendlyName() + ")")
+                    .collect(Collectors.joining(", "));
+            entities.put(name, new IndexedEntity(name,
+                    String.format("Сущность: %s (%s). Поля: %s", name, friendlyName, fieldList),
+                    name + " (" + friendlyName + ")",
+                    weights));
+        }
+
+        int total = Math.max(entities.size(), 1);
+        Map<String, Double> idf = new HashMap<>();
+        documentFrequency.forEach((term, df) -> idf.put(term, Math.log(1.0 + (double) total / df)));
+        return new Index(version, entities, idf);
+    }
+
+    /**
+     * Технические имена в camelCase и snake_case разбиваются на слова, чтобы "contactPerson"
+     * совпадало с "contact person".
+     */
+    private void addTerms(Map<String, Integer> weights, int weight, String... texts) {
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            String spaced = text.replaceAll("([a-zа-я])([A-ZА-Я])", "$1 $2").replace('_', ' ');
+            for (String term : RussianTextNormalizer.stems(spaced)) {
+                weights.merge(term, weight, Math::max);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.nobilis.nobichat.util.json;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Инкрементальный разбор JSON-объекта, поступающего из LLM по частям.
+ * Отслеживает только скалярные поля верхнего уровня (строки, числа, true/false, null)
+ * и фиксирует каждое из них, как только его значение полностью получено.
+ * Вложенные объекты и массивы пропускаются, текст вне объекта (например, markdown-ограждение
+ * ```json) игнорируется. Экземпляр не потокобезопасен.
+ */
+public class IncrementalJsonFieldExtractor {
+
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private int unicodeDigitsLeft;
+    private final StringBuilder unicode = new StringBuilder(4);
+    private StringBuilder token;
+    private StringBuilder literal;
+    private String pendingKey;
+    private boolean expectingValue;
+    private boolean closed;
+
+    /**
+     * Обрабатывает очередной фрагмент текста.
+     *
+     * @param chunk фрагмент ответа модели
+     */
+    public void feed(CharSequence chunk) {
+        if (chunk == null) {
+            return;
+        }
+        for (int i = 0; i < chunk.length() && !closed; i++) {
+            process(chunk.charAt(i));
+        }
+    }
+
+    /**
+     * @return поля верхнего уровня, значения которых уже получены полностью
+     */
+    public Map<String, Object> getFields() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    public boolean hasField(String name) {
+        return fields.containsKey(name);
+    }
+
+    /**
+     * @return true, если корневой объект закрыт
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void process(char c) {
+        if (inString) {
+            processStringChar(c);
+            return;
+        }
+        if (literal != null) {
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '+') {
+                literal.append(c);
+                return;
+            }
+            completeLiteral();
+        }
+        switch (c) {
+            case '{', '[' -> {
+                depth++;
+                if (depth == 2 && expectingValue) {
+                    pendingKey = null;
+                    expectingValue = false;
+                }
+            }
+            case '}', ']' -> {
+                depth--;
+                if (depth == 0 && c == '}') {
+                    closed = true;
+                }
+            }
+            case '"' -> {
+                if (depth >= 1) {
+                    inString = true;
+                    token = new StringBuilder();
+                }
+            }
+            case ':' -> {
+                if (depth == 1 && pendingKey != null) {
+                    expectingValue = true;
+                }
+            }
+            case ',' -> {
+                if (depth == 1) {
+                    pendingKey = null;
+                    expectingValue = false;
+                }
+            }
+            default -> {
+                if (depth == 1 && expectingValue && !Character.isWhitespace(c)) {
+                    literal = new StringBuilder().append(c);
+                }
+            }
+        }
+    }
+
+    private void processStringChar(char c) {
+        if (unicodeDigitsLeft > 0) {
+            unicode.append(c);
+            if (--unicodeDigitsLeft == 0) {
+                try {
+                    token.append((char) Integer.parseInt(unicode.toString(), 16));
+                } catch (NumberFormatException e) {
+                    token.append('?');
+                }
+                unicode.setLength(0);
+            }
+            return;
+        }
+        if (escape) {
+            escape = false;
+            switch (c) {
+                case 'n' -> token.append('\n');
+                case 't' -> token.append('\t');
+                case 'r' -> token.append('\r');
+                case 'b' -> token.append('\b');
+                case 'f' -> token.append('\f');
+                case 'u' -> unicodeDigitsLeft = 4;
+                default -> token.append(c);
+            }
+            return;
+        }
+        if (c == '\\') {
+            escape = true;
+        } else if (c == '"') {
+            inString = false;
+            completeString(token.toString());
+        } else {
+            token.append(c);
+        }
+    }
+
+    private void completeString(String value) {
+        if (depth != 1) {
+            return;
+        }
+        if (expectingValue) {
+            fields.put(pendingKey, value);
+            pendingKey = null;
+            expectingValue = false;
+        } else {
+            pendingKey = value;
+        }
+    }
+
+    private void completeLiteral() {
+        String raw = literal.toString();
+        literal = null;
+        Object value;
+        switch (raw) {
+            case "null" -> value = null;
+            case "true" -> value = Boolean.TRUE;
+            case "false" -> value = Boolean.FALSE;
+            default -> {
+                try {
+                    value = new BigDecimal(raw);
+                } catch (NumberFormatException e) {
+                    value = raw;
+                }
+            }
+        }
+        fields.put(pendingKey, value);
+        pendingKey = null;
+        expectingValue = false;
+    }
+}
@@ -0,0 +1,161 @@
+package org.nobilis.nobichat.util.json;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Применение JSON Patch (RFC 6902) к дереву Jackson.
+ * Поддерживаются операции add, remove, replace, move, copy и test. Исходный документ не изменяется:
+ * патч применяется к копии, и при ошибке в любой операции результат отбрасывается целиком.
+ */
+public final class JsonPatchApplier {
+
+    private JsonPatchApplier() {
+    }
+
+    /**
+     * @param target документ
+     * @param patch  массив операций
+     * @return новый документ с примененными операциями
+     * @throws IllegalArgumentException если патч некорректен или не применим к документу
+     */
+    public static JsonNode apply(JsonNode target, JsonNode patch) {
+        if (patch == null || !patch.isArray()) {
+            throw new IllegalArgumentException("JSON Patch должен быть массивом операций.");
+        }
+        JsonNode document = target.deepCopy();
+        int index = 0;
+        for (JsonNode operation : patch) {
+            try {
+                document = applyOperation(document, operation);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Операция #" + index + ": " + e.getMessage(), e);
+            }
+            index++;
+        }
+        return document;
+    }
+
+    private static JsonNode applyOperation(JsonNode document, JsonNode operation) {
+        if (!operation.isObject()) {
+            throw new IllegalArgumentException("операция должна быть объектом");
+        }
+        String op = requiredText(operation, "op");
+        JsonPointer path = pointer(requiredText(operation, "path"));
+
+        return switch (op) {
+            case "add" -> add(document, path, requiredValue(operation));
+            case "remove" -> {
+                remove(document, path);
+                yield document;
+            }
+            case "replace" -> {
+                if (path.matches()) {
+                    yield requiredValue(operation).deepCopy();
+                }
+                remove(document, path);
+                yield add(document, path, requiredValue(operation));
+            }
+            case "move" -> {
+                JsonPointer from = pointer(requiredText(operation, "from"));
+                if (path.toString().startsWith(from.toString() + "/")) {
+                    throw new IllegalArgumentException("нельзя переместить узел внутрь самого себя");
+                }
+                JsonNode value = existing(document, from);
+                remove(document, from);
+                yield add(document, path, value);
+            }
+            case "copy" -> add(document, path, existing(document, pointer(requiredText(operation, "from"))).deepCopy());
+            case "test" -> {
+                if (!existing(document, path).equals(requiredValue(operation))) {
+                    throw new IllegalArgumentException("проверка test не пройдена для " + path);
+                }
+                yield document;
+            }
+            default -> throw new IllegalArgumentException("неизвестная операция '" + op + "'");
+        };
+    }
+
+    private static JsonNode add(JsonNode document, JsonPointer path, JsonNode value) {
+        if (path.matches()) {
+            return value.deepCopy();
+        }
+        JsonNode parent = existing(document, path.head());
+        String key = path.last().getMatchingProperty();
+        if (parent instanceof ObjectNode object) {
+            object.set(key, value.deepCopy());
+        } else if (parent instanceof ArrayNode array) {
+            if ("-".equals(key)) {
+                array.add(value.deepCopy());
+            } else {
+                int position = arrayIndex(key, array.size());
+                array.insert(position, value.deepCopy());
+            }
+        } else {
+            throw new IllegalArgumentException("родитель пути " + path + " не является объектом или массивом");
+        }
+        return document;
+    }
+
+    private static void remove(JsonNode document, JsonPointer path) {
+        if (path.matches()) {
+            throw new IllegalArgumentException("нельзя удалить корень документа");
+        }
+        JsonNode parent = existing(document, path.head());
+        String key = path.last().getMatchingProperty();
+        if (parent instanceof ObjectNode object) {
+            if (!object.has(key)) {
+                throw new IllegalArgumentException("путь " + path + " не существует");
+            }
+            object.remove(key);
+        } else if (parent instanceof ArrayNode array) {
+            array.remove(arrayIndex(key, array.size() - 1));
+        } else {
+            throw new IllegalArgumentException("родитель пути " + path + " не является объектом или массивом");
+        }
+    }
+
+    private static JsonNode existing(JsonNode document, JsonPointer path) {
+        JsonNode node = document.at(path);
+        if (node.isMissingNode()) {
+            throw new IllegalArgumentException("путь " + path + " не существует");
+        }
+        return node;
+    }
+
+    private static int arrayIndex(String key, int maxIndex) {
+        if (!key.matches("0|[1-9]\\d*")) {
+            throw new IllegalArgumentException("некорректный индекс массива '" + key + "'");
+        }
+        int index = Integer.parseInt(key);
+        if (index > maxIndex) {
+            throw new IllegalArgumentException("индекс " + index + " за пределами массива");
+        }
+        return index;
+    }
+
+    private static JsonPointer pointer(String path) {
+        try {
+            return JsonPointer.compile(path);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("некорректный JSON Pointer '" + path + "'");
+        }
+    }
+
+    private static String requiredText(JsonNode operation, String field) {
+        JsonNode node = operation.get(field);
+        if (node == null || !node.isTextual()) {
+            throw new IllegalArgumentException("отсутствует строковое поле '" + field + "'");
+        }
+        return node.asText();
+    }
+
+    private static JsonNode requiredValue(JsonNode operation) {
+        if (!operation.has("value")) {
+            throw new IllegalArgumentException("отсутствует поле 'value'");
+        }
+        return operation.get("value");
+    }
+}
@@ -0,0 +1,84 @@
+package org.nobilis.nobichat.util.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Нормализация коротких пользовательских команд: нижний регистр, замена "ё" на "е",
+ * удаление пунктуации и облегченный стемминг русских словоформ (отсечение окончаний).
+ * Стеммер не претендует на лингвистическую точность — он нужен лишь для того, чтобы
+ * "сохрани", "сохранить" и "сохраните" приводились к одной основе.
+ */
+public final class RussianTextNormalizer {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final int MIN_STEM_LENGTH = 3;
+
+    /**
+     * Окончания упорядочены по убыванию длины, чтобы отсекалось самое длинное подходящее.
+     */
+    private static final List<String> ENDINGS = Arrays.stream(new String[]{
+                    "ировать", "овать", "евать", "ивать", "ывать",
+                    "ующий", "ующая", "ующее", "ующие",
+                    "ться", "тесь", "ите", "ете", "ешь", "ишь", "ить", "ать", "ять", "еть", "уть", "ыть",
+                    "ого", "его", "ому", "ему", "ими", "ыми", "ий", "ый", "ой", "ая", "яя", "ое", "ее", "ые", "ие",
+                    "ую", "юю", "ах", "ях", "ам", "ям", "ом", "ем", "ов", "ев",
+                    "сь", "ся", "уй", "юй", "ай", "яй", "ей",
+                    "а", "я", "о", "е", "и", "ы", "у", "ю", "й", "ь"
+            })
+            .distinct()
+            .sorted(Comparator.comparingInt(String::length).reversed())
+            .toList();
+
+    private RussianTextNormalizer() {
+    }
+
+    /**
+     * Приводит текст к нижнему регистру, заменяет "ё" на "е" и разбивает его на слова.
+     *
+     * @param text исходный текст
+     * @return список слов без пунктуации
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String lower = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(lower)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Отсекает самое длинное известное окончание, оставляя основу не короче {@value #MIN_STEM_LENGTH} символов.
+     *
+     * @param token слово в нижнем регистре
+     * @return основа слова
+     */
+    public static String stem(String token) {
+        for (String ending : ENDINGS) {
+            if (token.length() - ending.length() >= MIN_STEM_LENGTH && token.endsWith(ending)) {
+                return token.substring(0, token.length() - ending.length());
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Токенизирует текст и приводит каждое слово к основе.
+     *
+     * @param text исходный текст
+     * @return список основ в порядке следования слов
+     */
+    public static List<String> stems(String text) {
+        return tokenize(text).stream().map(RussianTextNormalizer::stem).toList();
+    }
+}
@@ -0,0 +1,111 @@
+package org.nobilis.nobichat.service;
+
+import org.junit.jupiter.api.Test;
+import org.nobilis.nobichat.dto.entities.EntitiesSearchRequestDto;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityFilterEvaluatorTest {
+
+    private final EntityFilterEvaluator evaluator = new EntityFilterEvaluator();
+
+    private final Map<String, Object> row = row();
+
+    @Test
+    void nullOrEmptyQueryMatchesEverything() {
+        assertThat(evaluator.matches(null, row)).isTrue();
+        assertThat(evaluator.matches(new EntitiesSearchRequestDto.QueryDto(), row)).isTrue();
+    }
+
+    @Test
+    void equalsComparesNumbersByValueAndStringsIgnoringCase() {
+        assertThat(evaluator.matches(query("AND", condition("amount", "equals", 1500)), row)).isTrue();
+        assertThat(evaluator.matches(query("AND", condition("amount", "equals", "1500.0")), row)).isTrue();
+        assertThat(evaluator.matches(query("AND", condition("status", "equals", "active")), row)).isTrue();
+        assertThat(evaluator.matches(query("AND", condition("status", "not_equals", "ACTIVE")), row)).isFalse();
+    }
+
+    @Test
+    void containsIsCaseInsensitive() {
+        assertThat(evaluator.matches(query("AND", condition("name", "contains", "ромашка")), row)).isTrue();
+        assertThat(evaluator.matches(query("AND", condition("name", "contains", "лютик")), row)).isFalse();
+    }
+
+    @Test
+    void rangeOperatorsNeverMatchMissingValue() {
+        assertThat(evaluator.matches(query("AND", condition("amount", "greater_than", 1000)), row)).isTrue();
+        assertThat(evaluator.matches(query("AND", condition("amount", "less_than", 1000)), row)).isFalse();
+        assertThat(evaluator.matches(query("AND", condition("comment", "less_than", 1000)), row)).isFalse();
+        assertThat(evaluator.matches(query("AND", condition("comment", "greater_than", 1000)), row)).isFalse();
+    }
+
+    @Test
+    void booleansAndNullsCompareByValue() {
+        assertThat(evaluator.matches(query("AND", condition("archived", "equals", "false")), row)).isTrue();
+        assertThat(evaluator.matches(query("AND", condition("archived", "equals", true)), row)).isFalse();
+        assertThat(evaluator.matches(query("AND", condition("comment", "not_equals", "x")), row)).isTrue();
+    }
+
+    @Test
+    void unknownOperatorDoesNotMatch() {
+        assertThat(evaluator.matches(query("AND", condition("name", "starts_with", "ООО")), row)).isFalse();
+    }
+
+    @Test
+    void combinesConditionsAndNestedGroups() {
+        EntitiesSearchRequestDto.QueryDto either = query("OR",
+                condition("status", "equals", "closed"),
+                condition("amount", "greater_than", 1000));
+        EntitiesSearchRequestDto.QueryDto query = query("AND", condition("name", "contains", "ООО"));
+        query.setGroups(List.of(either));
+
+        assertThat(evaluator.matches(query, row)).isTrue();
+
+        either.setConditions(List.of(condition("status", "equals", "closed")));
+        assertThat(evaluator.matches(query, row)).isFalse();
+    }
+
+    @Test
+    void collectFieldsReturnsDistinctFieldsFromAllGroups() {
+        EntitiesSearchRequestDto.QueryDto query = query("AND",
+                condition("name", "contains", "ООО"),
+                condition("amount", "greater_than", 1));
+        query.setGroups(List.of(query("OR",
+                condition("status", "equals", "active"),
+                condition("name", "equals", "ООО Ромашка"))));
+
+        assertThat(evaluator.collectFields(query)).containsExactly("name", "amount", "status");
+        assertThat(evaluator.collectFields(null)).isEmpty();
+    }
+
+    private static Map<String, Object> row() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("name", "ООО Ромашка");
+        row.put("status", "ACTIVE");
+        row.put("amount", new BigDecimal("1500.00"));
+        row.put("archived", Boolean.FALSE);
+        row.put("comment", null);
+        return row;
+    }
+
+    private static EntitiesSearchRequestDto.QueryDto query(String operator,
+                                                          EntitiesSearchRequestDto.QueryDto.ConditionDto... conditions) {
+        EntitiesSearchRequestDto.QueryDto query = new EntitiesSearchRequestDto.QueryDto();
+        query.setOperator(operator);
+        query.setConditions(List.of(conditions));
+        return query;
+    }
+
+    private static EntitiesSearchRequestDto.QueryDto.ConditionDto condition(String field, String operator, Object value) {
+        EntitiesSearchRequestDto.QueryDto.ConditionDto condition = new EntitiesSearchRequestDto.QueryDto.ConditionDto();
+        condition.setField(field);
+        condition.setOperator(operator);
+        condition.setValue(value);
+        return condition;
+    }
+}
@@ -0,0 +1,89 @@
+package org.nobilis.nobichat.service.intent.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class IntentTextModelTest {
+
+    private static final String NEXT = IntentTextModel.Label.format("NAVIGATE", "NEXT");
+    private static final String BACK = IntentTextModel.Label.format("NAVIGATE", "BACK");
+    private static final String SAVE = IntentTextModel.Label.format("SAVE", null);
+
+    private static final List<IntentTextModel.Sample> SAMPLES = List.of(
+            new IntentTextModel.Sample("дальше", NEXT),
+            new IntentTextModel.Sample("следующий шаг", NEXT),
+            new IntentTextModel.Sample("перейди дальше", NEXT),
+            new IntentTextModel.Sample("назад", BACK),
+            new IntentTextModel.Sample("вернись назад", BACK),
+            new IntentTextModel.Sample("предыдущий шаг", BACK),
+            new IntentTextModel.Sample("сохрани", SAVE),
+            new IntentTextModel.Sample("сохранить данные", SAVE),
+            new IntentTextModel.Sample("сохраните изменения", SAVE));
+
+    @Test
+    void predictsLabelOfSimilarRequest() {
+        IntentTextModel.ModeModel model = IntentTextModel.train(SAMPLES);
+
+        assertThat(IntentTextModel.predict(model, "Дальше!").label()).isEqualTo(NEXT);
+        assertThat(IntentTextModel.predict(model, "вернись на шаг назад").label()).isEqualTo(BACK);
+        assertThat(IntentTextModel.predict(model, "сохранить").label()).isEqualTo(SAVE);
+    }
+
+    @Test
+    void confidenceIsPosteriorProbability() {
+        IntentTextModel.ModeModel model = IntentTextModel.train(SAMPLES);
+
+        IntentTextModel.Prediction prediction = IntentTextModel.predict(model, "сохраните данные");
+
+        assertThat(prediction.confidence()).isBetween(1.0 / 3, 1.0);
+    }
+
+    @Test
+    void trainStoresPriorsForEveryLabel() {
+        IntentTextModel.ModeModel model = IntentTextModel.train(SAMPLES);
+
+        assertThat(model.getSampleCount()).isEqualTo(SAMPLES.size());
+        assertThat(model.getClassLogPrior()).containsOnlyKeys(NEXT, BACK, SAVE);
+        assertThat(model.getClassLogPrior().get(SAVE)).isCloseTo(Math.log(3.0 / 9), within(1e-9));
+    }
+
+    @Test
+    void predictReturnsNullForEmptyModel() {
+        assertThat(IntentTextModel.predict(null, "дальше")).isNull();
+        assertThat(IntentTextModel.predict(new IntentTextModel.ModeModel(), "дальше")).isNull();
+    }
+
+    @Test
+    void labelRoundTripsEmptyParts() {
+        assertThat(SAVE).isEqualTo("SAVE|");
+        IntentTextModel.Label label = IntentTextModel.Label.parse(SAVE);
+        assertThat(label.getIntent()).isEqualTo("SAVE");
+        assertThat(label.getDirection()).isNull();
+        assertThat(IntentTextModel.Label.parse("|NEXT").getIntent()).isNull();
+    }
+
+    @Test
+    void featuresAreCharacterNgramsOfNormalizedText() {
+        assertThat(IntentTextModel.features("Да!")).containsExactly(" д", "да", "а ", " да", "да ", " да ");
+    }
+
+    @Test
+    void modelSurvivesJsonRoundTrip() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        IntentTextModel model = new IntentTextModel();
+        model.setTrainedAt(Instant.parse("2025-07-01T00:00:00Z"));
+        model.getModes().put("EXECUTION", IntentTextModel.train(SAMPLES));
+
+        IntentTextModel restored = objectMapper.readValue(objectMapper.writeValueAsString(model), IntentTextModel.class);
+
+        assertThat(restored).isEqualTo(model);
+        assertThat(IntentTextModel.predict(restored.getModes().get("EXECUTION"), "назад").label()).isEqualTo(BACK);
+    }
+}
@@ -0,0 +1,69 @@
+package org.nobilis.nobichat.util.json;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalJsonFieldExtractorTest {
+
+    @Test
+    void reportsFieldOnlyWhenValueIsComplete() {
+        IncrementalJsonFieldExtractor extractor = new IncrementalJsonFieldExtractor();
+
+        extractor.feed("{\"intent\": \"NEXT_ST");
+        assertThat(extractor.hasField("intent")).isFalse();
+
+        extractor.feed("EP\", \"direction\"");
+        assertThat(extractor.getFields()).containsEntry("intent", "NEXT_STEP");
+        assertThat(extractor.hasField("direction")).isFalse();
+        assertThat(extractor.isClosed()).isFalse();
+    }
+
+    @Test
+    void parsesScalarLiteralsSplitAcrossChunks() {
+        IncrementalJsonFieldExtractor extractor = new IncrementalJsonFieldExtractor();
+
+        extractor.feed("{\"count\": 1");
+        extractor.feed("2.5, \"edit\": tr");
+        extractor.feed("ue, \"entity\": null, \"flag\": false}");
+
+        assertThat(extractor.getFields())
+                .containsEntry("count", new BigDecimal("12.5"))
+                .containsEntry("edit", Boolean.TRUE)
+                .containsEntry("entity", null)
+                .containsEntry("flag", Boolean.FALSE);
+        assertThat(extractor.isClosed()).isTrue();
+    }
+
+    @Test
+    void skipsNestedValuesAndTextAroundObject() {
+        IncrementalJsonFieldExtractor extractor = new IncrementalJsonFieldExtractor();
+
+        extractor.feed("```json\n{\"filters\": {\"name\": \"x\"}, \"ids\": [1, \"2\"], \"query\": \"q\"}\n```");
+
+        assertThat(extractor.getFields()).containsOnlyKeys("query");
+        assertThat(extractor.getFields()).containsEntry("query", "q");
+        assertThat(extractor.isClosed()).isTrue();
+    }
+
+    @Test
+    void decodesEscapesInStrings() {
+        IncrementalJsonFieldExtractor extractor = new IncrementalJsonFieldExtractor();
+
+        extractor.feed("{\"text\": \"a\\\"b\\n\\u04");
+        extractor.feed("1f\"}");
+
+        assertThat(extractor.getFields()).containsEntry("text", "a\"b\nП");
+    }
+
+    @Test
+    void ignoresInputAfterRootObjectIsClosed() {
+        IncrementalJsonFieldExtractor extractor = new IncrementalJsonFieldExtractor();
+
+        extractor.feed("{\"a\": 1} {\"b\": 2}");
+
+        assertThat(extractor.getFields()).containsOnlyKeys("a");
+    }
+}
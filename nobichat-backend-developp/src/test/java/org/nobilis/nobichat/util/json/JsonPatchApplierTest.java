@@ -0,0 +1,90 @@
+package org.nobilis.nobichat.util.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonPatchApplierTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void appliesOperationsInOrder() throws Exception {
+        JsonNode document = json("""
+                {"name": "Заявка", "steps": [{"id": "a"}, {"id": "c"}], "draft": true}
+                """);
+        JsonNode patch = json("""
+                [
+                  {"op": "test", "path": "/name", "value": "Заявка"},
+                  {"op": "replace", "path": "/name", "value": "Заявка на отпуск"},
+                  {"op": "add", "path": "/steps/1", "value": {"id": "b"}},
+                  {"op": "add", "path": "/steps/-", "value": {"id": "d"}},
+                  {"op": "remove", "path": "/draft"},
+                  {"op": "copy", "from": "/steps/0", "path": "/first"},
+                  {"op": "move", "from": "/first", "path": "/start"}
+                ]
+                """);
+
+        JsonNode result = JsonPatchApplier.apply(document, patch);
+
+        assertThat(result).isEqualTo(json("""
+                {"name": "Заявка на отпуск",
+                 "steps": [{"id": "a"}, {"id": "b"}, {"id": "c"}, {"id": "d"}],
+                 "start": {"id": "a"}}
+                """));
+    }
+
+    @Test
+    void leavesSourceDocumentUnchanged() throws Exception {
+        JsonNode document = json("{\"steps\": [1, 2]}");
+
+        JsonPatchApplier.apply(document, json("[{\"op\": \"remove\", \"path\": \"/steps/0\"}]"));
+
+        assertThat(document).isEqualTo(json("{\"steps\": [1, 2]}"));
+    }
+
+    @Test
+    void replacesWholeDocumentWithEmptyPath() throws Exception {
+        JsonNode result = JsonPatchApplier.apply(json("{\"a\": 1}"),
+                json("[{\"op\": \"replace\", \"path\": \"\", \"value\": {\"b\": 2}}]"));
+
+        assertThat(result).isEqualTo(json("{\"b\": 2}"));
+    }
+
+    @Test
+    void rejectsFailedTestOperation() throws Exception {
+        JsonNode patch = json("""
+                [
+                  {"op": "replace", "path": "/a", "value": 3},
+                  {"op": "test", "path": "/b", "value": 5}
+                ]
+                """);
+
+        assertThatThrownBy(() -> JsonPatchApplier.apply(json("{\"a\": 1, \"b\": 2}"), patch))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Операция #1");
+    }
+
+    @Test
+    void rejectsMissingPathAndInvalidOperations() throws Exception {
+        JsonNode document = json("{\"steps\": [1]}");
+
+        assertThatThrownBy(() -> JsonPatchApplier.apply(document, json("[{\"op\": \"remove\", \"path\": \"/name\"}]")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonPatchApplier.apply(document, json("[{\"op\": \"add\", \"path\": \"/steps/5\", \"value\": 2}]")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonPatchApplier.apply(document, json("[{\"op\": \"move\", \"from\": \"/steps\", \"path\": \"/steps/0\"}]")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonPatchApplier.apply(document, json("[{\"op\": \"merge\", \"path\": \"/steps\"}]")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> JsonPatchApplier.apply(document, json("{\"op\": \"remove\", \"path\": \"/steps\"}")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private JsonNode json(String text) throws Exception {
+        return objectMapper.readTree(text);
+    }
+}
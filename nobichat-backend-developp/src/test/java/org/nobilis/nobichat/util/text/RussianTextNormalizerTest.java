@@ -0,0 +1,47 @@
+package org.nobilis.nobichat.util.text;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RussianTextNormalizerTest {
+
+    @Test
+    void tokenizeLowercasesReplacesYoAndDropsPunctuation() {
+        assertThat(RussianTextNormalizer.tokenize("Ещё раз, пожалуйста: СОХРАНИ шаг №2!"))
+                .containsExactly("еще", "раз", "пожалуйста", "сохрани", "шаг", "2");
+    }
+
+    @Test
+    void tokenizeReturnsEmptyListForBlankText() {
+        assertThat(RussianTextNormalizer.tokenize(null)).isEmpty();
+        assertThat(RussianTextNormalizer.tokenize("  ")).isEmpty();
+    }
+
+    @Test
+    void stemBringsVerbFormsToCommonStem() {
+        assertThat(RussianTextNormalizer.stem("сохрани")).isEqualTo("сохран");
+        assertThat(RussianTextNormalizer.stem("сохранить")).isEqualTo("сохран");
+        assertThat(RussianTextNormalizer.stem("сохраните")).isEqualTo("сохран");
+    }
+
+    @Test
+    void stemCutsLongestMatchingEnding() {
+        assertThat(RussianTextNormalizer.stem("следующий")).isEqualTo("след");
+        assertThat(RussianTextNormalizer.stem("следующая")).isEqualTo("след");
+        assertThat(RussianTextNormalizer.stem("редактировать")).isEqualTo("редакт");
+    }
+
+    @Test
+    void stemKeepsShortWordsAndWordsWithoutKnownEnding() {
+        assertThat(RussianTextNormalizer.stem("да")).isEqualTo("да");
+        assertThat(RussianTextNormalizer.stem("шаг")).isEqualTo("шаг");
+        assertThat(RussianTextNormalizer.stem("назад")).isEqualTo("назад");
+    }
+
+    @Test
+    void stemsKeepsWordOrder() {
+        assertThat(RussianTextNormalizer.stems("Перейди к следующему шагу"))
+                .containsExactly("перейд", "к", "следующ", "шаг");
+    }
+}